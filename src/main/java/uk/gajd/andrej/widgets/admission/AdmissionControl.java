@@ -0,0 +1,59 @@
+package uk.gajd.andrej.widgets.admission;
+
+import uk.gajd.andrej.widgets.model.AdmissionStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * This holds the two lanes requests of the widget API are admitted through, one for reads and one for writes.
+ * Writes may shift many widgets and in-memory writes run one at a time behind the repository lock, so a burst of them
+ * would otherwise take every server thread while waiting, leaving none for reads. With their own bounded lane,
+ * excess writes are rejected and reads keep their threads and latency.
+ *
+ */
+@Component
+public class AdmissionControl {
+    private static final String BATCH_QUERY_PATH = "/batch-query";
+
+    private final AdmissionLane readLane;
+    private final AdmissionLane writeLane;
+    private final long retryAfterSeconds;
+
+    public AdmissionControl(@Value("${widgets.admission.read.max-concurrent:150}") int readMaxConcurrent,
+                            @Value("${widgets.admission.read.max-queued:200}") int readMaxQueued,
+                            @Value("${widgets.admission.read.max-queue-ms:500}") long readMaxQueueMillis,
+                            @Value("${widgets.admission.write.max-concurrent:8}") int writeMaxConcurrent,
+                            @Value("${widgets.admission.write.max-queued:100}") int writeMaxQueued,
+                            @Value("${widgets.admission.write.max-queue-ms:500}") long writeMaxQueueMillis,
+                            @Value("${widgets.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.readLane = new AdmissionLane("read", readMaxConcurrent, readMaxQueued, readMaxQueueMillis);
+        this.writeLane = new AdmissionLane("write", writeMaxConcurrent, writeMaxQueued, writeMaxQueueMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Batch queries are posted, as their rectangles don't fit a query string, but only read.
+     *
+     * @return the lane of the request
+     */
+    public AdmissionLane laneOf(HttpServletRequest request) {
+        String method = request.getMethod();
+        boolean read = HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method)
+                || request.getRequestURI().endsWith(BATCH_QUERY_PATH);
+        return read ? readLane : writeLane;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public AdmissionStatus getStatus() {
+        return AdmissionStatus.builder()
+                .read(readLane.getStatus())
+                .write(writeLane.getStatus())
+                .build();
+    }
+}
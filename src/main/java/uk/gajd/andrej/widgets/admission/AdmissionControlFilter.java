@@ -0,0 +1,62 @@
+package uk.gajd.andrej.widgets.admission;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This is the filter admitting requests of the widget API through the lanes of {@link AdmissionControl}.
+ * A request rejected because its lane's queue is full is answered with 429, one which waited in the queue
+ * for too long with 503, both with a Retry-After header and without touching the repository.
+ *
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private final AdmissionControl admissionControl;
+
+    public AdmissionControlFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdmissionLane lane = admissionControl.laneOf(request);
+        AdmissionLane.Admission admission;
+        try {
+            admission = lane.tryAdmit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting to be admitted.");
+            return;
+        }
+
+        switch (admission) {
+            case QUEUE_FULL:
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many " + lane.getName() + " requests, try again later.");
+                return;
+            case QUEUE_TIMEOUT:
+                reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Timed out waiting to run the " + lane.getName() + " request, try again later.");
+                return;
+            default:
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    lane.release();
+                }
+        }
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(admissionControl.getRetryAfterSeconds()));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+}
@@ -0,0 +1,100 @@
+package uk.gajd.andrej.widgets.admission;
+
+import uk.gajd.andrej.widgets.model.AdmissionLaneStatus;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This is a lane of requests admitted to the widget API, at most maxConcurrent of them run at once.
+ * Further requests wait in a queue of at most maxQueued requests, in the order they came, for at most maxQueueTime.
+ * A request finding the queue full is rejected right away, one waiting too long is rejected when its time runs out,
+ * so a burst is answered with rejections instead of piling up threads and latency behind it.
+ *
+ */
+public class AdmissionLane {
+    public enum Admission {
+        ADMITTED,
+        QUEUE_FULL,
+        QUEUE_TIMEOUT
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long maxQueueTimeNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedQueueTimeout = new LongAdder();
+    private final LongAdder totalQueueTimeNanos = new LongAdder();
+
+    public AdmissionLane(String name, int maxConcurrent, int maxQueued, long maxQueueTimeMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Max concurrent requests of the " + name + " lane should be at least 1.");
+        }
+        if (maxQueued < 0 || maxQueueTimeMillis < 0) {
+            throw new IllegalArgumentException("Max queued requests & queue time of the " + name + " lane should not be negative.");
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueueTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueTimeMillis);
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * An admitted request has to be given back with {@link #release()} once it is done.
+     *
+     * @return whether the request is admitted, or why it is rejected
+     */
+    public Admission tryAdmit() throws InterruptedException {
+        // A timed acquire, unlike tryAcquire(), doesn't barge ahead of the waiting requests
+        if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            admitted.increment();
+            return Admission.ADMITTED;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejectedQueueFull.increment();
+            return Admission.QUEUE_FULL;
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxQueueTimeNanos, TimeUnit.NANOSECONDS)) {
+                rejectedQueueTimeout.increment();
+                return Admission.QUEUE_TIMEOUT;
+            }
+        } finally {
+            queued.decrementAndGet();
+            totalQueueTimeNanos.add(System.nanoTime() - queuedAt);
+        }
+        admitted.increment();
+        return Admission.ADMITTED;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public AdmissionLaneStatus getStatus() {
+        return AdmissionLaneStatus.builder()
+                .maxConcurrent(maxConcurrent)
+                .maxQueued(maxQueued)
+                .maxQueueTimeMillis(TimeUnit.NANOSECONDS.toMillis(maxQueueTimeNanos))
+                .running(maxConcurrent - permits.availablePermits())
+                .queued(queued.get())
+                .admitted(admitted.sum())
+                .rejectedQueueFull(rejectedQueueFull.sum())
+                .rejectedQueueTimeout(rejectedQueueTimeout.sum())
+                .totalQueueTimeMillis(TimeUnit.NANOSECONDS.toMillis(totalQueueTimeNanos.sum()))
+                .build();
+    }
+}
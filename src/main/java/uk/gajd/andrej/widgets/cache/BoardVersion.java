@@ -0,0 +1,26 @@
+package uk.gajd.andrej.widgets.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the version of the widget board, incremented after every completed write.
+ * Anything derived from the widgets, like cached responses, is valid as long as the version hasn't changed.
+ *
+ */
+@Component
+public class BoardVersion {
+    private final AtomicLong version = new AtomicLong();
+
+    public long get() {
+        return version.get();
+    }
+
+    /**
+     * Should be called after a write is completed, so a version is never paired with data older than it.
+     */
+    public void increment() {
+        version.incrementAndGet();
+    }
+}
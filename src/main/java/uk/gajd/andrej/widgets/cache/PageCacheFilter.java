@@ -0,0 +1,146 @@
+package uk.gajd.andrej.widgets.cache;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This is the filter keeping the already serialized responses of widget list queries, e.g. GET /v1/widgets?limit=10.
+ * Responses are cached by their query parameters, Accept header & whether gzip is accepted, together with the
+ * {@link BoardVersion} they were produced at, and a gzip compressed copy when the body is big enough.
+ * As long as the board doesn't change, a cached query is answered by copying bytes,
+ * without touching the repository, mapping objects or compressing again.
+ *
+ */
+public class PageCacheFilter extends OncePerRequestFilter {
+    private static final String GZIP = "gzip";
+
+    private final BoardVersion boardVersion;
+    private final int maxEntries;
+    private final int minCompressSize;
+    private final Map<String, CachedPage> pages = new ConcurrentHashMap<>();
+    private volatile long pagesVersion;
+
+    public PageCacheFilter(BoardVersion boardVersion, int maxEntries, int minCompressSize) {
+        this.boardVersion = boardVersion;
+        this.maxEntries = maxEntries;
+        this.minCompressSize = minCompressSize;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Explained queries are timed, so they need to run every time
+        return !HttpMethod.GET.matches(request.getMethod()) || "true".equals(request.getParameter("explain"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean gzipAccepted = isGzipAccepted(request);
+        String key = toKey(request, gzipAccepted);
+        long version = boardVersion.get();
+
+        CachedPage page = pages.get(key);
+        if (page != null && page.version == version) {
+            write(page, gzipAccepted, response);
+            return;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, responseWrapper);
+
+        if (responseWrapper.getStatus() != HttpStatus.OK.value()) {
+            responseWrapper.copyBodyToResponse();
+            return;
+        }
+
+        page = new CachedPage(version, responseWrapper.getContentType(), responseWrapper.getContentAsByteArray(),
+                gzipAccepted ? compress(responseWrapper.getContentAsByteArray()) : null);
+        store(key, page);
+        write(page, gzipAccepted, response); // The wrapper only buffered the body, headers are already on the response
+    }
+
+    private void store(String key, CachedPage page) {
+        if (page.version != boardVersion.get()) {
+            return; // The board changed while the page was produced
+        }
+        if (pagesVersion != page.version) { // Pages of older versions can't be served anymore
+            pages.clear();
+            pagesVersion = page.version;
+        }
+        if (pages.size() < maxEntries) {
+            pages.put(key, page);
+        }
+    }
+
+    private void write(CachedPage page, boolean gzipAccepted, HttpServletResponse response) throws IOException {
+        byte[] body = page.body;
+        if (gzipAccepted && page.gzipBody != null) {
+            body = page.gzipBody;
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(page.contentType);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private byte[] compress(byte[] body) throws IOException {
+        if (body.length < minCompressSize) {
+            return null;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static boolean isGzipAccepted(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains(GZIP);
+    }
+
+    /**
+     * Parameters are sorted, so the same query with a different parameter order shares the page.
+     */
+    private static String toKey(HttpServletRequest request, boolean gzipAccepted) {
+        StringBuilder key = new StringBuilder(request.getRequestURI()).append('?');
+        new TreeMap<>(request.getParameterMap()).forEach((name, values) -> {
+            for (String value : values) {
+                key.append(name).append('=').append(value).append('&');
+            }
+        });
+        return key.append('|').append(request.getHeader(HttpHeaders.ACCEPT))
+                .append('|').append(gzipAccepted)
+                .toString();
+    }
+
+    private static final class CachedPage {
+        private final long version;
+        private final String contentType;
+        private final byte[] body;
+        private final byte[] gzipBody;
+
+        private CachedPage(long version, String contentType, byte[] body, byte[] gzipBody) {
+            this.version = version;
+            this.contentType = contentType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+        }
+    }
+}
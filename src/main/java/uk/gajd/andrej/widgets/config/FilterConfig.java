@@ -0,0 +1,73 @@
+package uk.gajd.andrej.widgets.config;
+
+import uk.gajd.andrej.widgets.admission.AdmissionControl;
+import uk.gajd.andrej.widgets.admission.AdmissionControlFilter;
+import uk.gajd.andrej.widgets.cache.BoardVersion;
+import uk.gajd.andrej.widgets.cache.PageCacheFilter;
+import uk.gajd.andrej.widgets.idempotency.IdempotencyFilter;
+import uk.gajd.andrej.widgets.ratelimit.ClientRateLimiter;
+import uk.gajd.andrej.widgets.ratelimit.RateLimitFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the configuration of the servlet filters in front of the widget API.
+ * Rate limiting comes first, so cached pages are charged to their client too,
+ * then the page cache & idempotency, so the list queries & retried creations they answer don't take a place
+ * in the admission lanes.
+ *
+ */
+@Configuration
+public class FilterConfig {
+    private static final String WIDGET_LIST_PATH = "/v1/widgets";
+    private static final String WIDGET_PATHS = "/v1/widgets/*";
+    private static final int RATE_LIMIT_ORDER = 0;
+    private static final int PAGE_CACHE_ORDER = 1;
+    private static final int IDEMPOTENCY_ORDER = 2;
+    private static final int ADMISSION_CONTROL_ORDER = 3;
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.rate-limit.enabled", matchIfMissing = true)
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(ClientRateLimiter rateLimiter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(new RateLimitFilter(rateLimiter));
+        registration.addUrlPatterns(WIDGET_LIST_PATH, WIDGET_PATHS);
+        registration.setOrder(RATE_LIMIT_ORDER);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.page-cache.enabled", matchIfMissing = true)
+    public FilterRegistrationBean<PageCacheFilter> pageCacheFilter(BoardVersion boardVersion,
+                                                                   @Value("${widgets.page-cache.max-entries:1024}") int maxEntries,
+                                                                   @Value("${widgets.page-cache.min-compress-size:1024}") int minCompressSize) {
+        FilterRegistrationBean<PageCacheFilter> registration =
+                new FilterRegistrationBean<>(new PageCacheFilter(boardVersion, maxEntries, minCompressSize));
+        registration.addUrlPatterns(WIDGET_LIST_PATH);
+        registration.setOrder(PAGE_CACHE_ORDER);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.idempotency.enabled", matchIfMissing = true)
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyFilter(@Value("${widgets.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                                                                       @Value("${widgets.idempotency.max-entries:10000}") int maxEntries) {
+        FilterRegistrationBean<IdempotencyFilter> registration =
+                new FilterRegistrationBean<>(new IdempotencyFilter(ttlSeconds, maxEntries));
+        registration.addUrlPatterns(WIDGET_LIST_PATH);
+        registration.setOrder(IDEMPOTENCY_ORDER);
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.admission.enabled", matchIfMissing = true)
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(AdmissionControl admissionControl) {
+        FilterRegistrationBean<AdmissionControlFilter> registration =
+                new FilterRegistrationBean<>(new AdmissionControlFilter(admissionControl));
+        registration.addUrlPatterns(WIDGET_LIST_PATH, WIDGET_PATHS);
+        registration.setOrder(ADMISSION_CONTROL_ORDER);
+        return registration;
+    }
+}
@@ -0,0 +1,82 @@
+package uk.gajd.andrej.widgets.controller;
+
+import uk.gajd.andrej.widgets.admission.AdmissionControl;
+import uk.gajd.andrej.widgets.model.AdmissionStatus;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.RateLimitStatus;
+import uk.gajd.andrej.widgets.model.ProfilingStatus;
+import uk.gajd.andrej.widgets.profiling.ProfilingRecorder;
+import uk.gajd.andrej.widgets.ratelimit.ClientRateLimiter;
+import uk.gajd.andrej.widgets.service.WidgetService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+/**
+ * This is the controller for operational endpoints which are not part of the widget API itself.
+ *
+ */
+@RestController
+@RequestMapping("/v1/admin")
+@RequiredArgsConstructor
+public class AdminController {
+    private final WidgetService widgetService;
+    private final ProfilingRecorder profilingRecorder;
+    private final AdmissionControl admissionControl;
+    private final ClientRateLimiter rateLimiter;
+
+    @GetMapping("/indexes/consistency")
+    public ResponseEntity<IndexConsistencyReport> verifyIndexes() {
+        return new ResponseEntity<>(widgetService.verifyIndexes(), HttpStatus.OK);
+    }
+
+    @GetMapping("/admission")
+    public ResponseEntity<AdmissionStatus> getAdmissionStatus() {
+        return new ResponseEntity<>(admissionControl.getStatus(), HttpStatus.OK);
+    }
+
+    @GetMapping("/rate-limit")
+    public ResponseEntity<RateLimitStatus> getRateLimitStatus() {
+        return new ResponseEntity<>(rateLimiter.getStatus(), HttpStatus.OK);
+    }
+
+    @PostMapping("/profiling/start")
+    public ResponseEntity<ProfilingStatus> startProfiling(@RequestParam(required = false) Long maxDurationSeconds) {
+        Duration maxDuration = maxDurationSeconds != null
+                ? Duration.ofSeconds(maxDurationSeconds)
+                : profilingRecorder.getDefaultMaxDuration();
+        return new ResponseEntity<>(profilingRecorder.start(maxDuration), HttpStatus.OK);
+    }
+
+    @PostMapping("/profiling/stop")
+    public ResponseEntity<ProfilingStatus> stopProfiling() {
+        return new ResponseEntity<>(profilingRecorder.stop(), HttpStatus.OK);
+    }
+
+    @GetMapping("/profiling")
+    public ResponseEntity<ProfilingStatus> getProfilingStatus() {
+        return new ResponseEntity<>(profilingRecorder.getStatus(), HttpStatus.OK);
+    }
+
+    @GetMapping("/profiling/recording")
+    public ResponseEntity<Resource> downloadRecording() {
+        Resource recording = new FileSystemResource(profilingRecorder.getRecordingFile());
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename("widgets.jfr").build().toString())
+                .body(recording);
+    }
+}
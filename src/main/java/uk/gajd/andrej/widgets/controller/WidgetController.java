@@ -1,8 +1,14 @@
 package uk.gajd.andrej.widgets.controller;
 
+import uk.gajd.andrej.widgets.model.BatchQueryRequest;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
 import uk.gajd.andrej.widgets.model.WidgetRequest;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
+import uk.gajd.andrej.widgets.model.WidgetMoveRequest;
 import uk.gajd.andrej.widgets.service.WidgetService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -11,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * This is the controller for Widget related operations.
@@ -21,9 +28,34 @@ import java.util.List;
 @RequiredArgsConstructor
 public class WidgetController {
     private static final String DEFAULT_LIMIT = "10";
+    private static final String DEFAULT_MODE = "contains";
+    private static final String DEFAULT_TILE_SIZE = "1024";
+    static final int MAX_TILES = 4096;
 
     private final WidgetService widgetService;
 
+    @GetMapping("/hit-test")
+    public ResponseEntity<Widget> hitTest(@RequestParam Integer x, @RequestParam Integer y) {
+        return new ResponseEntity<>(widgetService.findTopAt(x, y), HttpStatus.OK);
+    }
+
+    /**
+     * @return aggregates of the whole board, or of the widgets starting in the rectangle when all four points are provided
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<WidgetAggregates> aggregates(@RequestParam(required = false) Integer x0,
+                                                       @RequestParam(required = false) Integer y0,
+                                                       @RequestParam(required = false) Integer x1,
+                                                       @RequestParam(required = false) Integer y1,
+                                                       @RequestParam(required = false, defaultValue = DEFAULT_TILE_SIZE) Integer tileSize) {
+        if (x0 != null && y0 != null && x1 != null && y1 != null) {
+            RectangleCoordinates coordinates = toCoordinates(x0, y0, x1, y1);
+            validateTiles(coordinates, tileSize);
+            return new ResponseEntity<>(widgetService.aggregate(coordinates, tileSize), HttpStatus.OK);
+        }
+        return new ResponseEntity<>(widgetService.aggregate(), HttpStatus.OK);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Widget> findById(@PathVariable("id") Long id) {
         return new ResponseEntity<>(widgetService.findWidgetById(id), HttpStatus.OK);
@@ -34,26 +66,58 @@ public class WidgetController {
                                                 @RequestParam(required = false) Integer x0,
                                                 @RequestParam(required = false) Integer y0,
                                                 @RequestParam(required = false) Integer x1,
-                                                @RequestParam(required = false) Integer y1) {
-        if(limit <= 0 || limit > 500) {
-            throw new IllegalArgumentException("Limit should be between 1-500. Default is 10.");
-        }
+                                                @RequestParam(required = false) Integer y1,
+                                                @RequestParam(required = false, defaultValue = DEFAULT_MODE) String mode) {
+        validateLimit(limit);
 
         // All four points need to be provided
         if (x0 != null && y0 != null && x1 != null && y1 != null) {
-            RectangleCoordinates coordinates = RectangleCoordinates.builder()
-                    .x0(x0).y0(y0)
-                    .x1(x1).y1(y1)
-                    .build();
-            if (!coordinates.isValid()) {
-                throw new IllegalArgumentException("x1 should be bigger than x0 & y1 should be bigger than y0.");
-            }
-            return new ResponseEntity<>(widgetService.findWithCoordinates(coordinates, limit), HttpStatus.OK);
+            RectangleCoordinates coordinates = toCoordinates(x0, y0, x1, y1);
+            return new ResponseEntity<>(widgetService.findWithCoordinates(coordinates, QueryMode.fromParameter(mode), limit), HttpStatus.OK);
         }
 
         return new ResponseEntity<>(widgetService.findWithLimit(limit), HttpStatus.OK);
     }
 
+    /**
+     * @return how the repository answers the query of the same parameters, instead of its widgets
+     */
+    @GetMapping(params = "explain=true")
+    public ResponseEntity<QueryPlan> explain(@RequestParam(required = false, defaultValue = DEFAULT_LIMIT) Integer limit,
+                                             @RequestParam(required = false) Integer x0,
+                                             @RequestParam(required = false) Integer y0,
+                                             @RequestParam(required = false) Integer x1,
+                                             @RequestParam(required = false) Integer y1,
+                                             @RequestParam(required = false, defaultValue = DEFAULT_MODE) String mode) {
+        validateLimit(limit);
+
+        if (x0 != null && y0 != null && x1 != null && y1 != null) {
+            RectangleCoordinates coordinates = toCoordinates(x0, y0, x1, y1);
+            return new ResponseEntity<>(widgetService.explainWithCoordinates(coordinates, QueryMode.fromParameter(mode), limit), HttpStatus.OK);
+        }
+
+        return new ResponseEntity<>(widgetService.explainWithLimit(limit), HttpStatus.OK);
+    }
+
+    /**
+     * @return the widgets of each query, in the order of the queries
+     */
+    @PostMapping("/batch-query")
+    public ResponseEntity<List<List<Widget>>> batchQuery(@Valid @RequestBody BatchQueryRequest batchQueryRequest) {
+        List<CoordinateQuery> queries = batchQueryRequest.getQueries().stream()
+                .map(query -> {
+                    Integer limit = query.getLimit() != null ? query.getLimit() : Integer.valueOf(DEFAULT_LIMIT);
+                    validateLimit(limit);
+                    return CoordinateQuery.builder()
+                            .coordinates(toCoordinates(query.getX0(), query.getY0(), query.getX1(), query.getY1()))
+                            .mode(QueryMode.fromParameter(query.getMode() != null ? query.getMode() : DEFAULT_MODE))
+                            .limit(limit)
+                            .build();
+                })
+                .collect(Collectors.toList());
+        return new ResponseEntity<>(widgetService.findWithCoordinates(queries), HttpStatus.OK);
+    }
+
     @PostMapping
     public ResponseEntity<Widget> create(@Valid @RequestBody WidgetRequest widgetRequest) {
         return new ResponseEntity<>(widgetService.createWidget(widgetRequest.toWidget(null)), HttpStatus.CREATED);
@@ -64,9 +128,58 @@ public class WidgetController {
         return new ResponseEntity<>(widgetService.updateWidget(updateWidgetRequest.toWidget(id)), HttpStatus.OK);
     }
 
+    @PatchMapping("/{id}")
+    public ResponseEntity<Widget> move(@PathVariable("id") Long id, @Valid @RequestBody WidgetMoveRequest moveRequest) {
+        return new ResponseEntity<>(widgetService.moveWidget(id, moveRequest.getDx(), moveRequest.getDy()), HttpStatus.OK);
+    }
+
+    @PostMapping("/{id}/bring-to-front")
+    public ResponseEntity<Widget> bringToFront(@PathVariable("id") Long id) {
+        return new ResponseEntity<>(widgetService.bringToFront(id), HttpStatus.OK);
+    }
+
+    @PostMapping("/{id}/send-to-back")
+    public ResponseEntity<Widget> sendToBack(@PathVariable("id") Long id) {
+        return new ResponseEntity<>(widgetService.sendToBack(id), HttpStatus.OK);
+    }
+
+    @PostMapping("/{id}/move-above/{belowId}")
+    public ResponseEntity<Widget> moveAbove(@PathVariable("id") Long id, @PathVariable("belowId") Long belowId) {
+        return new ResponseEntity<>(widgetService.moveAbove(id, belowId), HttpStatus.OK);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity delete(@PathVariable("id") Long id) {
         widgetService.deleteWidget(id);
         return ResponseEntity.ok().build();
     }
+
+    private static void validateLimit(Integer limit) {
+        if (limit <= 0 || limit > 500) {
+            throw new IllegalArgumentException("Limit should be between 1-500. Default is 10.");
+        }
+    }
+
+    private static void validateTiles(RectangleCoordinates coordinates, Integer tileSize) {
+        if (tileSize <= 0 || Integer.bitCount(tileSize) != 1) {
+            throw new IllegalArgumentException("Tile size should be a power of two. Default is " + DEFAULT_TILE_SIZE + ".");
+        }
+        int tileShift = Integer.numberOfTrailingZeros(tileSize);
+        long tiles = ((long) ((coordinates.getX1() - 1) >> tileShift) - (coordinates.getX0() >> tileShift) + 1)
+                * ((long) ((coordinates.getY1() - 1) >> tileShift) - (coordinates.getY0() >> tileShift) + 1);
+        if (tiles > MAX_TILES) {
+            throw new IllegalArgumentException("The rectangle should span at most " + MAX_TILES + " tiles, use bigger tiles.");
+        }
+    }
+
+    private static RectangleCoordinates toCoordinates(Integer x0, Integer y0, Integer x1, Integer y1) {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder()
+                .x0(x0).y0(y0)
+                .x1(x1).y1(y1)
+                .build();
+        if (!coordinates.isValid()) {
+            throw new IllegalArgumentException("x1 should be bigger than x0 & y1 should be bigger than y0.");
+        }
+        return coordinates;
+    }
 }
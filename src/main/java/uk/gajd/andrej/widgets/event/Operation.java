@@ -0,0 +1,33 @@
+package uk.gajd.andrej.widgets.event;
+
+/**
+ * This is the list of widget operations recorded in the operation event log.
+ *
+ */
+public enum Operation {
+    CREATE(false),
+    UPDATE(false),
+    DELETE(false),
+    MOVE(false),
+    REORDER(false),
+    FIND_BY_ID(true),
+    FIND_WITH_LIMIT(true),
+    FIND_WITH_COORDINATES(true),
+    HIT_TEST(true),
+    AGGREGATE(true),
+    EXPLAIN(true),
+    VERIFY_INDEXES(true);
+
+    private final boolean read;
+
+    Operation(boolean read) {
+        this.read = read;
+    }
+
+    /**
+     * @return true if the operation doesn't change any widget, such operations are sampled
+     */
+    public boolean isRead() {
+        return read;
+    }
+}
@@ -0,0 +1,27 @@
+package uk.gajd.andrej.widgets.event;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * This is the structured record of one widget operation, fields which don't apply to the operation are null.
+ *
+ */
+@Value
+@Builder
+public class OperationEvent {
+    Operation operation;
+
+    long timestamp;
+
+    String thread;
+
+    Long widgetId;
+
+    Integer limit;
+
+    RectangleCoordinates coordinates;
+
+    Integer resultCount;
+}
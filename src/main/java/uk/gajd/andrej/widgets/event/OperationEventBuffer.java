@@ -0,0 +1,63 @@
+package uk.gajd.andrej.widgets.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This is a bounded ring buffer for many producers and a single consumer, which never blocks a producer.
+ * Producers claim a slot by incrementing the tail with a CAS and then publish the element into it,
+ * the consumer takes published elements in order and frees their slots. Offering to a full buffer fails at once.
+ *
+ */
+public class OperationEventBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next slot to consume, only advanced by the consumer
+    private final AtomicLong tail = new AtomicLong(); // Next slot to claim
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public OperationEventBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false if the buffer is full and the element is dropped
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long claimed = tail.get();
+            if (claimed - head.get() >= slots.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Should only be called by the single consumer.
+     *
+     * @return the oldest element, or null if there is none or it isn't published yet
+     */
+    public E poll() {
+        long consumed = head.get();
+        int slot = (int) consumed & mask;
+        E element = slots.get(slot);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(slot, null);
+        head.lazySet(consumed + 1); // Frees the slot for producers, after it is cleared
+        return element;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+}
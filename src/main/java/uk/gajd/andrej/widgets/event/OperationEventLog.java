@@ -0,0 +1,166 @@
+package uk.gajd.andrej.widgets.event;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is the log of widget operations, written off the request threads.
+ * Recording an operation only puts an {@link OperationEvent} into a ring buffer, a dedicated flusher thread
+ * writes the events in batches to the logger. Read operations are sampled, one in readSampleInterval is kept,
+ * and dropped (and counted) rather than blocking a request when the buffer is full. Write operations are never dropped,
+ * when the buffer is full the request thread writes them itself, so they can be logged before older buffered events.
+ *
+ */
+@Slf4j
+@Component
+public class OperationEventLog {
+    private final OperationEventBuffer<OperationEvent> buffer;
+    private final int readSampleInterval;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder inlineWrittenEvents = new LongAdder();
+    private final Thread flusher = new Thread(this::flushContinuously, "operation-event-flusher");
+    private volatile boolean running = true;
+
+    public OperationEventLog(@Value("${widgets.operation-log.capacity:8192}") int capacity,
+                             @Value("${widgets.operation-log.read-sample-interval:100}") int readSampleInterval,
+                             @Value("${widgets.operation-log.batch-size:256}") int batchSize,
+                             @Value("${widgets.operation-log.flush-interval-ms:50}") long flushIntervalMillis) {
+        if (readSampleInterval < 1) {
+            throw new IllegalArgumentException("Read sample interval should be at least 1.");
+        }
+        this.buffer = new OperationEventBuffer<>(capacity);
+        this.readSampleInterval = readSampleInterval;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * @param operation on a single widget
+     * @param widgetId  of the widget
+     */
+    public void record(Operation operation, Long widgetId) {
+        if (isSampledOut(operation)) {
+            return;
+        }
+        offer(OperationEvent.builder()
+                .operation(operation)
+                .timestamp(System.currentTimeMillis())
+                .thread(Thread.currentThread().getName())
+                .widgetId(widgetId)
+                .build());
+    }
+
+    /**
+     * @param operation   querying widgets
+     * @param limit       of the query
+     * @param coordinates of the query, null if not given
+     * @param resultCount number of widgets found
+     */
+    public void record(Operation operation, Integer limit, RectangleCoordinates coordinates, int resultCount) {
+        if (isSampledOut(operation)) {
+            return;
+        }
+        offer(OperationEvent.builder()
+                .operation(operation)
+                .timestamp(System.currentTimeMillis())
+                .thread(Thread.currentThread().getName())
+                .limit(limit)
+                .coordinates(coordinates)
+                .resultCount(resultCount)
+                .build());
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * @return number of write events written by the request thread since the buffer was full
+     */
+    public long getInlineWrittenEvents() {
+        return inlineWrittenEvents.sum();
+    }
+
+    private boolean isSampledOut(Operation operation) {
+        return operation.isRead()
+                && readSampleInterval > 1
+                && ThreadLocalRandom.current().nextInt(readSampleInterval) != 0;
+    }
+
+    private void offer(OperationEvent event) {
+        if (buffer.offer(event)) {
+            return;
+        }
+        if (event.getOperation().isRead()) {
+            droppedEvents.increment();
+        } else {
+            inlineWrittenEvents.increment();
+            write(event);
+        }
+    }
+
+    private void flushContinuously() {
+        long reportedDroppedEvents = 0;
+        while (running) {
+            if (flush() == 0) {
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+            long dropped = droppedEvents.sum();
+            if (dropped > reportedDroppedEvents) {
+                log.warn("Dropped {} operation events since the buffer was full", dropped - reportedDroppedEvents);
+                reportedDroppedEvents = dropped;
+            }
+        }
+        while (flush() > 0) {
+            // Write what is left before stopping
+        }
+    }
+
+    /**
+     * @return number of events written
+     */
+    int flush() {
+        int written = 0;
+        OperationEvent event;
+        while (written < batchSize && (event = buffer.poll()) != null) {
+            write(event);
+            written++;
+        }
+        return written;
+    }
+
+    private void write(OperationEvent event) {
+        if (event.getResultCount() == null) {
+            log.info("operation={} widgetId={} thread={} timestamp={}",
+                    event.getOperation(), event.getWidgetId(), event.getThread(), event.getTimestamp());
+        } else {
+            log.info("operation={} limit={} coordinates={} resultCount={} thread={} timestamp={}",
+                    event.getOperation(), event.getLimit(), event.getCoordinates(), event.getResultCount(),
+                    event.getThread(), event.getTimestamp());
+        }
+    }
+}
@@ -35,6 +35,12 @@ public class CustomExceptionHandler {
         return ResponseEntity.badRequest().body(e.getMessage());
     }
 
+    @ExceptionHandler(ProfilingSessionConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public final ResponseEntity<String> handleProfilingSessionConflictException(final ProfilingSessionConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
     @ExceptionHandler(WidgetNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public final ResponseEntity<String> handleWidgetNotFoundException(final WidgetNotFoundException e) {
@@ -0,0 +1,12 @@
+package uk.gajd.andrej.widgets.exception;
+
+/**
+ * This is a custom runtime exception which is thrown when the profiling session isn't in the state
+ * the requested operation needs, e.g. starting one while another is running.
+ *
+ */
+public class ProfilingSessionConflictException extends RuntimeException {
+    public ProfilingSessionConflictException(String message) {
+        super(message);
+    }
+}
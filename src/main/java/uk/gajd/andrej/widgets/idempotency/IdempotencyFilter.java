@@ -0,0 +1,195 @@
+package uk.gajd.andrej.widgets.idempotency;
+
+import uk.gajd.andrej.widgets.ratelimit.RateLimitFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * This is the filter making widget creation safe to retry, POST /v1/widgets with an Idempotency-Key header.
+ * The first request with a key runs & its successful response is kept, per client, for ttl; a retry with the same key
+ * & body gets that response again, marked by an Idempotent-Replayed header, without reaching the repository.
+ * A retry while the first request still runs gets 409, one with another body 422. Failed responses aren't kept,
+ * so the request can be retried for real.
+ * As every response is kept for the same ttl, they expire in the order they were stored, so they are kept
+ * in a queue by that order, whose head is dropped when it expired or when there are maxEntries keys.
+ * Keys whose first request still runs are only in the queue once it completes, so they are never dropped
+ * while a retry could still run again; when all maxEntries keys are in progress, new keys get 503.
+ *
+ */
+public class IdempotencyFilter extends OncePerRequestFilter {
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final Map<String, StoredResponse> responses = new ConcurrentHashMap<>();
+    private final Queue<StoredResponse> storeOrder = new ConcurrentLinkedQueue<>();
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier clock;
+
+    public IdempotencyFilter(long ttlSeconds, int maxEntries) {
+        this(ttlSeconds, maxEntries, System::nanoTime);
+    }
+
+    IdempotencyFilter(long ttlSeconds, int maxEntries, LongSupplier clock) {
+        if (ttlSeconds < 1 || maxEntries < 1) {
+            throw new IllegalArgumentException("Idempotency ttl & max entries should be at least 1.");
+        }
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod()) || request.getHeader(IDEMPOTENCY_KEY_HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            reject(response, HttpStatus.BAD_REQUEST, "Idempotency-Key should have between 1 and " + MAX_KEY_LENGTH + " characters.");
+            return;
+        }
+
+        expire(clock.getAsLong());
+        String key = RateLimitFilter.clientOf(request) + ' ' + request.getRequestURI() + ' ' + idempotencyKey;
+        StoredResponse stored = responses.get(key);
+        if (stored != null) {
+            replay(stored, request, response);
+            return;
+        }
+        if (!makeRoom()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, "Too many requests with an Idempotency-Key in progress, try again later.");
+            return;
+        }
+        StoredResponse pending = new StoredResponse(key);
+        stored = responses.putIfAbsent(key, pending);
+        if (stored != null) {
+            replay(stored, request, response);
+            return;
+        }
+
+        ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(request);
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        boolean completed = false;
+        try {
+            filterChain.doFilter(requestWrapper, responseWrapper);
+            if (HttpStatus.valueOf(responseWrapper.getStatus()).is2xxSuccessful()) {
+                pending.complete(new Response(requestWrapper.getContentAsByteArray(), responseWrapper.getStatus(),
+                        responseWrapper.getContentType(), responseWrapper.getContentAsByteArray()), clock.getAsLong());
+                storeOrder.add(pending);
+                completed = true;
+            }
+        } finally {
+            if (!completed) {
+                responses.remove(key, pending);
+            }
+        }
+        responseWrapper.copyBodyToResponse();
+    }
+
+    /**
+     * The body is only compared once the first request is done, as it is read by the controller meanwhile.
+     */
+    private void replay(StoredResponse stored, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Response original = stored.response;
+        if (original == null) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            reject(response, HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress.");
+            return;
+        }
+        if (!Arrays.equals(original.requestBody, request.getInputStream().readAllBytes())) {
+            reject(response, HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key was already used for another request.");
+            return;
+        }
+        response.setStatus(original.status);
+        response.setContentType(original.contentType);
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(original.body.length);
+        response.getOutputStream().write(original.body);
+    }
+
+    private void expire(long now) {
+        StoredResponse oldest;
+        while ((oldest = storeOrder.peek()) != null && now - oldest.storedAt >= ttlNanos) {
+            drop(oldest);
+        }
+    }
+
+    /**
+     * @return whether there is room for a new key, after dropping the oldest completed responses if needed
+     */
+    private boolean makeRoom() {
+        StoredResponse oldest;
+        while (responses.size() >= maxEntries && (oldest = storeOrder.peek()) != null) {
+            drop(oldest);
+        }
+        return responses.size() < maxEntries;
+    }
+
+    /**
+     * Only completed responses are in the queue, removing them by identity lets only one thread drop a response.
+     */
+    private void drop(StoredResponse stored) {
+        if (storeOrder.remove(stored)) {
+            responses.remove(stored.key, stored);
+        }
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+
+    private static final class StoredResponse {
+        private final String key;
+        private long storedAt; // Published with the response
+        private volatile Response response; // Null while the first request runs
+
+        private StoredResponse(String key) {
+            this.key = key;
+        }
+
+        private void complete(Response response, long storedAt) {
+            this.storedAt = storedAt;
+            this.response = response;
+        }
+    }
+
+    private static final class Response {
+        private final byte[] requestBody;
+        private final int status;
+        private final String contentType;
+        private final byte[] body;
+
+        private Response(byte[] requestBody, int status, String contentType, byte[] body) {
+            this.requestBody = requestBody;
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This is the model entity for the state & counters of an admission lane, since the app started.
+ * Queue time is summed over the requests which had to wait, whether they were admitted or timed out.
+ *
+ */
+@Data
+@Builder
+public class AdmissionLaneStatus {
+    private int maxConcurrent;
+
+    private int maxQueued;
+
+    private long maxQueueTimeMillis;
+
+    private int running;
+
+    private int queued;
+
+    private long admitted;
+
+    private long rejectedQueueFull;
+
+    private long rejectedQueueTimeout;
+
+    private long totalQueueTimeMillis;
+}
@@ -0,0 +1,16 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This is the model entity for the admission lanes of the widget API.
+ *
+ */
+@Data
+@Builder
+public class AdmissionStatus {
+    private AdmissionLaneStatus read;
+
+    private AdmissionLaneStatus write;
+}
@@ -0,0 +1,29 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * This is the request model for querying several rectangles at once, like the tiles of a viewport.
+ * The results are returned in the order of the queries.
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchQueryRequest {
+    public static final int MAX_QUERIES = 64;
+
+    @NotEmpty(message = "queries should be provided.")
+    @Size(max = MAX_QUERIES, message = "At most " + MAX_QUERIES + " queries can be sent at once.")
+    @Valid
+    private List<ViewportQuery> queries;
+}
@@ -0,0 +1,17 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This is the model entity for one validated query of a batch: the rectangle, how widgets relate to it
+ * and how many of them are returned at most.
+ *
+ */
+@Data
+@Builder
+public class CoordinateQuery {
+    private RectangleCoordinates coordinates;
+    private QueryMode mode;
+    private Integer limit;
+}
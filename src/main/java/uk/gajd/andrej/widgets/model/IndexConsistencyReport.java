@@ -0,0 +1,30 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the model entity for the result of verifying repository indexes against the stored widgets.
+ * Only the first {@link #MAX_REPORTED_DRIFT} drift descriptions are kept, driftCount holds the total.
+ *
+ */
+@Data
+@Builder
+public class IndexConsistencyReport {
+    public static final int MAX_REPORTED_DRIFT = 100;
+
+    private long widgetCount;
+
+    private Map<String, Long> indexSizes;
+
+    private long driftCount;
+
+    private List<String> drift;
+
+    public boolean isConsistent() {
+        return driftCount == 0;
+    }
+}
@@ -0,0 +1,26 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * This is the model entity for the state of the profiling session.
+ * The recording size is only known once the session is stopped and its recording can be downloaded.
+ *
+ */
+@Data
+@Builder
+public class ProfilingStatus {
+    private boolean running;
+
+    private Instant startTime;
+
+    private Instant stopTime;
+
+    private Duration maxDuration;
+
+    private Long recordingSize;
+}
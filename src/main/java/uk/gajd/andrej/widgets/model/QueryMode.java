@@ -0,0 +1,42 @@
+package uk.gajd.andrej.widgets.model;
+
+/**
+ * This is how the widgets of a coordinate query relate to its rectangle:
+ * fully contained in it, or sharing some of its area, like the partially visible widgets of a viewport.
+ * Edges are inclusive for containment, while widgets only touching the rectangle don't intersect it.
+ *
+ */
+public enum QueryMode {
+    CONTAINS {
+        @Override
+        public boolean matches(Widget widget, RectangleCoordinates area) {
+            return widget.getXIndex() >= area.getX0()
+                    && (long) widget.getXIndex() + widget.getWidth() <= area.getX1()
+                    && widget.getYIndex() >= area.getY0()
+                    && (long) widget.getYIndex() + widget.getHeight() <= area.getY1();
+        }
+    },
+    INTERSECTS {
+        @Override
+        public boolean matches(Widget widget, RectangleCoordinates area) {
+            return widget.getXIndex() < area.getX1()
+                    && (long) widget.getXIndex() + widget.getWidth() > area.getX0()
+                    && widget.getYIndex() < area.getY1()
+                    && (long) widget.getYIndex() + widget.getHeight() > area.getY0();
+        }
+    };
+
+    public abstract boolean matches(Widget widget, RectangleCoordinates area);
+
+    /**
+     * @param value of the mode request parameter, case-insensitive
+     */
+    public static QueryMode fromParameter(String value) {
+        for (QueryMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Mode should be contains or intersects.");
+    }
+}
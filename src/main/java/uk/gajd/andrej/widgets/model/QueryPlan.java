@@ -0,0 +1,33 @@
+package uk.gajd.andrej.widgets.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * This is the model entity for an explained query: the access path the repository chose for it, how many widgets
+ * it read & matched, how many it returned and the stages it ran, each with its elapsed time.
+ * Counts the repository can't tell are left out, like the matched widgets of a query filtered by H2,
+ * and the database plan is only given by H2.
+ *
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class QueryPlan {
+    private String accessPath;
+
+    private Long estimatedCandidates;
+
+    private Long candidates;
+
+    private Long matched;
+
+    private int returned;
+
+    private List<QueryStage> stages;
+
+    private String databasePlan;
+}
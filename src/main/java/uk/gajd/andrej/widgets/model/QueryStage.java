@@ -0,0 +1,19 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is the model entity for one stage of an explained query, with how long it took.
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryStage {
+    private String name;
+    private long elapsedMicros;
+}
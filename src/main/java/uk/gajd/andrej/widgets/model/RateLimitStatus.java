@@ -0,0 +1,23 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This is the model entity for the state & counters of the client rate limiter, since the app started.
+ * Evicted counts the client buckets dropped to keep the number of clients tracked bounded.
+ *
+ */
+@Data
+@Builder
+public class RateLimitStatus {
+    private int clients;
+
+    private int maxClients;
+
+    private long allowed;
+
+    private long rejected;
+
+    private long evicted;
+}
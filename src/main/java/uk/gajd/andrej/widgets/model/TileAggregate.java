@@ -0,0 +1,27 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is the model entity for one tile of an aggregates histogram, the square starting at (x0, y0),
+ * with the number & total area of the widgets starting in it.
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TileAggregate {
+    private int x0;
+    private int y0;
+    private long count;
+    private long totalArea;
+
+    public void add(long count, long totalArea) {
+        this.count += count;
+        this.totalArea += totalArea;
+    }
+}
@@ -0,0 +1,35 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * This is the request model for one rectangle of a batch query, with the same parameters as a single
+ * coordinate query. Limit & mode are optional and default the same way.
+ *
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewportQuery {
+    @NotNull(message = "x0 should be provided.")
+    private Integer x0;
+
+    @NotNull(message = "y0 should be provided.")
+    private Integer y0;
+
+    @NotNull(message = "x1 should be provided.")
+    private Integer x1;
+
+    @NotNull(message = "y1 should be provided.")
+    private Integer y1;
+
+    private Integer limit;
+
+    private String mode;
+}
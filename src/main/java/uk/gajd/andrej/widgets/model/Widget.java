@@ -6,8 +6,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.time.LocalDateTime;
 
 /**
@@ -35,16 +33,43 @@ public class Widget {
     private Integer height;
 
     private LocalDateTime updateTime;
-    
-    public static Widget mapRowToWidget(ResultSet resultSet, int rowNum) throws SQLException {
-        return Widget.builder()
-                .id(resultSet.getLong("id"))
-                .xIndex(resultSet.getInt("xIndex"))
-                .yIndex(resultSet.getInt("yIndex"))
-                .zIndex(resultSet.getInt("zIndex"))
-                .width(resultSet.getInt("width"))
-                .height(resultSet.getInt("height"))
-                .updateTime(resultSet.getTimestamp("updateTime").toLocalDateTime())
-                .build();
+
+    /**
+     * @return the zIndex right above the given one
+     * @throws IllegalArgumentException if the given one is the top of the z-space
+     */
+    public static int above(int zIndex) {
+        if (zIndex == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("There is no zIndex left above " + zIndex + ".");
+        }
+        return zIndex + 1;
+    }
+
+    /**
+     * @return the coordinate moved by the delta
+     * @throws IllegalArgumentException if the widget would be moved out of the int range of the board
+     */
+    public static int offset(int coordinate, int delta) {
+        try {
+            return Math.addExact(coordinate, delta);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Moving by " + delta + " from " + coordinate + " is out of the board.");
+        }
+    }
+
+    /**
+     * @return true if the point is on the widget, which covers its left & top edges but not its right & bottom ones,
+     * so a point on the edge between two adjacent widgets is only on one of them
+     */
+    public boolean covers(int x, int y) {
+        return x >= xIndex && x < (long) xIndex + width
+                && y >= yIndex && y < (long) yIndex + height;
+    }
+
+    /**
+     * @return width times height, as a long since it doesn't fit an int for big widgets
+     */
+    public long area() {
+        return (long) width * height;
     }
 }
@@ -0,0 +1,28 @@
+package uk.gajd.andrej.widgets.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * This is the model entity for the aggregates of the widgets on the board or of those starting in a rectangle.
+ * The bounding box is only given for the whole board, the histogram of tiles only for a rectangle,
+ * where it holds the tiles with at least one widget, ordered by row.
+ *
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetAggregates {
+    private long count;
+
+    private long totalArea;
+
+    private RectangleCoordinates boundingBox;
+
+    private Integer tileSize;
+
+    private List<TileAggregate> tiles;
+}
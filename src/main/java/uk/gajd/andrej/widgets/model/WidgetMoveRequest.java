@@ -0,0 +1,20 @@
+package uk.gajd.andrej.widgets.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * This is the request model for moving a widget on the board by a delta, which leaves its size & zIndex as they are.
+ *
+ */
+@Data
+@Builder
+public class WidgetMoveRequest {
+    @NotNull(message = "dx should be provided.")
+    private Integer dx;
+
+    @NotNull(message = "dy should be provided.")
+    private Integer dy;
+}
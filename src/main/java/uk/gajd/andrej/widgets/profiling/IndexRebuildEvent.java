@@ -0,0 +1,38 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This is the JFR event of an index rebuilt from the stored widgets.
+ *
+ */
+@Name("uk.gajd.andrej.widgets.IndexRebuild")
+@Label("Widget Index Rebuild")
+@Category({"Widgets", "Repository"})
+@Description("An index rebuilt from the stored widgets")
+public class IndexRebuildEvent extends Event {
+    @Label("Index")
+    String index;
+
+    @Label("Entries")
+    long entries;
+
+    public IndexRebuildEvent(String index) {
+        this.index = index;
+    }
+
+    /**
+     * Ends the event and commits it, if it is recorded and lasted long enough for the recording's threshold.
+     */
+    public void commit(long entries) {
+        end();
+        if (shouldCommit()) {
+            this.entries = entries;
+            commit();
+        }
+    }
+}
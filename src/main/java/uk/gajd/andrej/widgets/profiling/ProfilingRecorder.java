@@ -0,0 +1,161 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import uk.gajd.andrej.widgets.exception.ProfilingSessionConflictException;
+import uk.gajd.andrej.widgets.model.ProfilingStatus;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * This runs one JDK Flight Recorder session at a time, with the JDK's "profile" settings and the widget events
+ * emitted from the repository hot paths. The execution samples within a {@link ShiftEvent} or {@link QueryEvent}
+ * give the flame graph of that operation in JDK Mission Control, without attaching anything to the process.
+ *
+ * A session stops by itself after its max duration, so a forgotten one doesn't keep recording.
+ * Once stopped, its recording is kept in a temporary file until the next session is stopped.
+ *
+ */
+@Slf4j
+@Component
+public class ProfilingRecorder {
+    private static final String SETTINGS = "profile";
+
+    private final Duration defaultMaxDuration;
+    private Recording recording;
+    private Path recordingFile;
+    private ProfilingStatus lastStatus = ProfilingStatus.builder().running(false).build();
+
+    public ProfilingRecorder(@Value("${widgets.profiling.max-duration-seconds:300}") long maxDurationSeconds) {
+        this.defaultMaxDuration = Duration.ofSeconds(maxDurationSeconds);
+    }
+
+    public Duration getDefaultMaxDuration() {
+        return defaultMaxDuration;
+    }
+
+    /**
+     * Starts a session, discarding a previous one which stopped by itself and wasn't collected.
+     *
+     * @param maxDuration after which the session stops by itself
+     */
+    public synchronized ProfilingStatus start(Duration maxDuration) {
+        if (maxDuration.isNegative() || maxDuration.isZero()) {
+            throw new IllegalArgumentException("Max duration should be positive.");
+        }
+        if (isRunning()) {
+            throw new ProfilingSessionConflictException("A profiling session is already running.");
+        }
+        if (recording != null) {
+            recording.close();
+        }
+        try {
+            recording = new Recording(Configuration.getConfiguration(SETTINGS));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Couldn't read the JFR settings: " + SETTINGS, e);
+        }
+        recording.setName("widgets-profiling");
+        recording.enable(ShiftEvent.class);
+        recording.enable(QueryEvent.class);
+        recording.enable(IndexRebuildEvent.class);
+        recording.setDuration(maxDuration);
+        recording.start();
+        return statusOf(recording, null);
+    }
+
+    /**
+     * Stops the session, if it didn't stop by itself, and writes its recording for download.
+     */
+    public synchronized ProfilingStatus stop() {
+        if (recording == null) {
+            throw new ProfilingSessionConflictException("No profiling session was started.");
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        try {
+            Path file = Files.createTempFile("widgets-", ".jfr");
+            recording.dump(file);
+            deleteRecordingFile();
+            recordingFile = file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastStatus = statusOf(recording, sizeOf(recordingFile));
+        recording.close();
+        recording = null;
+        return lastStatus;
+    }
+
+    /**
+     * @return the running session, or the last stopped one
+     */
+    public synchronized ProfilingStatus getStatus() {
+        return recording != null ? statusOf(recording, null) : lastStatus;
+    }
+
+    /**
+     * @return the recording of the last stopped session
+     */
+    public synchronized Path getRecordingFile() {
+        if (recordingFile == null) {
+            throw new ProfilingSessionConflictException("No profiling session was stopped yet.");
+        }
+        return recordingFile;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+        deleteRecordingFile();
+        recordingFile = null;
+    }
+
+    private ProfilingStatus statusOf(Recording recording, Long recordingSize) {
+        return ProfilingStatus.builder()
+                .running(recording.getState() == RecordingState.RUNNING)
+                .startTime(recording.getStartTime())
+                .stopTime(recording.getStopTime())
+                .maxDuration(recording.getDuration())
+                .recordingSize(recordingSize)
+                .build();
+    }
+
+    private boolean isRunning() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    private void deleteRecordingFile() {
+        if (recordingFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(recordingFile);
+        } catch (IOException e) {
+            log.warn("Couldn't delete the profiling recording {}", recordingFile, e);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This is the JFR event of a repository query, with the widgets it had to look at and those it returned.
+ *
+ */
+@Name("uk.gajd.andrej.widgets.Query")
+@Label("Widget Query")
+@Category({"Widgets", "Repository"})
+@Description("A repository query with its candidate and result counts")
+public class QueryEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Candidates")
+    @Description("Widgets read from the index before filtering")
+    int candidates;
+
+    @Label("Results")
+    int results;
+
+    public QueryEvent(String operation) {
+        this.operation = operation;
+    }
+
+    public void addCandidate() {
+        candidates++;
+    }
+
+    /**
+     * @param count of candidates read by the tasks of a parallel query
+     */
+    public void addCandidates(long count) {
+        candidates += (int) count;
+    }
+
+    /**
+     * Ends the event and commits it, if it is recorded and lasted long enough for the recording's threshold.
+     */
+    public void commit(int results) {
+        end();
+        if (shouldCommit()) {
+            this.results = results;
+            commit();
+        }
+    }
+
+    /**
+     * Commits the event for a query filtered entirely by the database, where every candidate is a result.
+     */
+    public void commitFiltered(int results) {
+        candidates = results;
+        commit(results);
+    }
+}
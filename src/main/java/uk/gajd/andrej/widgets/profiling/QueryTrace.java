@@ -0,0 +1,34 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import uk.gajd.andrej.widgets.model.QueryStage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This times the stages of an explained query one after the other. Unlike {@link QueryEvent},
+ * which is recorded for every query, it is only used when a query is explained, so the stages run separately
+ * instead of streaming into each other and can be timed on their own.
+ *
+ */
+public class QueryTrace {
+    private final List<QueryStage> stages = new ArrayList<>();
+
+    /**
+     * @param name of the stage
+     * @param step running the stage
+     * @return the result of the stage
+     */
+    public <T> T stage(String name, Supplier<T> step) {
+        long start = System.nanoTime();
+        T result = step.get();
+        stages.add(new QueryStage(name, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)));
+        return result;
+    }
+
+    public List<QueryStage> getStages() {
+        return stages;
+    }
+}
@@ -0,0 +1,37 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * This is the JFR event of a shift, moving a contiguous run of widgets one zIndex up to make room for a save.
+ * The event spans the shift, so the execution samples taken meanwhile show where its time went.
+ *
+ */
+@Name("uk.gajd.andrej.widgets.Shift")
+@Label("Widget Shift")
+@Category({"Widgets", "Repository"})
+@Description("A run of widgets moved one zIndex up to make room for a save")
+public class ShiftEvent extends Event {
+    @Label("From zIndex")
+    int fromZIndex;
+
+    @Label("Run Length")
+    @Description("Widgets moved by the shift")
+    int runLength;
+
+    /**
+     * Ends the event and commits it, if it is recorded and lasted long enough for the recording's threshold.
+     */
+    public void commit(int fromZIndex, int runLength) {
+        end();
+        if (shouldCommit()) {
+            this.fromZIndex = fromZIndex;
+            this.runLength = runLength;
+            commit();
+        }
+    }
+}
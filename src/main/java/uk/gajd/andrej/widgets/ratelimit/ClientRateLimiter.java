@@ -0,0 +1,113 @@
+package uk.gajd.andrej.widgets.ratelimit;
+
+import uk.gajd.andrej.widgets.model.RateLimitStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * This is the rate limiter of the widget API clients, each refilling a {@link TokenBucket} of burst tokens
+ * at tokensPerSecond, from which requests take tokens by their cost.
+ * The buckets are kept in a map bounded to maxClients: when a new client would exceed them, the buckets which are full again
+ * are dropped, as a new bucket is just as full, and if that is not enough the clients idle longest are dropped too,
+ * down to nine in ten of maxClients so the next clients don't sweep the map again. A dropped client starts over
+ * with a full bucket, so the bound only ever lets a client through, it never rejects one.
+ *
+ */
+@Component
+public class ClientRateLimiter {
+    private static final double EVICTED_SIZE_RATIO = 0.9;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final long tokenNanos;
+    private final long capacityNanos;
+    private final int burst;
+    private final int maxClients;
+    private final LongSupplier clock;
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    @Autowired
+    public ClientRateLimiter(@Value("${widgets.rate-limit.tokens-per-second:1000}") int tokensPerSecond,
+                             @Value("${widgets.rate-limit.burst:2000}") int burst,
+                             @Value("${widgets.rate-limit.max-clients:100000}") int maxClients) {
+        this(tokensPerSecond, burst, maxClients, System::nanoTime);
+    }
+
+    ClientRateLimiter(int tokensPerSecond, int burst, int maxClients, LongSupplier clock) {
+        if (tokensPerSecond < 1 || burst < 1 || maxClients < 1) {
+            throw new IllegalArgumentException("Rate limit tokens per second, burst & max clients should be at least 1.");
+        }
+        this.tokenNanos = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.capacityNanos = tokenNanos * burst;
+        this.burst = burst;
+        this.maxClients = maxClients;
+        this.clock = clock;
+    }
+
+    /**
+     * A cost above the burst is charged as the burst, so an expensive request is slowed down, never refused forever.
+     *
+     * @return 0 if the client may run the request, otherwise the nanos until it may
+     */
+    public long tryAcquire(String client, int cost) {
+        long now = clock.getAsLong();
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= maxClients) {
+                evict(now);
+            }
+            bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(now));
+        }
+        long waitNanos = bucket.tryTake(Math.min(cost, burst) * tokenNanos, capacityNanos, now);
+        (waitNanos == 0 ? allowed : rejected).increment();
+        return waitNanos;
+    }
+
+    public RateLimitStatus getStatus() {
+        return RateLimitStatus.builder()
+                .clients(buckets.size())
+                .maxClients(maxClients)
+                .allowed(allowed.sum())
+                .rejected(rejected.sum())
+                .evicted(evicted.sum())
+                .build();
+    }
+
+    /**
+     * Only one thread sweeps at a time, the others go on with their request meanwhile.
+     */
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int before = buckets.size();
+            buckets.values().removeIf(bucket -> bucket.isFull(now));
+            int target = (int) (maxClients * EVICTED_SIZE_RATIO);
+            if (buckets.size() > target) {
+                // Idle times are taken once, as the buckets keep being used while sorting
+                List<Map.Entry<String, Long>> idleNanos = new ArrayList<>(buckets.size());
+                buckets.forEach((client, bucket) -> idleNanos.add(Map.entry(client, bucket.idleNanos(now))));
+                idleNanos.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+                for (int i = 0; i < idleNanos.size() && buckets.size() > target; i++) {
+                    buckets.remove(idleNanos.get(i).getKey());
+                }
+            }
+            evicted.add(Math.max(0, before - buckets.size()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package uk.gajd.andrej.widgets.ratelimit;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the filter limiting the rate of each client of the widget API, known by its X-API-Key header
+ * or else by its address, with the {@link ClientRateLimiter}. A request costs tokens by the work it asks for:
+ * a widget by id one, a list query one more per {@link #WIDGETS_PER_TOKEN} widgets of its limit, so a page of 500
+ * costs as much as 51 widgets by id. A HEAD request costs like its GET, a CORS preflight costs nothing.
+ * A client out of tokens gets 429, with a Retry-After of when it has them again.
+ *
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    static final String API_KEY_HEADER = "X-API-Key";
+    static final int WIDGETS_PER_TOKEN = 10;
+    static final int DEFAULT_LIMIT = 10;
+    static final int MAX_LIMIT = 500;
+    // The rectangles are in the body, which isn't read before the controller, so a batch costs like a full page
+    static final int BATCH_QUERY_COST = 1 + MAX_LIMIT / WIDGETS_PER_TOKEN;
+    static final int AGGREGATES_COST = 5;
+    static final int WRITE_COST = 5; // Writes may shift the widgets above
+    private static final String BATCH_QUERY_PATH = "/batch-query";
+    private static final String AGGREGATES_PATH = "/aggregates";
+    private static final String LIST_PATH = "/v1/widgets";
+    private static final Set<HttpMethod> WRITE_METHODS =
+            EnumSet.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+
+    private final ClientRateLimiter rateLimiter;
+
+    public RateLimitFilter(ClientRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long waitNanos = rateLimiter.tryAcquire(clientOf(request), costOf(request));
+        if (waitNanos == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write("Rate limit exceeded, try again later.");
+    }
+
+    /**
+     * @return the client a request is charged to, also used to scope other per-client state
+     */
+    public static String clientOf(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        return apiKey != null && !apiKey.isEmpty() ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+
+    static int costOf(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        if (method == HttpMethod.OPTIONS) {
+            return 0;
+        }
+        String uri = request.getRequestURI();
+        if (uri.endsWith(BATCH_QUERY_PATH)) {
+            return BATCH_QUERY_COST;
+        }
+        if (WRITE_METHODS.contains(method)) {
+            return WRITE_COST;
+        }
+        if (uri.endsWith(AGGREGATES_PATH)) {
+            return AGGREGATES_COST;
+        }
+        if (uri.endsWith(LIST_PATH)) {
+            return 1 + limitOf(request) / WIDGETS_PER_TOKEN;
+        }
+        return 1;
+    }
+
+    /**
+     * An invalid limit is charged as the default one, the controller rejects it anyway.
+     */
+    private static int limitOf(HttpServletRequest request) {
+        String limit = request.getParameter("limit");
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limit)));
+        } catch (NumberFormatException e) {
+            return DEFAULT_LIMIT;
+        }
+    }
+}
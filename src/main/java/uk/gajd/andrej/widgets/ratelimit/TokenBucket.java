@@ -0,0 +1,54 @@
+package uk.gajd.andrej.widgets.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * This is the token bucket of a client, kept as the single time at which it would be full again
+ * (the generic cell rate algorithm): taking tokens moves that time forward by their refill time,
+ * and is refused when it would move past now by more than the time a full bucket takes to refill.
+ * Taking tokens is one compare-and-set, without a lock or a refill thread.
+ *
+ */
+final class TokenBucket {
+    private static final AtomicLongFieldUpdater<TokenBucket> FULL_AT =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "fullAt");
+
+    private volatile long fullAt;
+    private volatile long usedAt;
+
+    TokenBucket(long now) {
+        this.fullAt = now;
+        this.usedAt = now;
+    }
+
+    /**
+     * @param tokenNanos refill time of the tokens taken
+     * @param capacityNanos refill time of a full bucket
+     * @return 0 if the tokens are taken, otherwise the nanos until the bucket holds them
+     */
+    long tryTake(long tokenNanos, long capacityNanos, long now) {
+        usedAt = now;
+        while (true) {
+            long current = fullAt;
+            long next = Math.max(current, now) + tokenNanos;
+            long excess = next - now - capacityNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (FULL_AT.compareAndSet(this, current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    boolean isFull(long now) {
+        return fullAt - now <= 0;
+    }
+
+    /**
+     * @return nanos since the client last asked for tokens
+     */
+    long idleNanos(long now) {
+        return now - usedAt;
+    }
+}
@@ -1,9 +1,15 @@
 package uk.gajd.andrej.widgets.repository;
 
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * This is the repository interface for {@link Widget}.
@@ -14,10 +20,68 @@ public interface WidgetRepository {
 
     void deleteById(Long id);
 
+    /**
+     * Moves a widget on the board, keeping its zIndex.
+     */
+    Widget moveBy(Long id, int dx, int dy);
+
+    /**
+     * Moves a widget above all others, unless it is already the top one.
+     */
+    Widget bringToFront(Long id);
+
+    /**
+     * Moves a widget below all others, unless it is already the bottom one.
+     * The z-space grows downwards into negative zIndexes for it, instead of shifting the widgets above.
+     */
+    Widget sendToBack(Long id);
+
+    /**
+     * Moves a widget right above another one, shifting the widgets above that one if needed.
+     */
+    Widget moveAbove(Long id, Long belowId);
+
     Widget findById(Long id);
 
     List<Widget> findWithLimit(Integer limit);
 
-    List<Widget> findWithCoordinates(RectangleCoordinates coordinates, Integer limit);
+    List<Widget> findWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit);
+
+    /**
+     * Runs the query of {@link #findWithLimit} stage by stage.
+     *
+     * @return how the query was answered, instead of its widgets
+     */
+    QueryPlan explainWithLimit(Integer limit);
+
+    /**
+     * Runs the query of {@link #findWithCoordinates(RectangleCoordinates, QueryMode, Integer)} stage by stage.
+     *
+     * @return how the query was answered, instead of its widgets
+     */
+    QueryPlan explainWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit);
+
+    /**
+     * @return the widgets found by each query, which all run against the same state of the board
+     */
+    List<List<Widget>> findWithCoordinates(List<CoordinateQuery> queries);
+
+    /**
+     * @return the widget with the highest zIndex among those covering the point, or empty if there is none
+     */
+    Optional<Widget> findTopAt(int x, int y);
+
+    /**
+     * @return count, total area & bounding box of all widgets
+     */
+    WidgetAggregates aggregate();
+
+    /**
+     * @param tileSize side of the tiles of the histogram, a power of two
+     * @return count & total area of the widgets starting in the area, in total and by tile
+     */
+    WidgetAggregates aggregate(RectangleCoordinates area, int tileSize);
+
+    IndexConsistencyReport verifyIndexes();
 
 }
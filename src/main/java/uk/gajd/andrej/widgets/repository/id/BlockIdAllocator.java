@@ -0,0 +1,60 @@
+package uk.gajd.andrej.widgets.repository.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * This hands out ids from blocks reserved from a shared source, like a database sequence incremented by the block size,
+ * so the source is only asked once per block. Taking an id from the current block is a single atomic increment,
+ * only reserving the next block is done under a lock.
+ *
+ * The ids of a block are handed out in order, but unused ids of a block are lost when the instance goes away.
+ *
+ */
+public class BlockIdAllocator implements IdAllocator {
+    private final LongSupplier blockStarts;
+    private final int blockSize;
+    private volatile Block block;
+
+    /**
+     * @param blockStarts reserves the next block, returning its first id
+     * @param blockSize   number of ids in each block
+     */
+    public BlockIdAllocator(LongSupplier blockStarts, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size should be at least 1.");
+        }
+        this.blockStarts = blockStarts;
+        this.blockSize = blockSize;
+        this.block = new Block(0, 0);
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            Block current = block;
+            long id = current.nextId.getAndIncrement();
+            if (id < current.end) {
+                return id;
+            }
+            reserveBlockAfter(current);
+        }
+    }
+
+    private synchronized void reserveBlockAfter(Block exhausted) {
+        if (block == exhausted) { // Otherwise another thread has reserved it already
+            long start = blockStarts.getAsLong();
+            block = new Block(start, start + blockSize);
+        }
+    }
+
+    private static final class Block {
+        private final AtomicLong nextId;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.nextId = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
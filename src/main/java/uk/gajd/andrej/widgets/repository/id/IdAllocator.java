@@ -0,0 +1,9 @@
+package uk.gajd.andrej.widgets.repository.id;
+
+/**
+ * This is the source of ids for new widgets. Implementations are thread-safe and never hand out an id twice.
+ *
+ */
+public interface IdAllocator {
+    long nextId();
+}
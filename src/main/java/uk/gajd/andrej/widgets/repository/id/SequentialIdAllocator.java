@@ -0,0 +1,32 @@
+package uk.gajd.andrej.widgets.repository.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This hands out consecutive ids from an atomic counter owned by the instance.
+ *
+ */
+public class SequentialIdAllocator implements IdAllocator {
+    private final AtomicLong nextId;
+
+    /**
+     * @param firstId to hand out first
+     */
+    public SequentialIdAllocator(long firstId) {
+        this.nextId = new AtomicLong(firstId);
+    }
+
+    @Override
+    public long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Moves the counter past the ids of restored widgets, it never moves back.
+     *
+     * @param highestUsedId of the restored widgets
+     */
+    public void restore(long highestUsedId) {
+        nextId.accumulateAndGet(highestUsedId + 1, Math::max);
+    }
+}
@@ -0,0 +1,93 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.repository.index.CoordinateStatistics;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
+
+/**
+ * This chooses how the in-memory repository answers a coordinate query, by comparing the estimated cost of its paths:
+ * the grid reads the candidates of the rectangle's cells and sorts all matches by zIndex, while the zIndex scan reads
+ * widgets in z order and stops at the limit. The scan wins when the rectangle holds most of the board, as it then
+ * finds the limit of matches after few widgets, the grid wins for a viewport, which the scan would read past.
+ *
+ */
+final class CoordinateQueryPlanner {
+    // Costs of reading one widget by each path and of sorting one match, relative to reading a grid candidate,
+    // as timed on a board of 200k widgets: ~300ns per grid candidate, ~40ns per widget scanned, ~50ns per n log n
+    static final double GRID_CANDIDATE_COST = 1;
+    static final double Z_SCAN_COST = 0.1;
+    static final double SORT_COST = 0.15;
+
+    private final GridIndex gridIndex;
+    private final CoordinateStatistics statistics;
+    private final long parallelThreshold;
+
+    enum AccessPath {
+        GRID("grid index"),
+        PARALLEL_GRID("grid index, parallel top-k"),
+        Z_SCAN("zIndex scan");
+
+        private final String description;
+
+        AccessPath(String description) {
+            this.description = description;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * The access path chosen for a query, with the candidates it is expected to read.
+     */
+    static final class Plan {
+        private final AccessPath accessPath;
+        private final long estimatedCandidates;
+
+        Plan(AccessPath accessPath, long estimatedCandidates) {
+            this.accessPath = accessPath;
+            this.estimatedCandidates = estimatedCandidates;
+        }
+
+        AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        long getEstimatedCandidates() {
+            return estimatedCandidates;
+        }
+    }
+
+    /**
+     * @param parallelThreshold estimated grid candidates from which the grid path runs in parallel
+     */
+    CoordinateQueryPlanner(GridIndex gridIndex, CoordinateStatistics statistics, long parallelThreshold) {
+        this.gridIndex = gridIndex;
+        this.statistics = statistics;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Matches are assumed to be spread evenly over the z order, so the scan reads widgets / matches widgets
+     * for each match it returns, or all widgets when there are fewer matches than the limit.
+     */
+    Plan plan(RectangleCoordinates area, QueryMode mode, int limit) {
+        long widgets = statistics.size();
+        long gridCandidates = gridIndex.estimateCandidates(area);
+        double matches = Math.min(statistics.estimateMatches(area, mode), gridCandidates);
+        long scanCandidates = matches < limit ? widgets : (long) Math.ceil(widgets * limit / matches);
+
+        double gridCost = gridCandidates * GRID_CANDIDATE_COST + matches * log2(matches + 1) * SORT_COST;
+        double scanCost = scanCandidates * Z_SCAN_COST;
+        if (scanCost < gridCost) {
+            return new Plan(AccessPath.Z_SCAN, scanCandidates);
+        }
+        return new Plan(gridCandidates >= parallelThreshold ? AccessPath.PARALLEL_GRID : AccessPath.GRID, gridCandidates);
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+}
@@ -1,27 +1,33 @@
 package uk.gajd.andrej.widgets.repository.impl;
 
 import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
+import uk.gajd.andrej.widgets.profiling.QueryEvent;
+import uk.gajd.andrej.widgets.profiling.QueryTrace;
 import uk.gajd.andrej.widgets.repository.WidgetRepository;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * This is the repository implementation to use H2 in-memory DB as datasource for operations.
@@ -29,49 +35,108 @@ import java.util.Optional;
  */
 @Repository
 @Profile("h2")
-@RequiredArgsConstructor
 public class H2WidgetRepository implements WidgetRepository {
-    static final String QUERY_SELECT_MAX_Z_INDEX = "select max(zIndex) from widget";
-    static final String QUERY_DELETE_WIDGET = "delete from widget where id=?";
-    private static final String QUERY_SELECT_BY_Z_INDEX = "select * from widget where zIndex=?";
-    private static final String QUERY_INSERT_WIDGET = "insert into widget (xIndex, yIndex, zIndex, width, height, updateTime) values(?,?,?,?,?,?)";
-    private static final int QUERY_RESULT_SUCCESS = 1;
-    private static final String QUERY_UPDATE_Z_INDEXES = "update widget set zIndex = zIndex + 1 where id=?";
-    private static final String QUERY_UPDATE_WIDGET = "update widget set xIndex=?, yIndex=?, zIndex=?, width=?, height=?, updateTime=? where id = ?";
-    private static final String QUERY_SELECT_BY_ID = "select * from widget where id=?";
-    private static final String QUERY_SELECT_BY_LIMIT = "select * from widget order by zIndex limit ?";
-    private static final String QUERY_SELECT_BY_COORDINATE_AND_LIMIT = "select * from widget " +
-            "where xIndex >= ? and xIndex + width <= ?" +
-            "and yIndex >= ? and yIndex + height <= ?" +
+    private static final String QUERY_SELECT_BY_ID = "select " + WidgetRowMapper.COLUMNS + " from widget where id=?";
+    private static final String QUERY_SELECT_BY_LIMIT = "select " + WidgetRowMapper.COLUMNS + " from widget order by zIndex limit ?";
+    // x1 & y1 are computed columns (xIndex + width, yIndex + height) covered by the spatial_x & spatial_y indexes,
+    // bigint as a widget may end past the int range of the board.
+    // Since width & height are positive, a contained widget also starts strictly before x1/y1 of the rectangle,
+    // which closes the range on the leading index column instead of leaving it open-ended.
+    private static final String QUERY_SELECT_BY_COORDINATE_AND_LIMIT = "select " + WidgetRowMapper.COLUMNS + " from widget " +
+            "where xIndex >= ? and xIndex < ? and x1 <= ? " +
+            "and yIndex >= ? and yIndex < ? and y1 <= ? " +
             "order by zIndex limit ?";
+    // An intersecting widget starts before x1/y1 of the rectangle and ends after its x0/y0. The ends aren't
+    // on the leading index columns, so the starts are bounded from the left & top by the widest & tallest widget,
+    // which keeps the index range as narrow as the widget sizes allow.
+    private static final String QUERY_SELECT_INTERSECTING_AND_LIMIT = "select " + WidgetRowMapper.COLUMNS + " from widget " +
+            "where xIndex >= ? and xIndex < ? and x1 > ? " +
+            "and yIndex >= ? and yIndex < ? and y1 > ? " +
+            "order by zIndex limit ?";
+    // A covering widget starts at or before the point and ends after it, bounded like the intersecting ones.
+    private static final String QUERY_SELECT_TOP_AT = "select " + WidgetRowMapper.COLUMNS + " from widget " +
+            "where xIndex >= ? and xIndex <= ? and x1 > ? " +
+            "and yIndex >= ? and yIndex <= ? and y1 > ? " +
+            "order by zIndex desc limit 1";
+    // A single scan of the table computes every aggregate. The max ends are sums of two columns,
+    // which no index holds, so H2 doesn't read any of them from the ends of spatial_x & spatial_y.
+    private static final String QUERY_SELECT_AGGREGATES = "select count(*), coalesce(sum(cast(width as bigint) * height), 0), " +
+            "min(xIndex), min(yIndex), max(cast(xIndex as bigint) + width), max(cast(yIndex as bigint) + height) from widget";
+    // The widgets starting in the rectangle are a range of spatial_x, grouped by the tile they start in.
+    private static final String QUERY_SELECT_TILE_AGGREGATES = "select tileX, tileY, count(*), sum(area) from " +
+            "(select floor(cast(xIndex as double) / ?) tileX, floor(cast(yIndex as double) / ?) tileY, cast(width as bigint) * height area from widget " +
+            "where xIndex >= ? and xIndex < ? and yIndex >= ? and yIndex < ?) " +
+            "group by tileX, tileY order by tileY, tileX";
+
+    // Runs the query and annotates its plan with the rows each index or table scan read, e.g.
+    // FROM PUBLIC.WIDGET /* PUBLIC.SPATIAL_X: XINDEX >= ?1 AND XINDEX < ?2 */ /* scanCount: 3 */
+    private static final String EXPLAIN_ANALYZE = "explain analyze ";
+    private static final Pattern PLAN_ACCESS_PATH = Pattern.compile("FROM \\S+\\s+/\\* ([^:*]+)");
+    private static final Pattern PLAN_SCAN_COUNT = Pattern.compile("scanCount: (\\d+)");
+
+    static final String QUERY_COUNT_WIDGETS = "select count(*) from widget";
+    static final String QUERY_COUNT_SHARED_Z_INDEXES = "select count(*) from " +
+            "(select zIndex from widget group by zIndex having count(*) > 1)";
+    static final String QUERY_SELECT_SHARED_Z_INDEXES = "select zIndex, count(*) from widget " +
+            "group by zIndex having count(*) > 1 order by zIndex limit ?";
 
     private final JdbcTemplate jdbcTemplate;
+    private final H2WriteCoalescer writeCoalescer;
+    private final TransactionTemplate snapshotTemplate;
+    private final int fetchSize;
 
+    /**
+     * @param fetchSize of the list queries, the rows fetched per round trip to the database
+     */
+    public H2WidgetRepository(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              H2WriteCoalescer writeCoalescer,
+                              @Value("${widgets.h2.fetch-size:256}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writeCoalescer = writeCoalescer;
+        this.fetchSize = fetchSize;
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setReadOnly(true);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * Writes go through the write coalescer, which keeps the taken zIndexes in memory.
+     */
     @Override
-    @Transactional
     public Widget save(Widget widget) {
-        if (widget.getZIndex() != null && findByZIndex(widget.getZIndex()).isPresent()) { // Shifting required.
-            shift(widget.getZIndex());
-        }
+        return writeCoalescer.save(widget);
+    }
 
-        if (widget.getZIndex() == null) {
-            widget.setZIndex(getMaxZIndex() + 1);
-        }
+    @Override
+    public void deleteById(Long id) {
+        writeCoalescer.deleteById(id);
+    }
 
-        return widget.getId() == null ? saveWidget(widget) : updateWidget(widget);
+    @Override
+    public Widget moveBy(Long id, int dx, int dy) {
+        return writeCoalescer.moveBy(id, dx, dy);
     }
 
     @Override
-    public void deleteById(Long id) {
-        if (jdbcTemplate.update(QUERY_DELETE_WIDGET, id) != QUERY_RESULT_SUCCESS) {
-            throw new WidgetNotFoundException("Couldn't find widget to delete with id: " + id);
-        }
+    public Widget bringToFront(Long id) {
+        return writeCoalescer.bringToFront(id);
+    }
+
+    @Override
+    public Widget sendToBack(Long id) {
+        return writeCoalescer.sendToBack(id);
+    }
+
+    @Override
+    public Widget moveAbove(Long id, Long belowId) {
+        return writeCoalescer.moveAbove(id, belowId);
     }
 
     @Override
     public Widget findById(Long id) {
         try {
-            return jdbcTemplate.queryForObject(QUERY_SELECT_BY_ID, new BeanPropertyRowMapper<>(Widget.class), id);
+            return jdbcTemplate.queryForObject(QUERY_SELECT_BY_ID, WidgetRowMapper.INSTANCE, id);
         } catch (EmptyResultDataAccessException e) {
             throw new WidgetNotFoundException("Couldn't find widget by id: " + id);
         }
@@ -79,98 +144,177 @@ public class H2WidgetRepository implements WidgetRepository {
 
     @Override
     public List<Widget> findWithLimit(Integer limit) {
-        return jdbcTemplate.query(QUERY_SELECT_BY_LIMIT,
-                Widget::mapRowToWidget, limit);
+        QueryEvent event = new QueryEvent("findWithLimit");
+        event.begin();
+        List<Widget> widgets = jdbcTemplate.query(QUERY_SELECT_BY_LIMIT, ps -> {
+            ps.setFetchSize(fetchSize);
+            ps.setInt(1, limit);
+        }, WidgetRowMapper.INSTANCE);
+        event.commitFiltered(widgets.size());
+        return widgets;
     }
 
     @Override
-    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, Integer limit) {
-        return jdbcTemplate.query(QUERY_SELECT_BY_COORDINATE_AND_LIMIT,
-                Widget::mapRowToWidget,
-                coordinates.getX0(),
-                coordinates.getX1(),
-                coordinates.getY0(),
-                coordinates.getY1(),
-                limit);
+    public QueryPlan explainWithLimit(Integer limit) {
+        return explain(QUERY_SELECT_BY_LIMIT, ps -> ps.setInt(1, limit));
     }
 
-    private void shift(Integer zIndex) {
-        List<Long> widgetIdsToShift = new ArrayList<>();
-        boolean widgetExistsAtZIndex = true;
-
-        while (widgetExistsAtZIndex) {
-            Optional<Widget> optionalWidget = findByZIndex(zIndex);
-            if (optionalWidget.isEmpty()) {
-                widgetExistsAtZIndex = false;
-            } else {
-                widgetIdsToShift.add(optionalWidget.get().getId());
-                zIndex++;
-            }
-        }
+    @Override
+    public QueryPlan explainWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        return mode == QueryMode.INTERSECTS
+                ? explain(QUERY_SELECT_INTERSECTING_AND_LIMIT, intersectingParameters(coordinates, limit))
+                : explain(QUERY_SELECT_BY_COORDINATE_AND_LIMIT, containedParameters(coordinates, limit));
+    }
 
-        updateZIndexes(widgetIdsToShift);
+    /**
+     * The query is run once as it is, to time it, and once more by H2's explain analyze, for its plan & scan count.
+     */
+    private QueryPlan explain(String query, PreparedStatementSetter parameters) {
+        QueryTrace trace = new QueryTrace();
+        List<Widget> widgets = trace.stage("query", () -> jdbcTemplate.query(query, parameters, WidgetRowMapper.INSTANCE));
+        String databasePlan = trace.stage(EXPLAIN_ANALYZE.trim(), () -> jdbcTemplate.query(EXPLAIN_ANALYZE + query, parameters,
+                resultSet -> resultSet.next() ? resultSet.getString(1) : ""));
+        Matcher accessPath = PLAN_ACCESS_PATH.matcher(databasePlan);
+        Matcher scanCount = PLAN_SCAN_COUNT.matcher(databasePlan);
+        return QueryPlan.builder()
+                .accessPath(accessPath.find() ? accessPath.group(1).trim() : "unknown")
+                .candidates(scanCount.find() ? Long.valueOf(scanCount.group(1)) : null)
+                .returned(widgets.size())
+                .stages(trace.getStages())
+                .databasePlan(databasePlan)
+                .build();
     }
 
-    private Widget saveWidget(Widget widget) {
-        widget.setUpdateTime(LocalDateTime.now());
+    @Override
+    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryEvent event = new QueryEvent("findWithCoordinates");
+        event.begin();
+        List<Widget> widgets = mode == QueryMode.INTERSECTS
+                ? findIntersecting(coordinates, limit)
+                : findContained(coordinates, limit);
+        event.commitFiltered(widgets.size()); // Filtered by H2, which doesn't tell how many rows it read
+        return widgets;
+    }
 
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(QUERY_INSERT_WIDGET, new String[]{"id"});
-            ps.setInt(1, widget.getXIndex());
-            ps.setInt(2, widget.getYIndex());
-            ps.setInt(3, widget.getZIndex());
-            ps.setInt(4, widget.getWidth());
-            ps.setInt(5, widget.getHeight());
-            ps.setTimestamp(6, Timestamp.valueOf(widget.getUpdateTime()));
-            return ps;
-        }, keyHolder);
+    /**
+     * The queries run one after the other in a repeatable read transaction, which keeps them on the snapshot
+     * of the first one. Running them in parallel would take a connection each, each with its own snapshot.
+     */
+    @Override
+    public List<List<Widget>> findWithCoordinates(List<CoordinateQuery> queries) {
+        return snapshotTemplate.execute(status -> queries.stream()
+                .map(query -> findWithCoordinates(query.getCoordinates(), query.getMode(), query.getLimit()))
+                .collect(Collectors.toList()));
+    }
 
-        if (keyHolder.getKey() != null) {
-            widget.setId(keyHolder.getKey().longValue());
-        }
-        return widget;
-    }
-
-    private Widget updateWidget(Widget widget) {
-        widget.setUpdateTime(LocalDateTime.now());
-        int updateResult = jdbcTemplate.update(QUERY_UPDATE_WIDGET,
-                widget.getXIndex(),
-                widget.getYIndex(),
-                widget.getZIndex(),
-                widget.getWidth(),
-                widget.getHeight(),
-                widget.getUpdateTime(),
-                widget.getId());
-        if (updateResult != QUERY_RESULT_SUCCESS) {
-            throw new WidgetNotFoundException("Couldn't find widget to update with id: " + widget.getId());
-        }
+    private List<Widget> findContained(RectangleCoordinates coordinates, Integer limit) {
+        return jdbcTemplate.query(QUERY_SELECT_BY_COORDINATE_AND_LIMIT, containedParameters(coordinates, limit), WidgetRowMapper.INSTANCE);
+    }
 
-        return widget;
+    private List<Widget> findIntersecting(RectangleCoordinates coordinates, Integer limit) {
+        return jdbcTemplate.query(QUERY_SELECT_INTERSECTING_AND_LIMIT, intersectingParameters(coordinates, limit), WidgetRowMapper.INSTANCE);
     }
 
-    private int getMaxZIndex() {
-        Integer maxZIndexValue = jdbcTemplate.queryForObject(QUERY_SELECT_MAX_Z_INDEX, Integer.class);
-        return maxZIndexValue != null ? maxZIndexValue : 0;
+    private PreparedStatementSetter containedParameters(RectangleCoordinates coordinates, Integer limit) {
+        return ps -> {
+            ps.setFetchSize(fetchSize);
+            ps.setInt(1, coordinates.getX0());
+            ps.setInt(2, coordinates.getX1());
+            ps.setInt(3, coordinates.getX1());
+            ps.setInt(4, coordinates.getY0());
+            ps.setInt(5, coordinates.getY1());
+            ps.setInt(6, coordinates.getY1());
+            ps.setInt(7, limit);
+        };
     }
 
-    private Optional<Widget> findByZIndex(Integer zIndex) {
-        try {
-            return Optional.ofNullable(jdbcTemplate.queryForObject(QUERY_SELECT_BY_Z_INDEX, new BeanPropertyRowMapper<>(Widget.class), zIndex));
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
-        }
+    private PreparedStatementSetter intersectingParameters(RectangleCoordinates coordinates, Integer limit) {
+        // A widget ending after x0 starts after x0 - width, so at x0 - maxWidth + 1 at the leftmost
+        int minXIndex = (int) Math.max(Integer.MIN_VALUE, (long) coordinates.getX0() - writeCoalescer.getMaxWidth() + 1);
+        int minYIndex = (int) Math.max(Integer.MIN_VALUE, (long) coordinates.getY0() - writeCoalescer.getMaxHeight() + 1);
+        return ps -> {
+            ps.setFetchSize(fetchSize);
+            ps.setInt(1, minXIndex);
+            ps.setInt(2, coordinates.getX1());
+            ps.setInt(3, coordinates.getX0());
+            ps.setInt(4, minYIndex);
+            ps.setInt(5, coordinates.getY1());
+            ps.setInt(6, coordinates.getY0());
+            ps.setInt(7, limit);
+        };
     }
 
-    private void updateZIndexes(List<Long> widgetIds) {
-        jdbcTemplate.batchUpdate(QUERY_UPDATE_Z_INDEXES, new BatchPreparedStatementSetter() {
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                ps.setLong(1, widgetIds.get(i));
-            }
+    @Override
+    public Optional<Widget> findTopAt(int x, int y) {
+        QueryEvent event = new QueryEvent("findTopAt");
+        event.begin();
+        int minXIndex = (int) Math.max(Integer.MIN_VALUE, (long) x - writeCoalescer.getMaxWidth() + 1);
+        int minYIndex = (int) Math.max(Integer.MIN_VALUE, (long) y - writeCoalescer.getMaxHeight() + 1);
+        List<Widget> widgets = jdbcTemplate.query(QUERY_SELECT_TOP_AT, WidgetRowMapper.INSTANCE,
+                minXIndex, x, x, minYIndex, y, y);
+        event.commitFiltered(widgets.size());
+        return widgets.stream().findFirst();
+    }
 
-            public int getBatchSize() {
-                return widgetIds.size();
-            }
+    @Override
+    public WidgetAggregates aggregate() {
+        return jdbcTemplate.queryForObject(QUERY_SELECT_AGGREGATES, (resultSet, rowNum) -> {
+            long count = resultSet.getLong(1);
+            return WidgetAggregates.builder()
+                    .count(count)
+                    .totalArea(resultSet.getLong(2))
+                    .boundingBox(count == 0 ? null : RectangleCoordinates.builder()
+                            .x0(resultSet.getInt(3))
+                            .y0(resultSet.getInt(4))
+                            .x1((int) Math.min(Integer.MAX_VALUE, resultSet.getLong(5)))
+                            .y1((int) Math.min(Integer.MAX_VALUE, resultSet.getLong(6)))
+                            .build())
+                    .build();
         });
     }
+
+    @Override
+    public WidgetAggregates aggregate(RectangleCoordinates area, int tileSize) {
+        QueryEvent event = new QueryEvent("aggregate");
+        event.begin();
+        List<TileAggregate> tiles = jdbcTemplate.query(QUERY_SELECT_TILE_AGGREGATES, ps -> {
+            ps.setInt(1, tileSize); // Divided as doubles, so negative coordinates are rounded down as well
+            ps.setInt(2, tileSize);
+            ps.setInt(3, area.getX0());
+            ps.setInt(4, area.getX1());
+            ps.setInt(5, area.getY0());
+            ps.setInt(6, area.getY1());
+        }, (resultSet, rowNum) -> new TileAggregate(
+                (int) (resultSet.getLong(1) * tileSize),
+                (int) (resultSet.getLong(2) * tileSize),
+                resultSet.getLong(3),
+                resultSet.getLong(4)));
+        event.commitFiltered(tiles.size());
+        return WidgetAggregates.builder()
+                .count(tiles.stream().mapToLong(TileAggregate::getCount).sum())
+                .totalArea(tiles.stream().mapToLong(TileAggregate::getTotalArea).sum())
+                .tileSize(tileSize)
+                .tiles(tiles)
+                .build();
+    }
+
+    /**
+     * Indexes are maintained by H2 itself within the write transactions,
+     * so only the zIndex uniqueness which is kept by this repository is checked.
+     */
+    @Override
+    public IndexConsistencyReport verifyIndexes() {
+        Long widgetCount = jdbcTemplate.queryForObject(QUERY_COUNT_WIDGETS, Long.class);
+        Long driftCount = jdbcTemplate.queryForObject(QUERY_COUNT_SHARED_Z_INDEXES, Long.class);
+        List<String> drift = jdbcTemplate.query(QUERY_SELECT_SHARED_Z_INDEXES,
+                (resultSet, rowNum) -> "zIndex " + resultSet.getInt(1) + " is shared by " + resultSet.getLong(2) + " widgets",
+                IndexConsistencyReport.MAX_REPORTED_DRIFT);
+
+        return IndexConsistencyReport.builder()
+                .widgetCount(widgetCount != null ? widgetCount : 0)
+                .indexSizes(Collections.emptyMap())
+                .driftCount(driftCount != null ? driftCount : 0)
+                .drift(drift)
+                .build();
+    }
 }
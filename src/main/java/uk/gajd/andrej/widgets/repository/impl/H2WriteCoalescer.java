@@ -0,0 +1,638 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.profiling.IndexRebuildEvent;
+import uk.gajd.andrej.widgets.profiling.ShiftEvent;
+import uk.gajd.andrej.widgets.repository.id.BlockIdAllocator;
+import uk.gajd.andrej.widgets.repository.id.IdAllocator;
+import uk.gajd.andrej.widgets.repository.index.ZOccupancy;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * This is the group commit of widget saves for the H2 repository.
+ * Concurrent saves are queued and a committer thread takes them in batches: the saves queued while the previous batch
+ * was committed, and those arriving within the window after the first one, if a window is configured. The zIndexes of a batch are resolved together in memory, in arrival order and with the same
+ * shifting as single saves, then the batch is written with batched statements in one transaction.
+ * Each caller gets its own result once the transaction is committed. If the batch fails,
+ * its saves are retried one by one, so that a failing save doesn't fail the others.
+ * If committing fails with an error, its saves fail and the committer goes on with the next batch,
+ * and callers wait at most saveTimeout for their result.
+ * Deletes go through here as well, so the taken zIndexes can be kept in a {@link ZOccupancy}
+ * instead of being queried on every save.
+ * The widest and tallest widget sizes written are tracked too, which bound how far left or above a rectangle
+ * the widgets intersecting it can start.
+ *
+ */
+@Slf4j
+@Component
+@Profile("h2")
+public class H2WriteCoalescer {
+    static final String QUERY_INSERT_WIDGET = "insert into widget (id, xIndex, yIndex, zIndex, width, height, updateTime) values(?,?,?,?,?,?,?)";
+    static final String QUERY_RESERVE_ID_BLOCK = "select next value for widget_id_seq";
+    static final int ID_BLOCK_SIZE = 64; // The increment of widget_id_seq
+    static final String QUERY_UPDATE_WIDGET = "update widget set xIndex=?, yIndex=?, zIndex=?, width=?, height=?, updateTime=? where id = ?";
+    static final String QUERY_UPDATE_Z_INDEX = "update widget set zIndex=? where id=?";
+    static final String QUERY_UPDATE_Z_INDEX_AND_TIME = "update widget set zIndex=?, updateTime=? where id=?";
+    static final String QUERY_UPDATE_POSITION = "update widget set xIndex=?, yIndex=?, updateTime=? where id=?";
+    static final String QUERY_SELECT_WIDGET_BY_ID = "select " + WidgetRowMapper.COLUMNS + " from widget where id=?";
+    static final String QUERY_DELETE_WIDGET = "delete from widget where id=?";
+    static final String QUERY_SELECT_Z_INDEXES = "select zIndex from widget";
+    static final String QUERY_SELECT_MAX_SIZE = "select coalesce(max(width), 0), coalesce(max(height), 0) from widget";
+    static final String QUERY_SELECT_Z_INDEX_BY_ID = "select zIndex from widget where id=?";
+    static final String QUERY_SELECT_Z_INDEXES_BY_IDS = "select id, zIndex from widget where id in (%s)";
+    static final String QUERY_SELECT_BY_Z_INDEX_RANGE = "select id, zIndex from widget where zIndex between ? and ?";
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final long saveTimeoutMillis;
+    private final BlockingQueue<PendingSave> pendingSaves = new LinkedBlockingQueue<>();
+    private final ZOccupancy occupancy = new ZOccupancy();
+    private final Lock writeLock = new ReentrantLock(); // Keeps the occupancy in step with the committed writes
+    private final IdAllocator idAllocator;
+    private final Thread committer = new Thread(this::commitContinuously, "h2-write-coalescer");
+    private volatile boolean running = true;
+    private volatile int maxWidth;
+    private volatile int maxHeight;
+
+    public H2WriteCoalescer(JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${widgets.h2.write-coalescing.enabled:true}") boolean enabled,
+                            @Value("${widgets.h2.write-coalescing.window-micros:0}") long windowMicros,
+                            @Value("${widgets.h2.write-coalescing.max-batch-size:256}") int maxBatchSize,
+                            @Value("${widgets.h2.write-coalescing.save-timeout-ms:30000}") long saveTimeoutMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size should be at least 1.");
+        }
+        if (saveTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Save timeout should be at least 1ms.");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.saveTimeoutMillis = saveTimeoutMillis;
+        this.idAllocator = new BlockIdAllocator(
+                () -> jdbcTemplate.queryForObject(QUERY_RESERVE_ID_BLOCK, Long.class), ID_BLOCK_SIZE);
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Loads the taken zIndexes & the widget size bounds and starts committing, if enabled.
+     */
+    @PostConstruct
+    public void start() {
+        writeLock.lock();
+        try {
+            IndexRebuildEvent event = new IndexRebuildEvent("zOccupancy");
+            event.begin();
+            occupancy.clear();
+            jdbcTemplate.query(QUERY_SELECT_Z_INDEXES, rs -> {
+                occupancy.add(rs.getInt(1));
+            });
+            event.commit(occupancy.size());
+            jdbcTemplate.query(QUERY_SELECT_MAX_SIZE, rs -> {
+                maxWidth = rs.getInt(1);
+                maxHeight = rs.getInt(2);
+            });
+        } finally {
+            writeLock.unlock();
+        }
+        if (enabled) {
+            committer.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (committer.isAlive()) {
+            committer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return at least the width of the widest stored widget. It is raised before a wider widget is committed,
+     * but isn't lowered when the widest one is deleted or shrunk, so it is only ever looser than the exact one.
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * @return at least the height of the tallest stored widget, see {@link #getMaxWidth()}
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Queues the save for the next batch and waits until the batch is committed.
+     * If coalescing isn't enabled, the save is committed on its own by the calling thread.
+     * A save which isn't committed within the save timeout fails, though its batch may still commit it later.
+     *
+     * @param widget to create, or to update if it has an id
+     * @return the saved widget
+     */
+    public Widget save(Widget widget) {
+        if (!running) {
+            throw new IllegalStateException("Write coalescer is stopped.");
+        }
+        PendingSave save = new PendingSave(widget);
+        if (enabled) {
+            pendingSaves.add(save);
+        } else {
+            commit(List.of(save));
+        }
+        try {
+            return save.getResult().get(saveTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Committing the save failed.", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("The save wasn't committed within " + saveTimeoutMillis + "ms.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the save to be committed.", e);
+        }
+    }
+
+    /**
+     * Deletes in its own transaction, between the batches of saves.
+     */
+    public void deleteById(Long id) {
+        writeLock.lock();
+        try {
+            Integer zIndex = transactionTemplate.execute(status -> {
+                List<Integer> zIndexes = jdbcTemplate.queryForList(QUERY_SELECT_Z_INDEX_BY_ID, Integer.class, id);
+                if (zIndexes.isEmpty() || jdbcTemplate.update(QUERY_DELETE_WIDGET, id) != 1) {
+                    throw new WidgetNotFoundException("Couldn't find widget to delete with id: " + id);
+                }
+                return zIndexes.get(0);
+            });
+            occupancy.remove(zIndex);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves a widget on the board in its own transaction, between the batches of saves. Its zIndex doesn't change.
+     */
+    public Widget moveBy(Long id, int dx, int dy) {
+        writeLock.lock();
+        try {
+            return transactionTemplate.execute(status -> {
+                Widget widget = selectWidget(id);
+                widget.setXIndex(Widget.offset(widget.getXIndex(), dx));
+                widget.setYIndex(Widget.offset(widget.getYIndex(), dy));
+                widget.setUpdateTime(LocalDateTime.now());
+                jdbcTemplate.update(QUERY_UPDATE_POSITION, widget.getXIndex(), widget.getYIndex(), widget.getUpdateTime(), id);
+                return widget;
+            });
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Widget bringToFront(Long id) {
+        return moveToZIndex(id, widget -> {
+            int topZIndex = occupancy.max().getAsInt(); // Not empty, the widget is there
+            return widget.getZIndex() == topZIndex ? topZIndex : Widget.above(topZIndex);
+        });
+    }
+
+    /**
+     * The widget goes right below the bottom one, into negative zIndexes if needed, so nothing is shifted.
+     */
+    public Widget sendToBack(Long id) {
+        return moveToZIndex(id, widget -> {
+            int bottomZIndex = occupancy.min().getAsInt(); // Not empty, the widget is there
+            return widget.getZIndex() == bottomZIndex ? bottomZIndex : occupancy.belowMin().getAsInt();
+        });
+    }
+
+    public Widget moveAbove(Long id, Long belowId) {
+        if (id.equals(belowId)) {
+            throw new IllegalArgumentException("A widget can't be moved above itself.");
+        }
+        return moveToZIndex(id, widget -> {
+            List<Integer> zIndexes = jdbcTemplate.queryForList(QUERY_SELECT_Z_INDEX_BY_ID, Integer.class, belowId);
+            if (zIndexes.isEmpty()) {
+                throw new WidgetNotFoundException("Couldn't find widget to move above with id: " + belowId);
+            }
+            return Widget.above(zIndexes.get(0));
+        });
+    }
+
+    /**
+     * Moves a widget to another zIndex in its own transaction, between the batches of saves.
+     * Only the zIndexes of the widget and of the widgets it shifts are written.
+     *
+     * @param targetZIndex of the stored widget, nothing is written if it is the widget's zIndex
+     */
+    private Widget moveToZIndex(Long id, ToIntFunction<Widget> targetZIndex) {
+        writeLock.lock();
+        try {
+            ZIndexResolution resolution = new ZIndexResolution(Collections.emptyMap());
+            Widget moved = transactionTemplate.execute(status -> {
+                Widget widget = selectWidget(id);
+                int zIndex = targetZIndex.applyAsInt(widget);
+                if (zIndex == widget.getZIndex()) {
+                    return widget;
+                }
+                resolution.addStored(id, widget.getZIndex());
+                resolution.place(id, zIndex);
+                widget.setZIndex(zIndex);
+                widget.setUpdateTime(LocalDateTime.now());
+                jdbcTemplate.update(QUERY_UPDATE_Z_INDEX_AND_TIME, zIndex, widget.getUpdateTime(), id);
+                updateShiftedZIndexes(resolution, List.of(id));
+                return widget;
+            });
+            resolution.applyTo(occupancy);
+            return moved;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Widget selectWidget(Long id) {
+        List<Widget> widgets = jdbcTemplate.query(QUERY_SELECT_WIDGET_BY_ID, WidgetRowMapper.INSTANCE, id);
+        if (widgets.isEmpty()) {
+            throw new WidgetNotFoundException("Couldn't find widget to update with id: " + id);
+        }
+        return widgets.get(0);
+    }
+
+    private void commitContinuously() {
+        List<PendingSave> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pendingSaves.isEmpty()) {
+            try {
+                PendingSave first = pendingSaves.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                gather(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    commit(batch);
+                } catch (Throwable e) { // An error would end the committer, leaving its saves & the next ones waiting
+                    log.error("Committing {} saves failed", batch.size(), e);
+                    batch.forEach(save -> save.fail(e));
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private void gather(List<PendingSave> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+            pendingSaves.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= maxBatchSize || remaining <= 0) {
+                return;
+            }
+            PendingSave next = pendingSaves.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction and completes the saves, or retries them one by one if it fails.
+     */
+    void commit(List<PendingSave> batch) {
+        writeLock.lock();
+        try {
+            ZIndexResolution resolution = transactionTemplate.execute(status -> writeBatch(batch));
+            resolution.applyTo(occupancy);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).fail(e);
+            } else {
+                log.warn("Committing {} saves together failed, retrying them one by one", batch.size(), e);
+                batch.forEach(save -> commit(List.of(save)));
+            }
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+        batch.forEach(PendingSave::complete);
+    }
+
+    private ZIndexResolution writeBatch(List<PendingSave> batch) {
+        ZIndexResolution resolution = new ZIndexResolution(findStoredZIndexes(batch));
+        LocalDateTime updateTime = LocalDateTime.now();
+
+        List<PendingSave> creates = new ArrayList<>();
+        List<PendingSave> updates = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingSave save = batch.get(i);
+            save.reset(updateTime);
+            Widget widget = save.getWidget();
+            if (widget.getId() != null && !resolution.isStored(widget.getId())) {
+                save.setFailure(new WidgetNotFoundException("Couldn't find widget to update with id: " + widget.getId()));
+                continue;
+            }
+            // Widgets to create are tracked by a negative key until they get their id
+            save.setKey(widget.getId() != null ? widget.getId() : -(i + 1L));
+            save.setZIndex(widget.getZIndex() != null ? widget.getZIndex() : Widget.above(resolution.getTopZIndex()));
+            resolution.place(save.getKey(), save.getZIndex());
+            maxWidth = Math.max(maxWidth, widget.getWidth());
+            maxHeight = Math.max(maxHeight, widget.getHeight());
+            (widget.getId() != null ? updates : creates).add(save);
+        }
+
+        insertWidgets(creates, resolution);
+        updateWidgets(updates, resolution);
+        updateShiftedZIndexes(resolution, updates.stream().map(PendingSave::getKey).collect(Collectors.toList()));
+        return resolution;
+    }
+
+    private Map<Long, Integer> findStoredZIndexes(List<PendingSave> batch) {
+        List<Long> ids = batch.stream()
+                .map(save -> save.getWidget().getId())
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Long, Integer> storedZIndexes = new HashMap<>();
+        if (!ids.isEmpty()) {
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            jdbcTemplate.query(String.format(QUERY_SELECT_Z_INDEXES_BY_IDS, placeholders),
+                    rs -> {
+                        storedZIndexes.put(rs.getLong(1), rs.getInt(2));
+                    },
+                    ids.toArray());
+        }
+        return storedZIndexes;
+    }
+
+    private void insertWidgets(List<PendingSave> creates, ZIndexResolution resolution) {
+        if (creates.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = creates.stream()
+                .map(save -> {
+                    Widget widget = save.getWidget();
+                    save.setId(idAllocator.nextId());
+                    return new Object[]{save.getId(), widget.getXIndex(), widget.getYIndex(), resolution.getZIndex(save.getKey()),
+                            widget.getWidth(), widget.getHeight(), save.getUpdateTime()};
+                })
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(QUERY_INSERT_WIDGET, rows);
+    }
+
+    private void updateWidgets(List<PendingSave> updates, ZIndexResolution resolution) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = updates.stream()
+                .map(save -> {
+                    Widget widget = save.getWidget();
+                    return new Object[]{widget.getXIndex(), widget.getYIndex(), resolution.getZIndex(save.getKey()),
+                            widget.getWidth(), widget.getHeight(), save.getUpdateTime(), widget.getId()};
+                })
+                .collect(Collectors.toList());
+        int[] updated = jdbcTemplate.batchUpdate(QUERY_UPDATE_WIDGET, rows);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 1) { // Deleted in the meantime, the batch is retried one by one
+                throw new WidgetNotFoundException("Couldn't find widget to update with id: " + updates.get(i).getWidget().getId());
+            }
+        }
+    }
+
+    /**
+     * @param updatedKeys of the widgets which are written with their new zIndex already
+     */
+    private void updateShiftedZIndexes(ZIndexResolution resolution, Collection<Long> updatedKeys) {
+        List<Object[]> rows = resolution.getShiftedZIndexes(updatedKeys).entrySet().stream()
+                .map(shifted -> new Object[]{shifted.getValue(), shifted.getKey()})
+                .collect(Collectors.toList());
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(QUERY_UPDATE_Z_INDEX, rows);
+        }
+    }
+
+    /**
+     * Tracks where the widgets touched by a batch end up. The occupancy tells which zIndexes are taken,
+     * so the stored widgets are only read when a run of them needs to be shifted.
+     */
+    private class ZIndexResolution {
+        private final Map<Long, Integer> storedZIndexes;
+        private final Map<Long, Integer> zIndexes = new HashMap<>();
+        private final Map<Integer, Long> occupants = new HashMap<>(); // null value: known to be free
+        private Integer topZIndex;
+
+        ZIndexResolution(Map<Long, Integer> storedZIndexes) {
+            this.storedZIndexes = new HashMap<>();
+            storedZIndexes.forEach(this::addStored);
+        }
+
+        void addStored(long id, int zIndex) {
+            storedZIndexes.put(id, zIndex);
+            zIndexes.put(id, zIndex);
+            occupants.put(zIndex, id);
+        }
+
+        boolean isStored(Long id) {
+            return storedZIndexes.containsKey(id);
+        }
+
+        int getZIndex(long key) {
+            return zIndexes.get(key);
+        }
+
+        /**
+         * @return an upper bound of the zIndexes, which may leave a gap when the top widget was moved down
+         */
+        int getTopZIndex() {
+            if (topZIndex == null) {
+                topZIndex = occupancy.max().orElse(0);
+                zIndexes.values().forEach(zIndex -> topZIndex = Math.max(topZIndex, zIndex));
+            }
+            return topZIndex;
+        }
+
+        /**
+         * Places a widget like a single save: it leaves its current zIndex first, so it doesn't shift itself.
+         * A run reaching Integer.MAX_VALUE can't be shifted, which is found before anything is moved.
+         */
+        void place(long key, int zIndex) {
+            vacate(key);
+            if (occupantAt(zIndex) != null) { // Shifting required.
+                ShiftEvent event = new ShiftEvent();
+                event.begin();
+                List<Long> run = new ArrayList<>();
+                for (int z = zIndex; occupantAt(z) != null; z = Widget.above(z)) {
+                    run.add(occupantAt(z));
+                }
+                for (int i = run.size() - 1; i >= 0; i--) {
+                    move(run.get(i), zIndex + i + 1);
+                }
+                event.commit(zIndex, run.size());
+            }
+            move(key, zIndex);
+        }
+
+        /**
+         * @return the ids of the stored widgets, which were only shifted, with their new zIndexes
+         */
+        Map<Long, Integer> getShiftedZIndexes(Collection<Long> updatedKeys) {
+            Map<Long, Integer> shifted = new HashMap<>();
+            storedZIndexes.forEach((id, storedZIndex) -> {
+                if (!zIndexes.get(id).equals(storedZIndex)) {
+                    shifted.put(id, zIndexes.get(id));
+                }
+            });
+            updatedKeys.forEach(shifted::remove);
+            return shifted;
+        }
+
+        void applyTo(ZOccupancy occupancy) {
+            occupants.forEach((zIndex, id) -> {
+                if (id == null) {
+                    occupancy.remove(zIndex);
+                } else {
+                    occupancy.add(zIndex);
+                }
+            });
+        }
+
+        private Long occupantAt(int zIndex) {
+            if (!occupants.containsKey(zIndex)) {
+                if (occupancy.contains(zIndex)) {
+                    readStoredRun(zIndex);
+                } else {
+                    occupants.put(zIndex, null);
+                }
+            }
+            return occupants.get(zIndex);
+        }
+
+        /**
+         * Reads the stored widgets of the contiguous run of taken zIndexes from the given one, in one query.
+         */
+        private void readStoredRun(int fromZIndex) {
+            int toZIndex = occupancy.runEnd(fromZIndex);
+            jdbcTemplate.query(QUERY_SELECT_BY_Z_INDEX_RANGE, rs -> {
+                long id = rs.getLong(1);
+                int zIndex = rs.getInt(2);
+                if (!occupants.containsKey(zIndex) && !zIndexes.containsKey(id)) { // Not known, nor moved in the batch
+                    storedZIndexes.put(id, zIndex);
+                    zIndexes.put(id, zIndex);
+                    occupants.put(zIndex, id);
+                }
+            }, fromZIndex, toZIndex);
+            for (long z = fromZIndex; z <= toZIndex; z++) { // A long counter, an int one never passes Integer.MAX_VALUE
+                occupants.putIfAbsent((int) z, null);
+            }
+        }
+
+        private void vacate(long key) {
+            Integer current = zIndexes.get(key);
+            if (current != null && Objects.equals(occupants.get(current), key)) {
+                occupants.put(current, null);
+            }
+        }
+
+        private void move(long key, int zIndex) {
+            Integer current = zIndexes.put(key, zIndex);
+            if (current != null && Objects.equals(occupants.get(current), key)) {
+                occupants.put(current, null);
+            }
+            occupants.put(zIndex, key);
+            if (topZIndex != null) {
+                topZIndex = Math.max(topZIndex, zIndex);
+            }
+        }
+    }
+
+    /**
+     * A save waiting for its batch. Its results are only applied to the widget once the batch is committed.
+     */
+    @Getter
+    @Setter(AccessLevel.PRIVATE)
+    static class PendingSave {
+        private final Widget widget;
+        private final CompletableFuture<Widget> result = new CompletableFuture<>();
+        private long key;
+        private Long id;
+        private Integer zIndex;
+        private LocalDateTime updateTime;
+        private RuntimeException failure;
+
+        PendingSave(Widget widget) {
+            this.widget = widget;
+        }
+
+        private void reset(LocalDateTime updateTime) {
+            this.id = widget.getId();
+            this.zIndex = null;
+            this.updateTime = updateTime;
+            this.failure = null;
+        }
+
+        private void complete() {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            widget.setId(id);
+            widget.setZIndex(zIndex);
+            widget.setUpdateTime(updateTime);
+            result.complete(widget);
+        }
+
+        private void fail(Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -1,78 +1,205 @@
 package uk.gajd.andrej.widgets.repository.impl;
 
 import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
+import uk.gajd.andrej.widgets.profiling.QueryEvent;
+import uk.gajd.andrej.widgets.profiling.QueryTrace;
+import uk.gajd.andrej.widgets.profiling.ShiftEvent;
 import uk.gajd.andrej.widgets.repository.WidgetRepository;
-import lombok.RequiredArgsConstructor;
+import uk.gajd.andrej.widgets.repository.id.SequentialIdAllocator;
+import uk.gajd.andrej.widgets.repository.impl.CoordinateQueryPlanner.AccessPath;
+import uk.gajd.andrej.widgets.repository.impl.CoordinateQueryPlanner.Plan;
+import uk.gajd.andrej.widgets.repository.index.BoundsIndex;
+import uk.gajd.andrej.widgets.repository.index.CoordinateStatistics;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
+import uk.gajd.andrej.widgets.repository.index.WidgetIndexes;
+import uk.gajd.andrej.widgets.repository.index.ZIndex;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 
 /**
  * This is the repository implementation to use in-memory ConcurrentHashMap as datasource for operations.
- * Besides the ConcurrentHashMap used to keep the widgets, there is another map(TreeMap) to keep widgetIds by their zIndex.
- * This TreeMap is basically used as an index for zIndex property.
+ * Besides the ConcurrentHashMap used to keep the widgets, there are secondary indexes by zIndex, by area on a grid
+ * and by the edges of the widgets, which are maintained together through {@link WidgetIndexes}.
+ * Writes are serialized by a write lock, reads go lock-free against the concurrent maps.
+ * Coordinate queries are planned by a {@link CoordinateQueryPlanner} from statistics kept along with the indexes,
+ * they either scan the widgets in z order or read the grid, in parallel on the common fork/join pool
+ * when they are expected to read many candidates.
  *
  */
 @Repository
 @Profile({"in-memory", "default"})
-@RequiredArgsConstructor
 public class InMemoryRepository implements WidgetRepository {
-    private static volatile Long widgetIdCounter = 0L;
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 50_000;
 
     private final Map<Long, Widget> widgetDB = new ConcurrentHashMap<>();
-    private final NavigableMap<Integer, Long> zIndexDB = new ConcurrentSkipListMap<>();
-    private final NavigableMap<Integer, List<Long>> xIndexDB = new ConcurrentSkipListMap<>();
+    private final ZIndex zIndexDB = new ZIndex();
+    private final GridIndex gridIndexDB;
+    private final BoundsIndex boundsIndexDB = new BoundsIndex();
+    private final CoordinateStatistics statistics = new CoordinateStatistics();
+    private final WidgetIndexes indexes;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SequentialIdAllocator idAllocator = new SequentialIdAllocator(0);
+    private final long parallelThreshold;
+    private final CoordinateQueryPlanner planner;
 
-    private synchronized static Long getNextWidgetId() {
-        return widgetIdCounter++;
+    /**
+     * @param gridCellSize      of the grid index, smaller cells make hit tests check fewer widgets
+     *                          while rectangle queries visit more cells and widgets are kept in more of them
+     * @param parallelThreshold estimated candidates from which a coordinate query runs in parallel
+     * @param plannerEnabled    whether coordinate queries may scan the widgets in z order, otherwise they always read the grid
+     */
+    public InMemoryRepository(@Value("${widgets.in-memory.grid-cell-size:" + GridIndex.DEFAULT_CELL_SIZE + "}") int gridCellSize,
+                              @Value("${widgets.in-memory.parallel-threshold:" + DEFAULT_PARALLEL_THRESHOLD + "}") long parallelThreshold,
+                              @Value("${widgets.in-memory.query-planner.enabled:true}") boolean plannerEnabled) {
+        this.gridIndexDB = new GridIndex(gridCellSize);
+        this.indexes = new WidgetIndexes(zIndexDB, gridIndexDB, boundsIndexDB, statistics);
+        this.parallelThreshold = parallelThreshold;
+        this.planner = plannerEnabled ? new CoordinateQueryPlanner(gridIndexDB, statistics, parallelThreshold) : null;
     }
 
     @Override
-    public Widget save(Widget widget) {         // This is a create operation
-        if (widget.getId() == null) {
-            widget.setId(getNextWidgetId());
-        } else {                                // This is an update operation
-            Widget existing = widgetDB.get(widget.getId());
-            if ( existing == null) {
-                throw new WidgetNotFoundException("Couldn't find widget to update with id: " + widget.getId());
+    public Widget save(Widget widget) {
+        lock.writeLock().lock();
+        try {
+            Widget existing = null;
+            if (widget.getId() != null) {           // This is an update operation
+                existing = widgetDB.get(widget.getId());
+                if (existing == null) {
+                    throw new WidgetNotFoundException("Couldn't find widget to update with id: " + widget.getId());
+                }
+            }
+
+            // This will be applicable to insert only.
+            if (widget.getZIndex() == null) {
+                widget.setZIndex(getMaxZIndex());
             }
-            zIndexDB.remove(existing.getZIndex()); // Delete old z-index reference.
-            xIndexDB.computeIfAbsent(existing.getXIndex(), (k) -> new CopyOnWriteArrayList<Long>())
-                    .remove(widget.getId());
+            checkRoomToShift(widget.getZIndex(), existing);
+
+            if (existing == null) {                 // This is a create operation
+                widget.setId(idAllocator.nextId());
+            } else {
+                indexes.remove(existing); // Delete old index references.
+            }
+
+            if (zIndexDB.contains(widget.getZIndex())) {
+                shift(widget.getZIndex());
+            }
+            saveWidget(widget);
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        // This will be applicable to insert only.
-        if (widget.getZIndex() == null) {
-            widget.setZIndex(getMaxZIndex());
+    @Override
+    public void deleteById(Long id) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = widgetDB.remove(id);
+            if (widget == null) {
+                throw new WidgetNotFoundException("Couldn't find widget to delete with id: " + id);
+            }
+            indexes.remove(widget);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        Long widgetIdAtSameZIndex = zIndexDB.get(widget.getZIndex());
-        if (widgetIdAtSameZIndex != null && !widgetIdAtSameZIndex.equals(widget.getId())) {
-            shift(widget);
+    /**
+     * Only the indexes by area are re-indexed, the zIndex stays as it is.
+     */
+    @Override
+    public Widget moveBy(Long id, int dx, int dy) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = getForUpdate(id);
+            int xIndex = Widget.offset(widget.getXIndex(), dx);
+            int yIndex = Widget.offset(widget.getYIndex(), dy);
+            indexes.reindex(widget, moved -> {
+                moved.setXIndex(xIndex);
+                moved.setYIndex(yIndex);
+                moved.setUpdateTime(LocalDateTime.now());
+            }, gridIndexDB, boundsIndexDB, statistics);
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
         }
-        saveWidget(widget);
-        return widget;
     }
 
     @Override
-    public void deleteById(Long id) {
-        if (!widgetDB.containsKey(id)) {
-            throw new WidgetNotFoundException("Couldn't find widget to delete with id: " + id);
+    public Widget bringToFront(Long id) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = getForUpdate(id);
+            int topZIndex = zIndexDB.max().getAsInt(); // Not empty, the widget is there
+            if (widget.getZIndex() != topZIndex) {
+                moveToZIndex(widget, Widget.above(topZIndex));
+            }
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        zIndexDB.remove(widgetDB.get(id).getZIndex()); // Remove first from zIndex map
-        widgetDB.remove(id); // Then, remove from widget map
+    /**
+     * The widget goes right below the bottom one, into negative zIndexes if needed, so nothing is shifted.
+     */
+    @Override
+    public Widget sendToBack(Long id) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = getForUpdate(id);
+            int bottomZIndex = zIndexDB.min().getAsInt(); // Not empty, the widget is there
+            if (widget.getZIndex() != bottomZIndex) {
+                moveToZIndex(widget, zIndexDB.belowMin().getAsInt());
+            }
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Widget moveAbove(Long id, Long belowId) {
+        if (id.equals(belowId)) {
+            throw new IllegalArgumentException("A widget can't be moved above itself.");
+        }
+        lock.writeLock().lock();
+        try {
+            Widget widget = getForUpdate(id);
+            Widget below = widgetDB.get(belowId);
+            if (below == null) {
+                throw new WidgetNotFoundException("Couldn't find widget to move above with id: " + belowId);
+            }
+            int zIndex = Widget.above(below.getZIndex());
+            if (widget.getZIndex() != zIndex) {
+                moveToZIndex(widget, zIndex);
+            }
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -86,74 +213,312 @@ public class InMemoryRepository implements WidgetRepository {
 
     @Override
     public List<Widget> findWithLimit(Integer limit) {
-        return zIndexDB.values()
+        QueryEvent event = new QueryEvent("findWithLimit");
+        event.begin();
+        List<Widget> widgets = zIndexDB.ids()
                 .stream()
-                .limit(limit)
+                .peek(id -> event.addCandidate())
                 .map(widgetDB::get)
+                .filter(Objects::nonNull) // Deleted by a concurrent write
+                .limit(limit)
+                .collect(Collectors.toList());
+        event.commit(widgets.size());
+        return widgets;
+    }
+
+    /**
+     * A query planned on the grid and estimated to read at least the parallel threshold of candidates is split over
+     * the fork/join pool, each task keeping the top of its own candidates by zIndex, which are merged as the tasks join.
+     */
+    @Override
+    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        switch (plan(coordinates, mode, limit).getAccessPath()) {
+            case Z_SCAN:
+                return findWithCoordinatesByZIndex(coordinates, mode, limit);
+            case PARALLEL_GRID:
+                return findWithCoordinatesInParallel(coordinates, mode, limit);
+            default:
+                return findWithCoordinatesInGrid(coordinates, mode, limit);
+        }
+    }
+
+    private List<Widget> findWithCoordinatesInGrid(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryEvent event = new QueryEvent("findWithCoordinates");
+        event.begin();
+        List<Widget> widgets = gridIndexDB.findCandidates(coordinates, widgetDB::get)
+                .peek(widget -> event.addCandidate())
+                .filter(widget -> mode.matches(widget, coordinates))
+                .sorted(Comparator.comparingInt(Widget::getZIndex))
+                .limit(limit)
                 .collect(Collectors.toList());
+        event.commit(widgets.size());
+        return widgets;
+    }
+
+    @Override
+    public QueryPlan explainWithLimit(Integer limit) {
+        QueryTrace trace = new QueryTrace();
+        long[] candidates = {0};
+        List<Widget> widgets = trace.stage("scan zIndex & limit", () -> zIndexDB.ids()
+                .stream()
+                .peek(id -> candidates[0]++)
+                .map(widgetDB::get)
+                .filter(Objects::nonNull)
+                .limit(limit)
+                .collect(Collectors.toList()));
+        return QueryPlan.builder()
+                .accessPath(AccessPath.Z_SCAN.getDescription())
+                .candidates(candidates[0])
+                .matched((long) widgets.size())
+                .returned(widgets.size())
+                .stages(trace.getStages())
+                .build();
+    }
+
+    /**
+     * The candidates are collected, matched and ordered one stage after the other, on the path the query would take.
+     * The zIndex scan can't be split into stages, as it matches the widgets while it reads them.
+     */
+    @Override
+    public QueryPlan explainWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryTrace trace = new QueryTrace();
+        Plan plan = trace.stage("plan", () -> plan(coordinates, mode, limit));
+        if (plan.getAccessPath() == AccessPath.Z_SCAN) {
+            long[] candidates = {0};
+            List<Widget> widgets = trace.stage("scan zIndex & match until limit", () ->
+                    scanByZIndex(coordinates, mode, limit, () -> candidates[0]++));
+            return QueryPlan.builder()
+                    .accessPath(plan.getAccessPath().getDescription())
+                    .estimatedCandidates(plan.getEstimatedCandidates())
+                    .candidates(candidates[0])
+                    .matched((long) widgets.size())
+                    .returned(widgets.size())
+                    .stages(trace.getStages())
+                    .build();
+        }
+
+        boolean parallel = plan.getAccessPath() == AccessPath.PARALLEL_GRID;
+        List<Widget> candidates = trace.stage("find grid candidates", () ->
+                gridIndexDB.findCandidates(coordinates, widgetDB::get).collect(Collectors.toList()));
+        List<Widget> matched = trace.stage(parallel ? "match in parallel" : "match", () ->
+                (parallel ? candidates.parallelStream() : candidates.stream())
+                        .filter(widget -> mode.matches(widget, coordinates))
+                        .collect(Collectors.toList()));
+        List<Widget> widgets = parallel
+                ? trace.stage("merge top by zIndex in parallel", () ->
+                        matched.parallelStream().collect(ZOrderTopK.collector(limit, widget -> true)).toList())
+                : trace.stage("sort by zIndex & limit", () -> matched.stream()
+                        .sorted(Comparator.comparingInt(Widget::getZIndex))
+                        .limit(limit)
+                        .collect(Collectors.toList()));
+        return QueryPlan.builder()
+                .accessPath(plan.getAccessPath().getDescription())
+                .estimatedCandidates(plan.getEstimatedCandidates())
+                .candidates((long) candidates.size())
+                .matched((long) matched.size())
+                .returned(widgets.size())
+                .stages(trace.getStages())
+                .build();
+    }
+
+    /**
+     * The read lock holds off writes while the queries run, so they see the same board, and they run in parallel
+     * as they only read the widgets & the grid.
+     */
+    @Override
+    public List<List<Widget>> findWithCoordinates(List<CoordinateQuery> queries) {
+        lock.readLock().lock();
+        try {
+            return queries.parallelStream()
+                    .map(query -> findWithCoordinates(query.getCoordinates(), query.getMode(), query.getLimit()))
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    /**
+     * Only the widgets in the grid cell of the point are checked, so it doesn't depend on the size of the board.
+     */
+    @Override
+    public Optional<Widget> findTopAt(int x, int y) {
+        QueryEvent event = new QueryEvent("findTopAt");
+        event.begin();
+        Optional<Widget> widget = gridIndexDB.findCandidatesAt(x, y, widgetDB::get)
+                .peek(candidate -> event.addCandidate())
+                .filter(candidate -> candidate.covers(x, y))
+                .max(Comparator.comparingInt(Widget::getZIndex));
+        event.commit(widget.isPresent() ? 1 : 0);
+        return widget;
+    }
+
+    /**
+     * Answered from the running totals of the grid and the edges kept by the bounds index, without reading any widget.
+     */
     @Override
-    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, Integer limit) {
-        return  xIndexDB.subMap(coordinates.getX0(), true, coordinates.getX1(), true)
-                .values()
+    public WidgetAggregates aggregate() {
+        lock.readLock().lock(); // Holds off writes, so the count, the area and the box are of the same board
+        try {
+            return WidgetAggregates.builder()
+                    .count(widgetDB.size())
+                    .totalArea(gridIndexDB.getTotalArea())
+                    .boundingBox(boundsIndexDB.boundingBox().orElse(null))
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Answered from the summaries of the grid cells, only the widgets of the cells crossing the edges of the area are read.
+     */
+    @Override
+    public WidgetAggregates aggregate(RectangleCoordinates area, int tileSize) {
+        QueryEvent event = new QueryEvent("aggregate");
+        event.begin();
+        lock.readLock().lock(); // Holds off writes, summaries are only in step with the widgets between them
+        try {
+            List<TileAggregate> tiles = gridIndexDB.aggregateTiles(area, tileSize, widgetDB::get);
+            event.commit(tiles.size());
+            return WidgetAggregates.builder()
+                    .count(tiles.stream().mapToLong(TileAggregate::getCount).sum())
+                    .totalArea(tiles.stream().mapToLong(TileAggregate::getTotalArea).sum())
+                    .tileSize(tileSize)
+                    .tiles(tiles)
+                    .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Widgets come in z order, so the scan stops as soon as the limit of them match.
+     */
+    private List<Widget> findWithCoordinatesByZIndex(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryEvent event = new QueryEvent("findWithCoordinatesByZIndex");
+        event.begin();
+        List<Widget> widgets = scanByZIndex(coordinates, mode, limit, event::addCandidate);
+        event.commit(widgets.size());
+        return widgets;
+    }
+
+    private List<Widget> scanByZIndex(RectangleCoordinates coordinates, QueryMode mode, Integer limit, Runnable onCandidate) {
+        return zIndexDB.ids()
                 .stream()
-                .flatMap(l -> l.stream())
                 .map(widgetDB::get)
-                .filter(widget -> isInRectangle(widget, coordinates))
-                .sorted((w1, w2) -> w1.getZIndex()-w2.getZIndex())
+                .filter(Objects::nonNull) // Deleted by a concurrent write
+                .peek(widget -> onCandidate.run())
+                .filter(widget -> mode.matches(widget, coordinates))
                 .limit(limit)
                 .collect(Collectors.toList());
     }
 
-    private void shift(Widget widget) {
-        Integer endIndex = widget.getZIndex();
-        for (int i = endIndex; i < zIndexDB.lastKey(); i++) {
-            if (zIndexDB.containsKey(endIndex + 1)) {
-                endIndex += 1;
-            } else {
-                break;
-            }
+    private Plan plan(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        if (planner == null) {
+            long gridCandidates = gridIndexDB.estimateCandidates(coordinates);
+            return new Plan(gridCandidates >= parallelThreshold ? AccessPath.PARALLEL_GRID : AccessPath.GRID, gridCandidates);
+        }
+        return planner.plan(coordinates, mode, limit);
+    }
+
+    private List<Widget> findWithCoordinatesInParallel(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryEvent event = new QueryEvent("findWithCoordinatesInParallel");
+        event.begin();
+        ZOrderTopK topK = gridIndexDB.findCandidates(coordinates, widgetDB::get)
+                .parallel()
+                .collect(ZOrderTopK.collector(limit, widget -> mode.matches(widget, coordinates)));
+        List<Widget> widgets = topK.toList();
+        event.addCandidates(topK.getCandidates());
+        event.commit(widgets.size());
+        return widgets;
+    }
+
+    @Override
+    public IndexConsistencyReport verifyIndexes() {
+        lock.readLock().lock(); // Holds off writes, indexes can't be compared against the widgets in the middle of one
+        try {
+            return indexes.verify(widgetDB);
+        } finally {
+            lock.readLock().unlock();
         }
+    }
+
+    private void shift(Integer zIndex) {
+        ShiftEvent event = new ShiftEvent();
+        event.begin();
+        int endIndex = zIndexDB.runEnd(zIndex);
+
+        // Move the widgets back one by one, starting from the end so that no zIndex is taken twice.
+        // A long counter, as an int one would wrap around below a run starting at Integer.MIN_VALUE.
+        // The run doesn't end at Integer.MAX_VALUE, see checkRoomToShift.
+        for (long i = endIndex; i >= zIndex; i--) {
+            int newIndex = (int) i + 1;
+            indexes.reindex(widgetDB.get(zIndexDB.get((int) i)), widget -> widget.setZIndex(newIndex), zIndexDB);
+        }
+        event.commit(zIndex, endIndex - zIndex + 1);
+    }
+
+    /**
+     * Only the zIndex is re-indexed. The widget leaves the zIndex first, so a shift can take its place.
+     */
+    private void moveToZIndex(Widget widget, int zIndex) {
+        checkRoomToShift(zIndex, widget);
+        indexes.reindex(widget, moved -> {
+            if (zIndexDB.contains(zIndex)) {
+                shift(zIndex);
+            }
+            moved.setZIndex(zIndex);
+            moved.setUpdateTime(LocalDateTime.now());
+        }, zIndexDB);
+    }
 
-        // Move the widgets back one by one
-        Integer finalEndIndex = endIndex;
-        for (int i = finalEndIndex; i >= widget.getZIndex(); i--) {
-            Integer newIndex = i + 1;
+    /**
+     * Shifting the run of taken zIndexes from the given one moves its top widget up by one, which needs a zIndex
+     * above it. Checked before anything is re-indexed, so a rejected write leaves the indexes as they were.
+     *
+     * @param moving widget leaving its zIndex before the shift, if any, which ends the run there when it is in it
+     */
+    private void checkRoomToShift(int zIndex, Widget moving) {
+        if (!zIndexDB.contains(zIndex)) {
+            return;
+        }
+        int runEnd = zIndexDB.runEnd(zIndex);
+        if (moving != null && moving.getZIndex() >= zIndex && moving.getZIndex() <= runEnd) {
+            return;
+        }
+        Widget.above(runEnd);
+    }
 
-            Widget widgetToUpdate = widgetDB.get(zIndexDB.get(i));
-            widgetToUpdate.setZIndex(newIndex);
-            widgetDB.put(widgetToUpdate.getId(), widgetToUpdate);
-            zIndexDB.put(newIndex, zIndexDB.get(i));
+    private Widget getForUpdate(Long id) {
+        Widget widget = widgetDB.get(id);
+        if (widget == null) {
+            throw new WidgetNotFoundException("Couldn't find widget to update with id: " + id);
         }
+        return widget;
     }
 
     private void saveWidget(Widget widget) {
         widget.setUpdateTime(LocalDateTime.now());
         widgetDB.put(widget.getId(), widget);
-        zIndexDB.put(widget.getZIndex(), widget.getId());
-        xIndexDB.computeIfAbsent(widget.getXIndex(), (k) -> new CopyOnWriteArrayList<Long>())
-                .add(widget.getId());
+        indexes.add(widget);
     }
 
     private Integer getMaxZIndex() {
-        return zIndexDB.isEmpty() ? 0 : zIndexDB.lastKey() + 1;
+        OptionalInt maxZIndex = zIndexDB.max();
+        return maxZIndex.isPresent() ? Widget.above(maxZIndex.getAsInt()) : 0;
     }
 
     /**
      * Should only be used for testing
      */
-    void _clearMaps() {
-        widgetDB.clear();
-        zIndexDB.clear();
-        xIndexDB.clear();
-    }
-
-    private boolean isInRectangle(Widget widget, RectangleCoordinates coordinates) {
-        return widget.getXIndex() >= coordinates.getX0()
-                && widget.getXIndex() + widget.getWidth() <= coordinates.getX1()
-                && widget.getYIndex()  >= coordinates.getY0()
-                && widget.getYIndex() + widget.getHeight() <= coordinates.getY1();
+    void clearMaps() {
+        lock.writeLock().lock();
+        try {
+            widgetDB.clear();
+            indexes.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
 }
@@ -0,0 +1,34 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * This maps the rows of {@link #COLUMNS} to widgets by column index, without looking up columns by name
+ * or introspecting the widget class for each query. It is stateless, so the single instance is shared.
+ *
+ */
+final class WidgetRowMapper implements RowMapper<Widget> {
+    static final String COLUMNS = "id, xIndex, yIndex, zIndex, width, height, updateTime";
+    static final WidgetRowMapper INSTANCE = new WidgetRowMapper();
+
+    private WidgetRowMapper() {
+    }
+
+    @Override
+    public Widget mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        Widget widget = new Widget();
+        widget.setId(resultSet.getLong(1));
+        widget.setXIndex(resultSet.getInt(2));
+        widget.setYIndex(resultSet.getInt(3));
+        widget.setZIndex(resultSet.getInt(4));
+        widget.setWidth(resultSet.getInt(5));
+        widget.setHeight(resultSet.getInt(6));
+        widget.setUpdateTime(resultSet.getObject(7, LocalDateTime.class));
+        return widget;
+    }
+}
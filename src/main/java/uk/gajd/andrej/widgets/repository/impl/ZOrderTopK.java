@@ -0,0 +1,74 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+
+/**
+ * This keeps the k widgets with the lowest zIndexes out of those matching a query, in a max-heap by zIndex,
+ * so a widget below the highest kept one replaces it in O(log k) and the others are dropped right away.
+ * Each task of a parallel query fills its own, which are merged pairwise as the tasks join.
+ *
+ */
+final class ZOrderTopK {
+    private static final Comparator<Widget> Z_ORDER = Comparator.comparingInt(Widget::getZIndex);
+
+    private final int k;
+    private final PriorityQueue<Widget> heap;
+    private long candidates;
+
+    private ZOrderTopK(int k) {
+        this.k = k;
+        this.heap = new PriorityQueue<>(Z_ORDER.reversed());
+    }
+
+    /**
+     * @param k       widgets kept at most
+     * @param matches of the query, the candidates not matching it are only counted
+     */
+    static Collector<Widget, ZOrderTopK, ZOrderTopK> collector(int k, Predicate<Widget> matches) {
+        return Collector.of(
+                () -> new ZOrderTopK(k),
+                (topK, candidate) -> {
+                    topK.candidates++;
+                    if (matches.test(candidate)) {
+                        topK.add(candidate);
+                    }
+                },
+                ZOrderTopK::merge,
+                Collector.Characteristics.UNORDERED);
+    }
+
+    long getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the kept widgets sorted by zIndex
+     */
+    List<Widget> toList() {
+        List<Widget> widgets = new ArrayList<>(heap);
+        widgets.sort(Z_ORDER);
+        return widgets;
+    }
+
+    private void add(Widget widget) {
+        if (heap.size() < k) {
+            heap.add(widget);
+        } else if (widget.getZIndex() < heap.peek().getZIndex()) {
+            heap.poll();
+            heap.add(widget);
+        }
+    }
+
+    private ZOrderTopK merge(ZOrderTopK other) {
+        other.heap.forEach(this::add);
+        candidates += other.candidates;
+        return this;
+    }
+}
@@ -0,0 +1,130 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * This is the index of the widget edges, which gives the bounding box of all widgets in O(log n).
+ * Each edge is counted by its coordinate in a sorted map, so the outermost one is still known after
+ * the widget on it is deleted, and the box is read from the first & last keys without touching the widgets.
+ *
+ */
+public class BoundsIndex implements WidgetIndex {
+    private final NavigableMap<Long, Integer> lefts = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Integer> tops = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Integer> rights = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, Integer> bottoms = new ConcurrentSkipListMap<>();
+    private volatile long widgetCount; // Only changed by the single writer
+
+    @Override
+    public String getName() {
+        return "bounds";
+    }
+
+    @Override
+    public void add(Widget widget) {
+        lefts.merge(left(widget), 1, Integer::sum);
+        tops.merge(top(widget), 1, Integer::sum);
+        rights.merge(right(widget), 1, Integer::sum);
+        bottoms.merge(bottom(widget), 1, Integer::sum);
+        widgetCount++;
+    }
+
+    @Override
+    public void remove(Widget widget) {
+        decrement(lefts, left(widget));
+        decrement(tops, top(widget));
+        decrement(rights, right(widget));
+        decrement(bottoms, bottom(widget));
+        widgetCount--;
+    }
+
+    @Override
+    public void clear() {
+        lefts.clear();
+        tops.clear();
+        rights.clear();
+        bottoms.clear();
+        widgetCount = 0;
+    }
+
+    /**
+     * @return number of widgets counted
+     */
+    @Override
+    public long size() {
+        return widgetCount;
+    }
+
+    /**
+     * @return the smallest rectangle containing all widgets, with its right & bottom edges capped to the int range,
+     * or empty if there is no widget
+     */
+    public Optional<RectangleCoordinates> boundingBox() {
+        if (lefts.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(RectangleCoordinates.builder()
+                .x0(lefts.firstKey().intValue())
+                .y0(tops.firstKey().intValue())
+                .x1((int) Math.min(Integer.MAX_VALUE, rights.lastKey()))
+                .y1((int) Math.min(Integer.MAX_VALUE, bottoms.lastKey()))
+                .build());
+    }
+
+    @Override
+    public void verify(Map<Long, Widget> widgets, Consumer<String> drift) {
+        if (widgetCount != widgets.size()) {
+            drift.accept("bounds count " + widgetCount + " widgets, expected " + widgets.size());
+        }
+        verifyEdges("left", lefts, widgets, BoundsIndex::left, drift);
+        verifyEdges("top", tops, widgets, BoundsIndex::top, drift);
+        verifyEdges("right", rights, widgets, BoundsIndex::right, drift);
+        verifyEdges("bottom", bottoms, widgets, BoundsIndex::bottom, drift);
+    }
+
+    private static void verifyEdges(String edge, Map<Long, Integer> counts, Map<Long, Widget> widgets,
+                                    ToLongFunction<Widget> coordinate, Consumer<String> drift) {
+        Map<Long, Integer> expected = new TreeMap<>();
+        widgets.values().forEach(widget -> expected.merge(coordinate.applyAsLong(widget), 1, Integer::sum));
+        expected.forEach((value, count) -> {
+            int actual = counts.getOrDefault(value, 0);
+            if (actual != count) {
+                drift.accept("bounds count " + actual + " " + edge + " edges at " + value + ", expected " + count);
+            }
+        });
+        counts.forEach((value, count) -> {
+            if (!expected.containsKey(value)) {
+                drift.accept("bounds count " + count + " " + edge + " edges at " + value + ", expected 0");
+            }
+        });
+    }
+
+    private static void decrement(Map<Long, Integer> counts, long value) {
+        counts.computeIfPresent(value, (k, count) -> count == 1 ? null : count - 1);
+    }
+
+    private static long left(Widget widget) {
+        return widget.getXIndex();
+    }
+
+    private static long top(Widget widget) {
+        return widget.getYIndex();
+    }
+
+    private static long right(Widget widget) {
+        return (long) widget.getXIndex() + widget.getWidth();
+    }
+
+    private static long bottom(Widget widget) {
+        return (long) widget.getYIndex() + widget.getHeight();
+    }
+}
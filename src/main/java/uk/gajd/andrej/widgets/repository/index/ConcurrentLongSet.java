@@ -0,0 +1,218 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This is a hash set of primitive longs, used for the buckets of the in-memory indexes.
+ * Values are kept densely packed in an array, which readers iterate without locking,
+ * and an open addressing table maps each value to its position for O(1) adds, removes and lookups.
+ * Neither allocates anything unless the arrays need to grow.
+ *
+ * It allows one writer at a time, which the caller needs to ensure, and any number of concurrent readers.
+ * Readers see a weakly consistent view: a value moved by a concurrent remove may be missed, but is never seen twice.
+ * Long.MIN_VALUE and Long.MIN_VALUE + 1 are used as markers and can't be stored.
+ *
+ */
+public class ConcurrentLongSet {
+    private static final long FREE = Long.MIN_VALUE;
+    private static final long REMOVED = Long.MIN_VALUE + 1;
+    private static final int MIN_CAPACITY = 8;
+
+    private volatile AtomicLongArray values;
+    private volatile AtomicLongArray slots;
+    private int[] positions; // Position in values of the value in the same slot, only accessed by the writer
+    private int usedSlots;   // Values & removed markers in slots, only accessed by the writer
+    private volatile int size;
+
+    public ConcurrentLongSet() {
+        values = newArray(MIN_CAPACITY);
+        slots = newArray(MIN_CAPACITY * 2);
+        positions = new int[MIN_CAPACITY * 2];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long value) {
+        return findSlot(slots, value) >= 0;
+    }
+
+    /**
+     * @return true if the value wasn't in the set
+     */
+    public boolean add(long value) {
+        if (value == FREE || value == REMOVED) {
+            throw new IllegalArgumentException("Value can't be stored in the set: " + value);
+        }
+        if (findSlot(slots, value) >= 0) {
+            return false;
+        }
+
+        int position = size;
+        if (position == values.length()) {
+            growValues();
+        }
+        if ((usedSlots + 1) * 4L > slots.length() * 3L) {
+            rehashSlots();
+        }
+
+        values.set(position, value);
+        int slot = insertSlot(slots, value);
+        positions[slot] = position;
+        size = position + 1; // Publishes the value to readers
+        return true;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value) {
+        int slot = findSlot(slots, value);
+        if (slot < 0) {
+            return false;
+        }
+        int position = positions[slot];
+        slots.set(slot, REMOVED);
+
+        // The last value fills the gap. It is cleared from the end before being written to the gap,
+        // so a reader passing by sees it at most once.
+        int lastPosition = size - 1;
+        if (position != lastPosition) {
+            long lastValue = values.get(lastPosition);
+            values.set(lastPosition, REMOVED);
+            values.set(position, lastValue);
+            positions[findSlot(slots, lastValue)] = position;
+        } else {
+            values.set(lastPosition, REMOVED);
+        }
+        size = lastPosition;
+        return true;
+    }
+
+    /**
+     * @return the values of the set, without locking out writers
+     */
+    public LongStream stream() {
+        return StreamSupport.longStream(new ValuesSpliterator(values, size), false);
+    }
+
+    private void growValues() {
+        AtomicLongArray current = values;
+        AtomicLongArray grown = newArray(current.length() * 2);
+        for (int i = 0; i < size; i++) {
+            grown.lazySet(i, current.get(i));
+        }
+        values = grown; // Readers holding the old array keep iterating a complete copy
+    }
+
+    private void rehashSlots() {
+        // Grow when the values fill half of the new table, otherwise only drop the removed markers
+        AtomicLongArray current = slots;
+        int capacity = current.length();
+        while (size * 2L >= capacity) {
+            capacity <<= 1;
+        }
+
+        AtomicLongArray rehashed = newArray(capacity);
+        int[] rehashedPositions = new int[capacity];
+        for (int i = 0; i < current.length(); i++) {
+            long value = current.get(i);
+            if (value != FREE && value != REMOVED) {
+                rehashedPositions[insertSlot(rehashed, value)] = positions[i];
+            }
+        }
+        positions = rehashedPositions;
+        usedSlots = size;
+        slots = rehashed;
+    }
+
+    private int insertSlot(AtomicLongArray table, long value) {
+        int mask = table.length() - 1;
+        for (int i = hash(value, mask); ; i = (i + 1) & mask) {
+            long slotValue = table.get(i);
+            if (slotValue == FREE) {
+                usedSlots++;
+                table.set(i, value);
+                return i;
+            }
+            if (slotValue == REMOVED) {
+                table.set(i, value);
+                return i;
+            }
+        }
+    }
+
+    private static int findSlot(AtomicLongArray table, long value) {
+        int mask = table.length() - 1;
+        for (int i = hash(value, mask); ; i = (i + 1) & mask) {
+            long slotValue = table.get(i);
+            if (slotValue == value) {
+                return i;
+            }
+            if (slotValue == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    private static int hash(long value, int mask) {
+        long hash = value * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential ids
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static AtomicLongArray newArray(int capacity) {
+        AtomicLongArray array = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            array.lazySet(i, FREE);
+        }
+        return array;
+    }
+
+    /**
+     * Walks the values up to the size seen when the stream was created, with a plain loop.
+     */
+    private static final class ValuesSpliterator extends Spliterators.AbstractLongSpliterator {
+        private final AtomicLongArray values;
+        private final int end;
+        private int index;
+
+        ValuesSpliterator(AtomicLongArray values, int size) {
+            super(size, Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.values = values;
+            this.end = Math.min(size, values.length());
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            while (index < end) {
+                long value = values.get(index++);
+                if (value != REMOVED && value != FREE) {
+                    action.accept(value);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            for (int i = index; i < end; i++) {
+                long value = values.get(i);
+                if (value != REMOVED && value != FREE) {
+                    action.accept(value);
+                }
+            }
+            index = end;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * This keeps the statistics the query planner estimates the widgets of a rectangle from: the number of widgets,
+ * their average size and two histograms of where they start, along x and along y, in buckets of {@link #BUCKET_SIZE}.
+ * The axes are assumed to be independent, so the share of widgets in a rectangle is the product of their shares
+ * in its x & y ranges, which is cheap to keep & read, and good enough to tell a small viewport from most of the board.
+ *
+ */
+public class CoordinateStatistics implements WidgetIndex {
+    static final int BUCKET_SHIFT = 10;
+    static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+
+    private final NavigableMap<Integer, Integer> xStarts = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Integer, Integer> yStarts = new ConcurrentSkipListMap<>();
+    private volatile long widgetCount; // Only changed by the single writer
+    private volatile long totalWidth;
+    private volatile long totalHeight;
+
+    @Override
+    public String getName() {
+        return "statistics";
+    }
+
+    @Override
+    public void add(Widget widget) {
+        xStarts.merge(bucketOf(widget.getXIndex()), 1, Integer::sum);
+        yStarts.merge(bucketOf(widget.getYIndex()), 1, Integer::sum);
+        widgetCount++;
+        totalWidth += widget.getWidth();
+        totalHeight += widget.getHeight();
+    }
+
+    @Override
+    public void remove(Widget widget) {
+        xStarts.computeIfPresent(bucketOf(widget.getXIndex()), (k, count) -> count == 1 ? null : count - 1);
+        yStarts.computeIfPresent(bucketOf(widget.getYIndex()), (k, count) -> count == 1 ? null : count - 1);
+        widgetCount--;
+        totalWidth -= widget.getWidth();
+        totalHeight -= widget.getHeight();
+    }
+
+    @Override
+    public void clear() {
+        xStarts.clear();
+        yStarts.clear();
+        widgetCount = 0;
+        totalWidth = 0;
+        totalHeight = 0;
+    }
+
+    /**
+     * @return number of widgets counted
+     */
+    @Override
+    public long size() {
+        return widgetCount;
+    }
+
+    /**
+     * The widgets contained in the area start at least an average widget before its right & bottom edges,
+     * those intersecting it start at most an average widget before its left & top edges.
+     *
+     * @return estimated number of widgets matching the area
+     */
+    public double estimateMatches(RectangleCoordinates area, QueryMode mode) {
+        long count = widgetCount;
+        if (count == 0) {
+            return 0;
+        }
+        long averageWidth = totalWidth / count;
+        long averageHeight = totalHeight / count;
+        double inX = mode == QueryMode.INTERSECTS
+                ? countStarting(xStarts, area.getX0() - averageWidth, area.getX1())
+                : countStarting(xStarts, area.getX0(), Math.max(area.getX0() + 1L, area.getX1() - averageWidth));
+        double inY = mode == QueryMode.INTERSECTS
+                ? countStarting(yStarts, area.getY0() - averageHeight, area.getY1())
+                : countStarting(yStarts, area.getY0(), Math.max(area.getY0() + 1L, area.getY1() - averageHeight));
+        return inX * inY / count;
+    }
+
+    @Override
+    public void verify(Map<Long, Widget> widgets, Consumer<String> drift) {
+        if (widgetCount != widgets.size()) {
+            drift.accept("statistics count " + widgetCount + " widgets, expected " + widgets.size());
+        }
+        verifyBuckets("x", xStarts, widgets, Widget::getXIndex, drift);
+        verifyBuckets("y", yStarts, widgets, Widget::getYIndex, drift);
+    }
+
+    /**
+     * Widgets are assumed to be spread evenly within a bucket, so a bucket partly in the range counts in part.
+     *
+     * @return estimated number of widgets starting from the given coordinate, inclusive, to the other, exclusive
+     */
+    private static double countStarting(NavigableMap<Integer, Integer> buckets, long from, long to) {
+        int firstBucket = bucketOf(Math.max(Integer.MIN_VALUE, from));
+        int lastBucket = bucketOf(Math.min(Integer.MAX_VALUE, to - 1));
+        double count = 0;
+        for (Map.Entry<Integer, Integer> bucket : buckets.subMap(firstBucket, true, lastBucket, true).entrySet()) {
+            long bucketStart = (long) bucket.getKey() << BUCKET_SHIFT;
+            long overlap = Math.min(to, bucketStart + BUCKET_SIZE) - Math.max(from, bucketStart);
+            count += bucket.getValue() * (double) overlap / BUCKET_SIZE;
+        }
+        return count;
+    }
+
+    private static void verifyBuckets(String axis, Map<Integer, Integer> buckets, Map<Long, Widget> widgets,
+                                      ToIntFunction<Widget> start, Consumer<String> drift) {
+        Map<Integer, Integer> expected = new HashMap<>();
+        widgets.values().forEach(widget -> expected.merge(bucketOf(start.applyAsInt(widget)), 1, Integer::sum));
+        expected.forEach((bucket, count) -> {
+            int actual = buckets.getOrDefault(bucket, 0);
+            if (actual != count) {
+                drift.accept("statistics count " + actual + " widgets starting in " + axis + " bucket " + bucket + ", expected " + count);
+            }
+        });
+        buckets.forEach((bucket, count) -> {
+            if (!expected.containsKey(bucket)) {
+                drift.accept("statistics count " + count + " widgets starting in " + axis + " bucket " + bucket + ", expected 0");
+            }
+        });
+    }
+
+    private static int bucketOf(long coordinate) {
+        return (int) (coordinate >> BUCKET_SHIFT);
+    }
+}
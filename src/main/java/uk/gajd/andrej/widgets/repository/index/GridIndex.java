@@ -0,0 +1,398 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * This is the spatial index of the widgets, a uniform grid of square cells, each keeping the ids of the widgets
+ * overlapping it in a {@link ConcurrentLongSet}. A widget is in every cell its area overlaps, so a query only visits
+ * the cells of its rectangle and finds both the widgets contained in it and those crossing its edges,
+ * however far away they start.
+ *
+ * A widget found in several cells of a query is only reported from the first one of them, the cell where
+ * the widget's area clipped to the query starts, so no set of seen ids is needed.
+ * Widgets spanning more than {@link #MAX_CELLS_PER_WIDGET} cells are kept aside and checked by every query instead.
+ *
+ * Each cell also keeps a summary of the widgets starting in it, their count & total area, which is updated along
+ * with the cells, so aggregates of an area only read the widgets of the cells crossing its edges.
+ *
+ */
+public class GridIndex implements WidgetIndex {
+    public static final int DEFAULT_CELL_SIZE = 256;
+    static final int MAX_CELLS_PER_WIDGET = 64;
+    private static final ConcurrentLongSet EMPTY = new ConcurrentLongSet();
+
+    private final int cellShift;
+    private final Map<Long, ConcurrentLongSet> widgetIdsByCell = new ConcurrentHashMap<>();
+    private final ConcurrentLongSet oversizedIds = new ConcurrentLongSet();
+    private final Map<Long, CellSummary> summariesByCell = new ConcurrentHashMap<>();
+    private volatile long cellEntries; // Only changed by the single writer
+    private volatile long totalArea;
+
+    /**
+     * @param cellSize side of the cells, a power of two so cells are found by shifting coordinates
+     */
+    public GridIndex(int cellSize) {
+        if (cellSize <= 0 || Integer.bitCount(cellSize) != 1) {
+            throw new IllegalArgumentException("Cell size should be a power of two.");
+        }
+        this.cellShift = Integer.numberOfTrailingZeros(cellSize);
+    }
+
+    @Override
+    public String getName() {
+        return "grid";
+    }
+
+    @Override
+    public void add(Widget widget) {
+        summariesByCell.computeIfAbsent(startCellOf(widget), k -> new CellSummary()).add(widget.area());
+        totalArea += widget.area();
+        CellRange cells = cellsOf(widget);
+        if (cells.count() > MAX_CELLS_PER_WIDGET) {
+            oversizedIds.add(widget.getId());
+            return;
+        }
+        cells.forEach(cell -> {
+            if (widgetIdsByCell.computeIfAbsent(cell, k -> new ConcurrentLongSet()).add(widget.getId())) {
+                cellEntries++;
+            }
+        });
+    }
+
+    @Override
+    public void remove(Widget widget) {
+        summariesByCell.computeIfPresent(startCellOf(widget), (k, summary) -> {
+            summary.remove(widget.area());
+            return summary.count == 0 ? null : summary;
+        });
+        totalArea -= widget.area();
+        CellRange cells = cellsOf(widget);
+        if (cells.count() > MAX_CELLS_PER_WIDGET) {
+            oversizedIds.remove(widget.getId());
+            return;
+        }
+        cells.forEach(cell -> widgetIdsByCell.computeIfPresent(cell, (k, ids) -> {
+            if (ids.remove(widget.getId())) {
+                cellEntries--;
+            }
+            return ids.isEmpty() ? null : ids;
+        }));
+    }
+
+    @Override
+    public void clear() {
+        widgetIdsByCell.clear();
+        summariesByCell.clear();
+        cellEntries = 0;
+        totalArea = 0;
+        for (long id : oversizedIds.stream().toArray()) {
+            oversizedIds.remove(id);
+        }
+    }
+
+    /**
+     * @return the entries of the cells, a widget counting once for each of its cells, and the oversized widgets
+     */
+    @Override
+    public long size() {
+        return cellEntries + oversizedIds.size();
+    }
+
+    /**
+     * @return total area of the widgets
+     */
+    public long getTotalArea() {
+        return totalArea;
+    }
+
+    /**
+     * @return roughly how many candidates {@link #findCandidates} would read for the area, from the average
+     * number of widgets per held cell, without visiting any cell
+     */
+    public long estimateCandidates(RectangleCoordinates area) {
+        int heldCells = widgetIdsByCell.size();
+        if (heldCells == 0) {
+            return oversizedIds.size();
+        }
+        long queryCells = ((long) cellOf(area.getX1() - 1L) - cellOf(area.getX0()) + 1)
+                * ((long) cellOf(area.getY1() - 1L) - cellOf(area.getY0()) + 1);
+        return Math.min(queryCells, heldCells) * cellEntries / heldCells + oversizedIds.size();
+    }
+
+    /**
+     * @param area    of the query, with x1 & y1 bigger than x0 & y0
+     * @param widgets looks the widgets up by id, returning null for a deleted one
+     * @return the widgets overlapping the cells of the area, each once, which still need to be matched against it
+     */
+    public Stream<Widget> findCandidates(RectangleCoordinates area, LongFunction<Widget> widgets) {
+        CellRange queryCells = new CellRange(
+                cellOf(area.getX0()), cellOf(area.getY0()),
+                cellOf(area.getX1() - 1L), cellOf(area.getY1() - 1L));
+
+        // A huge area has more cells than the grid holds, then the held ones are filtered instead
+        Stream<Map.Entry<Long, ConcurrentLongSet>> cells = queryCells.count() <= widgetIdsByCell.size()
+                ? queryCells.stream().mapToObj(cell -> Map.entry(cell, widgetIdsByCell.getOrDefault(cell, EMPTY)))
+                : widgetIdsByCell.entrySet().stream().filter(cell -> queryCells.contains(cell.getKey()));
+
+        Stream<Widget> inCells = cells.flatMap(cell -> cell.getValue().stream()
+                .mapToObj(widgets)
+                .filter(Objects::nonNull) // Deleted by a concurrent write
+                .filter(widget -> queryCells.isFirstCellOf(widget, cell.getKey())));
+        Stream<Widget> oversized = oversizedIds.stream().mapToObj(widgets).filter(Objects::nonNull);
+        return Stream.concat(inCells, oversized);
+    }
+
+    /**
+     * @param widgets looks the widgets up by id, returning null for a deleted one
+     * @return the widgets overlapping the cell of the point, which still need to be checked for covering it
+     */
+    public Stream<Widget> findCandidatesAt(int x, int y, LongFunction<Widget> widgets) {
+        ConcurrentLongSet ids = widgetIdsByCell.getOrDefault(cellKey(cellOf(x), cellOf(y)), EMPTY);
+        return LongStream.concat(ids.stream(), oversizedIds.stream())
+                .mapToObj(widgets)
+                .filter(Objects::nonNull); // Deleted by a concurrent write
+    }
+
+    /**
+     * The cells within the area add their summaries to the tiles, when tiles are made of whole cells,
+     * only the cells crossing its edges look at their widgets.
+     *
+     * @param area     of the aggregates, with x1 & y1 bigger than x0 & y0
+     * @param tileSize side of the tiles, a power of two so tiles are aligned to cells
+     * @param widgets  looks the widgets up by id, returning null for a deleted one
+     * @return count & total area of the widgets starting in the area, by tile, for the tiles with any widget
+     */
+    public List<TileAggregate> aggregateTiles(RectangleCoordinates area, int tileSize, LongFunction<Widget> widgets) {
+        int tileShift = Integer.numberOfTrailingZeros(tileSize);
+        CellRange queryCells = new CellRange(
+                cellOf(area.getX0()), cellOf(area.getY0()),
+                cellOf(area.getX1() - 1L), cellOf(area.getY1() - 1L));
+        Map<Long, TileAggregate> tiles = new HashMap<>();
+
+        // Only cells with a summary have widgets starting in them, filtered from the held ones for a huge area
+        Stream<Map.Entry<Long, CellSummary>> cells = queryCells.count() <= summariesByCell.size()
+                ? queryCells.stream().filter(summariesByCell::containsKey).mapToObj(cell -> Map.entry(cell, summariesByCell.get(cell)))
+                : summariesByCell.entrySet().stream().filter(cell -> queryCells.contains(cell.getKey()));
+        cells.forEach(cell -> {
+            long key = cell.getKey();
+            if (tileShift >= cellShift && isWithin(key, area)) {
+                tileAt(tiles, cellX(key) << cellShift, cellY(key) << cellShift, tileShift)
+                        .add(cell.getValue().count, cell.getValue().area);
+                return;
+            }
+            widgetIdsByCell.getOrDefault(key, EMPTY).stream()
+                    .mapToObj(widgets)
+                    .filter(Objects::nonNull) // Deleted by a concurrent write
+                    .filter(widget -> startCellOf(widget) == key && startsIn(widget, area))
+                    .forEach(widget -> tileAt(tiles, widget.getXIndex(), widget.getYIndex(), tileShift).add(1, widget.area()));
+        });
+        // Oversized widgets aren't in the cells, so those starting in a cell crossing the edges are added one by one
+        oversizedIds.stream()
+                .mapToObj(widgets)
+                .filter(Objects::nonNull)
+                .filter(widget -> startsIn(widget, area) && !(tileShift >= cellShift && isWithin(startCellOf(widget), area)))
+                .forEach(widget -> tileAt(tiles, widget.getXIndex(), widget.getYIndex(), tileShift).add(1, widget.area()));
+
+        return tiles.values().stream()
+                .sorted(Comparator.comparingInt(TileAggregate::getY0).thenComparingInt(TileAggregate::getX0))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void verify(Map<Long, Widget> widgets, Consumer<String> drift) {
+        long entries = widgetIdsByCell.values().stream().mapToLong(ConcurrentLongSet::size).sum();
+        if (entries != cellEntries) {
+            drift.accept("grid counts " + cellEntries + " cell entries but its cells hold " + entries);
+        }
+        widgetIdsByCell.forEach((cell, ids) -> {
+            if (ids.isEmpty()) {
+                drift.accept("grid cell " + describe(cell) + " is empty");
+            }
+            ids.stream().forEach(id -> {
+                Widget widget = widgets.get(id);
+                if (widget == null) {
+                    drift.accept("grid cell " + describe(cell) + " references missing widget " + id);
+                } else if (!cellsOf(widget).contains(cell)) {
+                    drift.accept("grid cell " + describe(cell) + " references widget " + id + " which doesn't overlap it");
+                }
+            });
+        });
+        verifySummaries(widgets, drift);
+        oversizedIds.stream().forEach(id -> {
+            if (!widgets.containsKey(id)) {
+                drift.accept("grid references missing oversized widget " + id);
+            }
+        });
+
+        widgets.values().forEach(widget -> {
+            CellRange cells = cellsOf(widget);
+            if (cells.count() > MAX_CELLS_PER_WIDGET) {
+                if (!oversizedIds.contains(widget.getId())) {
+                    drift.accept("oversized widget " + widget.getId() + " is missing from the grid");
+                }
+                return;
+            }
+            cells.forEach(cell -> {
+                ConcurrentLongSet ids = widgetIdsByCell.get(cell);
+                if (ids == null || !ids.contains(widget.getId())) {
+                    drift.accept("widget " + widget.getId() + " is missing from grid cell " + describe(cell));
+                }
+            });
+        });
+    }
+
+    private void verifySummaries(Map<Long, Widget> widgets, Consumer<String> drift) {
+        Map<Long, CellSummary> expected = new HashMap<>();
+        long expectedArea = 0;
+        for (Widget widget : widgets.values()) {
+            expected.computeIfAbsent(startCellOf(widget), k -> new CellSummary()).add(widget.area());
+            expectedArea += widget.area();
+        }
+        if (expectedArea != totalArea) {
+            drift.accept("grid counts a total area of " + totalArea + ", expected " + expectedArea);
+        }
+        expected.forEach((cell, summary) -> {
+            CellSummary actual = summariesByCell.getOrDefault(cell, new CellSummary());
+            if (actual.count != summary.count || actual.area != summary.area) {
+                drift.accept("grid cell " + describe(cell) + " summarizes " + actual.count + " widgets of area " + actual.area
+                        + ", expected " + summary.count + " of area " + summary.area);
+            }
+        });
+        summariesByCell.keySet().stream()
+                .filter(cell -> !expected.containsKey(cell))
+                .forEach(cell -> drift.accept("grid cell " + describe(cell) + " summarizes widgets but none starts in it"));
+    }
+
+    private long startCellOf(Widget widget) {
+        return cellKey(cellOf(widget.getXIndex()), cellOf(widget.getYIndex()));
+    }
+
+    /**
+     * @return true if the cell lies within the area, so every widget starting in the cell starts in the area
+     */
+    private boolean isWithin(long cell, RectangleCoordinates area) {
+        long x0 = (long) cellX(cell) << cellShift;
+        long y0 = (long) cellY(cell) << cellShift;
+        return x0 >= area.getX0() && x0 + (1L << cellShift) <= area.getX1()
+                && y0 >= area.getY0() && y0 + (1L << cellShift) <= area.getY1();
+    }
+
+    private static boolean startsIn(Widget widget, RectangleCoordinates area) {
+        return widget.getXIndex() >= area.getX0() && widget.getXIndex() < area.getX1()
+                && widget.getYIndex() >= area.getY0() && widget.getYIndex() < area.getY1();
+    }
+
+    private static TileAggregate tileAt(Map<Long, TileAggregate> tiles, int x, int y, int tileShift) {
+        int tileX0 = x >> tileShift << tileShift;
+        int tileY0 = y >> tileShift << tileShift;
+        return tiles.computeIfAbsent(cellKey(tileX0, tileY0), k -> new TileAggregate(tileX0, tileY0, 0, 0));
+    }
+
+    private CellRange cellsOf(Widget widget) {
+        return new CellRange(
+                cellOf(widget.getXIndex()), cellOf(widget.getYIndex()),
+                cellOf((long) widget.getXIndex() + widget.getWidth() - 1), cellOf((long) widget.getYIndex() + widget.getHeight() - 1));
+    }
+
+    private int cellOf(long coordinate) {
+        return (int) (coordinate >> cellShift); // Arithmetic shift, which rounds negative coordinates down as well
+    }
+
+    private static long cellKey(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+
+    private static int cellX(long cell) {
+        return (int) (cell >> 32);
+    }
+
+    private static int cellY(long cell) {
+        return (int) cell;
+    }
+
+    private static String describe(long cell) {
+        return "(" + cellX(cell) + ", " + cellY(cell) + ")";
+    }
+
+    /**
+     * The count & total area of the widgets starting in a cell.
+     * Its fields are only changed by the single writer, readers need to hold off writes to see both of them in step.
+     */
+    private static class CellSummary {
+        private int count;
+        private long area;
+
+        void add(long widgetArea) {
+            count++;
+            area += widgetArea;
+        }
+
+        void remove(long widgetArea) {
+            count--;
+            area -= widgetArea;
+        }
+    }
+
+    /**
+     * The cells from (x0, y0) to (x1, y1), both inclusive.
+     */
+    private class CellRange {
+        private final int x0;
+        private final int y0;
+        private final int x1;
+        private final int y1;
+
+        CellRange(int x0, int y0, int x1, int y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        long count() {
+            return ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+        }
+
+        boolean contains(long cell) {
+            return cellX(cell) >= x0 && cellX(cell) <= x1 && cellY(cell) >= y0 && cellY(cell) <= y1;
+        }
+
+        /**
+         * @return true if the cell is where the widget's cells within this range start
+         */
+        boolean isFirstCellOf(Widget widget, long cell) {
+            return cellX(cell) == Math.max(cellOf(widget.getXIndex()), x0)
+                    && cellY(cell) == Math.max(cellOf(widget.getYIndex()), y0);
+        }
+
+        LongStream stream() {
+            return IntStream.rangeClosed(x0, x1)
+                    .boxed()
+                    .flatMapToLong(x -> IntStream.rangeClosed(y0, y1).mapToLong(y -> cellKey(x, y)));
+        }
+
+        void forEach(LongConsumer action) {
+            for (long x = x0; x <= x1; x++) {
+                for (long y = y0; y <= y1; y++) {
+                    action.accept(cellKey((int) x, (int) y));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This is the interface for secondary indexes kept next to the widget map of the in-memory repository.
+ * Indexes are only modified through {@link WidgetIndexes}, which keeps all of them in step with the widgets.
+ *
+ */
+public interface WidgetIndex {
+    /**
+     * @return name of the index used in consistency reports
+     */
+    String getName();
+
+    /**
+     * @param widget to add to the index, with its current property values
+     */
+    void add(Widget widget);
+
+    /**
+     * @param widget to remove from the index, with the property values it was added with
+     */
+    void remove(Widget widget);
+
+    void clear();
+
+    /**
+     * @return number of entries held by the index
+     */
+    long size();
+
+    /**
+     * @param widgets the index is expected to reflect, by id
+     * @param drift   receives a description for every difference found
+     */
+    void verify(Map<Long, Widget> widgets, Consumer<String> drift);
+}
@@ -0,0 +1,92 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * This keeps all secondary indexes of the in-memory repository in step with its widget map.
+ * Every save, update, delete and shift goes through here, so no index can be missed on any of them.
+ * Callers need to serialize the writes, which makes a change visible in all indexes together.
+ *
+ */
+public class WidgetIndexes {
+    private final List<WidgetIndex> indexes;
+
+    public WidgetIndexes(WidgetIndex... indexes) {
+        this.indexes = List.of(indexes);
+    }
+
+    public void add(Widget widget) {
+        indexes.forEach(index -> index.add(widget));
+    }
+
+    public void remove(Widget widget) {
+        indexes.forEach(index -> index.remove(widget));
+    }
+
+    /**
+     * Re-indexes a widget which is changed in place.
+     *
+     * @param widget to change
+     * @param change applied to the widget while it is out of the indexes
+     */
+    public void reindex(Widget widget, Consumer<Widget> change) {
+        remove(widget);
+        change.accept(widget);
+        add(widget);
+    }
+
+    /**
+     * Re-indexes a widget which is changed in place, in the given indexes only.
+     * The change can only touch the properties those indexes are keyed by.
+     *
+     * @param widget   to change
+     * @param change   applied to the widget while it is out of the affected indexes
+     * @param affected indexes keyed by the changed properties
+     */
+    public void reindex(Widget widget, Consumer<Widget> change, WidgetIndex... affected) {
+        for (WidgetIndex index : affected) {
+            index.remove(widget);
+        }
+        change.accept(widget);
+        for (WidgetIndex index : affected) {
+            index.add(widget);
+        }
+    }
+
+    public void clear() {
+        indexes.forEach(WidgetIndex::clear);
+    }
+
+    /**
+     * @param widgets all stored widgets, by id
+     * @return the differences between the indexes and the widgets
+     */
+    public IndexConsistencyReport verify(Map<Long, Widget> widgets) {
+        Map<String, Long> indexSizes = new LinkedHashMap<>();
+        List<String> drift = new ArrayList<>();
+        long[] driftCount = {0};
+
+        indexes.forEach(index -> {
+            indexSizes.put(index.getName(), index.size());
+            index.verify(widgets, description -> {
+                if (driftCount[0]++ < IndexConsistencyReport.MAX_REPORTED_DRIFT) {
+                    drift.add(description);
+                }
+            });
+        });
+
+        return IndexConsistencyReport.builder()
+                .widgetCount(widgets.size())
+                .indexSizes(indexSizes)
+                .driftCount(driftCount[0])
+                .drift(drift)
+                .build();
+    }
+}
@@ -0,0 +1,117 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.Widget;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * This is the index of widget ids by their zIndex, kept sorted so widgets can be listed in z order.
+ * There can only be one widget at a zIndex. The taken zIndexes are also kept in a {@link ZOccupancy},
+ * which answers the questions of writes about the z-space, so they need the write lock of the repository.
+ *
+ */
+public class ZIndex implements WidgetIndex {
+    private final NavigableMap<Integer, Long> widgetIdsByZIndex = new ConcurrentSkipListMap<>();
+    private final ZOccupancy occupancy = new ZOccupancy();
+
+    @Override
+    public String getName() {
+        return "zIndex";
+    }
+
+    @Override
+    public void add(Widget widget) {
+        widgetIdsByZIndex.put(widget.getZIndex(), widget.getId());
+        occupancy.add(widget.getZIndex());
+    }
+
+    @Override
+    public void remove(Widget widget) {
+        if (widgetIdsByZIndex.remove(widget.getZIndex(), widget.getId())) {
+            occupancy.remove(widget.getZIndex());
+        }
+    }
+
+    @Override
+    public void clear() {
+        widgetIdsByZIndex.clear();
+        occupancy.clear();
+    }
+
+    @Override
+    public long size() {
+        return widgetIdsByZIndex.size();
+    }
+
+    public Long get(Integer zIndex) {
+        return widgetIdsByZIndex.get(zIndex);
+    }
+
+    public boolean contains(Integer zIndex) {
+        return occupancy.contains(zIndex);
+    }
+
+    /**
+     * @param zIndex which is taken
+     * @return the last zIndex of the contiguous run of taken zIndexes starting at the given one
+     */
+    public int runEnd(Integer zIndex) {
+        return occupancy.runEnd(zIndex);
+    }
+
+    /**
+     * @return the highest taken zIndex, or empty if there is none
+     */
+    public OptionalInt max() {
+        return occupancy.max();
+    }
+
+    /**
+     * @return the lowest taken zIndex, or empty if there is none, which may be negative
+     */
+    public OptionalInt min() {
+        return occupancy.min();
+    }
+
+    /**
+     * @return the zIndex right below the lowest taken one, see {@link ZOccupancy#belowMin()}
+     */
+    public OptionalInt belowMin() {
+        return occupancy.belowMin();
+    }
+
+    /**
+     * @return widget ids sorted by zIndex
+     */
+    public Collection<Long> ids() {
+        return widgetIdsByZIndex.values();
+    }
+
+    @Override
+    public void verify(Map<Long, Widget> widgets, Consumer<String> drift) {
+        if (occupancy.size() != widgetIdsByZIndex.size()) {
+            drift.accept("zIndex occupancy has " + occupancy.size() + " zIndexes, but " + widgetIdsByZIndex.size() + " are indexed");
+        }
+        widgetIdsByZIndex.forEach((zIndex, id) -> {
+            Widget widget = widgets.get(id);
+            if (widget == null) {
+                drift.accept("zIndex " + zIndex + " references missing widget " + id);
+            } else if (!zIndex.equals(widget.getZIndex())) {
+                drift.accept("zIndex " + zIndex + " references widget " + id + " which is at zIndex " + widget.getZIndex());
+            }
+        });
+
+        widgets.values().forEach(widget -> {
+            Long indexedId = widgetIdsByZIndex.get(widget.getZIndex());
+            if (!widget.getId().equals(indexedId)) {
+                drift.accept("widget " + widget.getId() + " is missing from zIndex " + widget.getZIndex()
+                        + (indexedId == null ? "" : ", which references widget " + indexedId));
+            }
+        });
+    }
+}
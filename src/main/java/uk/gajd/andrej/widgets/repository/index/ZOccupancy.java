@@ -0,0 +1,89 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.OptionalInt;
+
+/**
+ * This is the set of taken zIndexes, kept in a compressed bitmap, which answers whether a zIndex is taken,
+ * where the contiguous run of taken zIndexes from one ends and what the lowest & highest ones are without touching the widgets.
+ * The bitmap orders its values as unsigned ints, so zIndexes are stored with their sign bit flipped to keep their order.
+ *
+ * It isn't thread-safe, the callers serialize their writes and reads.
+ *
+ */
+public class ZOccupancy {
+    private final RoaringBitmap bitmap = new RoaringBitmap();
+
+    public void add(int zIndex) {
+        bitmap.add(toKey(zIndex));
+    }
+
+    public void remove(int zIndex) {
+        bitmap.remove(toKey(zIndex));
+    }
+
+    public void clear() {
+        bitmap.clear();
+    }
+
+    public boolean contains(int zIndex) {
+        return bitmap.contains(toKey(zIndex));
+    }
+
+    public long size() {
+        return bitmap.getLongCardinality();
+    }
+
+    /**
+     * @param zIndex which is taken
+     * @return the last zIndex of the contiguous run of taken zIndexes starting at the given one
+     */
+    public int runEnd(int zIndex) {
+        if (bitmap.last() == toKey(Integer.MAX_VALUE) && isTakenUpToTheTop(zIndex)) {
+            return Integer.MAX_VALUE; // There is no free zIndex to find after the run
+        }
+        long nextFree = bitmap.nextAbsentValue(toKey(zIndex));
+        return fromKey((int) (nextFree - 1));
+    }
+
+    /**
+     * @return the highest taken zIndex, or empty if there is none
+     */
+    public OptionalInt max() {
+        return bitmap.isEmpty() ? OptionalInt.empty() : OptionalInt.of(fromKey(bitmap.last()));
+    }
+
+    /**
+     * @return the lowest taken zIndex, or empty if there is none
+     */
+    public OptionalInt min() {
+        return bitmap.isEmpty() ? OptionalInt.empty() : OptionalInt.of(fromKey(bitmap.first()));
+    }
+
+    /**
+     * @return the zIndex right below the lowest taken one, where a widget goes without shifting any,
+     * or the lowest one itself when it is the bottom of the int range, or empty if there is none
+     */
+    public OptionalInt belowMin() {
+        if (bitmap.isEmpty()) {
+            return OptionalInt.empty();
+        }
+        int min = fromKey(bitmap.first());
+        return OptionalInt.of(min == Integer.MIN_VALUE ? min : min - 1);
+    }
+
+    private boolean isTakenUpToTheTop(int zIndex) {
+        long start = Integer.toUnsignedLong(toKey(zIndex));
+        long end = Integer.toUnsignedLong(toKey(Integer.MAX_VALUE)) + 1;
+        return bitmap.rangeCardinality(start, end) == end - start;
+    }
+
+    private static int toKey(int zIndex) {
+        return zIndex ^ Integer.MIN_VALUE;
+    }
+
+    private static int fromKey(int key) {
+        return key ^ Integer.MIN_VALUE;
+    }
+}
@@ -0,0 +1,125 @@
+package uk.gajd.andrej.widgets.serialization;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * This is the serializer for {@link Widget}, which is also used for each widget of a list.
+ * It writes the same JSON as the bean serializer would, but without reflection: field names are pre-encoded,
+ * numbers are written as primitives and the updateTime is formatted into a per-thread buffer
+ * instead of going through a {@link DateTimeFormatter}. Output buffers are recycled by Jackson itself.
+ *
+ */
+@JsonComponent
+public class WidgetJsonSerializer extends StdSerializer<Widget> {
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString WIDTH = new SerializedString("width");
+    private static final SerializedString HEIGHT = new SerializedString("height");
+    private static final SerializedString UPDATE_TIME = new SerializedString("updateTime");
+    private static final SerializedString X_INDEX = new SerializedString("xIndex");
+    private static final SerializedString Y_INDEX = new SerializedString("yIndex");
+    private static final SerializedString Z_INDEX = new SerializedString("zIndex");
+
+    private static final int DATE_TIME_LENGTH = 19; // yyyy-MM-ddTHH:mm:ss
+    private static final ThreadLocal<char[]> TIMESTAMP_BUFFER = ThreadLocal.withInitial(() -> new char[DATE_TIME_LENGTH + 10]);
+
+    public WidgetJsonSerializer() {
+        super(Widget.class);
+    }
+
+    @Override
+    public void serialize(Widget widget, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        // Same property order as the bean serializer uses for Widget
+        generator.writeStartObject(widget);
+        generator.writeFieldName(ID);
+        writeNumber(generator, widget.getId());
+        generator.writeFieldName(WIDTH);
+        writeNumber(generator, widget.getWidth());
+        generator.writeFieldName(HEIGHT);
+        writeNumber(generator, widget.getHeight());
+        generator.writeFieldName(UPDATE_TIME);
+        writeTimestamp(generator, widget.getUpdateTime());
+        generator.writeFieldName(X_INDEX);
+        writeNumber(generator, widget.getXIndex());
+        generator.writeFieldName(Y_INDEX);
+        writeNumber(generator, widget.getYIndex());
+        generator.writeFieldName(Z_INDEX);
+        writeNumber(generator, widget.getZIndex());
+        generator.writeEndObject();
+    }
+
+    private static void writeNumber(JsonGenerator generator, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.longValue());
+        }
+    }
+
+    private static void writeNumber(JsonGenerator generator, Integer value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value.intValue());
+        }
+    }
+
+    /**
+     * Writes the timestamp exactly as {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME} formats it,
+     * which is the format of the JSR-310 module when dates aren't written as timestamps.
+     */
+    private static void writeTimestamp(JsonGenerator generator, LocalDateTime timestamp) throws IOException {
+        if (timestamp == null) {
+            generator.writeNull();
+            return;
+        }
+
+        int year = timestamp.getYear();
+        if (year < 0 || year > 9999) { // Signed years are left to the formatter
+            generator.writeString(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+            return;
+        }
+
+        char[] buffer = TIMESTAMP_BUFFER.get();
+        writeDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, timestamp.getMonthValue(), 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, timestamp.getDayOfMonth(), 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, timestamp.getHour(), 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, timestamp.getMinute(), 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, timestamp.getSecond(), 2);
+
+        int length = DATE_TIME_LENGTH;
+        int nano = timestamp.getNano();
+        if (nano > 0) { // Fraction of second without trailing zeros
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            buffer[length++] = '.';
+            writeDigits(buffer, length, nano, digits);
+            length += digits;
+        }
+        generator.writeString(buffer, 0, length);
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
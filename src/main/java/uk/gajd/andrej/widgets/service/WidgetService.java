@@ -1,7 +1,13 @@
 package uk.gajd.andrej.widgets.service;
 
+import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
 
 import java.util.List;
 
@@ -22,6 +28,33 @@ public interface WidgetService {
      */
     Widget updateWidget(Widget widget);
 
+    /**
+     * @param id of widget to move
+     * @param dx added to its xIndex
+     * @param dy added to its yIndex
+     * @return moved widget, with the same zIndex
+     */
+    Widget moveWidget(Long id, int dx, int dy);
+
+    /**
+     * @param id of widget to move above all others
+     * @return moved widget
+     */
+    Widget bringToFront(Long id);
+
+    /**
+     * @param id of widget to move below all others
+     * @return moved widget
+     */
+    Widget sendToBack(Long id);
+
+    /**
+     * @param id      of widget to move
+     * @param belowId of widget to move it right above
+     * @return moved widget
+     */
+    Widget moveAbove(Long id, Long belowId);
+
     /**
      * @param id of widget to delete
      */
@@ -41,8 +74,52 @@ public interface WidgetService {
 
     /**
      * @param coordinates to find out which widgets are in
+     * @param mode        whether widgets need to be contained in the coordinates or only intersect them
      * @param limit       for queried Widget entities
      * @return the widgets found in the specific coordinates sorted by zIndex with limit
      */
-    List<Widget> findWithCoordinates(RectangleCoordinates coordinates, Integer limit);
+    List<Widget> findWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit);
+
+    /**
+     * @param limit for queried Widget entities
+     * @return how the repository answers {@link #findWithLimit}, with the elapsed time of each stage
+     */
+    QueryPlan explainWithLimit(Integer limit);
+
+    /**
+     * @param coordinates to find out which widgets are in
+     * @param mode        whether widgets need to be contained in the coordinates or only intersect them
+     * @param limit       for queried Widget entities
+     * @return how the repository answers {@link #findWithCoordinates}, with the elapsed time of each stage
+     */
+    QueryPlan explainWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit);
+
+    /**
+     * @param queries of a batch, which all see the board as it was when the batch started
+     * @return the widgets found by each query, in the order of the queries
+     */
+    List<List<Widget>> findWithCoordinates(List<CoordinateQuery> queries);
+
+    /**
+     * @return the top-most widget at the point, the one with the highest zIndex among those covering it
+     * @throws WidgetNotFoundException if no widget covers the point
+     */
+    Widget findTopAt(int x, int y);
+
+    /**
+     * @return count, total area & bounding box of all widgets
+     */
+    WidgetAggregates aggregate();
+
+    /**
+     * @param coordinates the widgets need to start in
+     * @param tileSize    side of the tiles of the histogram, a power of two
+     * @return count & total area of the widgets starting in the coordinates, in total and by tile
+     */
+    WidgetAggregates aggregate(RectangleCoordinates coordinates, int tileSize);
+
+    /**
+     * @return the differences found between the stored widgets and the indexes kept for them
+     */
+    IndexConsistencyReport verifyIndexes();
 }
@@ -1,67 +1,163 @@
 package uk.gajd.andrej.widgets.service.impl;
 
+import uk.gajd.andrej.widgets.cache.BoardVersion;
+import uk.gajd.andrej.widgets.event.Operation;
+import uk.gajd.andrej.widgets.event.OperationEventLog;
+import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
 import uk.gajd.andrej.widgets.repository.WidgetRepository;
 import uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository;
 import uk.gajd.andrej.widgets.repository.impl.InMemoryRepository;
 import uk.gajd.andrej.widgets.service.WidgetService;
 import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * This is service implementation of widget.
  * Since we have multiple repository implementations and they have their specific operations required,
  * most of the logic resides in repository implementations {@link InMemoryRepository} & {@link H2WidgetRepository}
+ * Operations are recorded in the {@link OperationEventLog}, which writes them off the request thread.
  *
  */
 @Service
 @RequiredArgsConstructor
-@Slf4j
 public class WidgetServiceImpl implements WidgetService {
     private final WidgetRepository widgetRepository;
+    private final BoardVersion boardVersion;
+    private final OperationEventLog operationEventLog;
 
     @Override
     public Widget createWidget(Widget widget) {
         Widget createdWidget = widgetRepository.save(widget);
-        log.info("Created widget with id: {}", createdWidget.getId());
+        boardVersion.increment();
+        operationEventLog.record(Operation.CREATE, createdWidget.getId());
         return createdWidget;
     }
 
     @Override
     public Widget updateWidget(Widget widget) {
         Widget updatedWidget = widgetRepository.save(widget);
-        log.info("Updated widget with id: {}", updatedWidget.getId());
+        boardVersion.increment();
+        operationEventLog.record(Operation.UPDATE, updatedWidget.getId());
         return updatedWidget;
     }
 
+    @Override
+    public Widget moveWidget(Long id, int dx, int dy) {
+        Widget movedWidget = widgetRepository.moveBy(id, dx, dy);
+        boardVersion.increment();
+        operationEventLog.record(Operation.MOVE, id);
+        return movedWidget;
+    }
+
+    @Override
+    public Widget bringToFront(Long id) {
+        return reordered(widgetRepository.bringToFront(id));
+    }
+
+    @Override
+    public Widget sendToBack(Long id) {
+        return reordered(widgetRepository.sendToBack(id));
+    }
+
+    @Override
+    public Widget moveAbove(Long id, Long belowId) {
+        return reordered(widgetRepository.moveAbove(id, belowId));
+    }
+
     @Override
     public void deleteWidget(Long id) {
         widgetRepository.deleteById(id);
-        log.info("Deleted widget with id: {}", id);
+        boardVersion.increment();
+        operationEventLog.record(Operation.DELETE, id);
     }
 
     @Override
     public Widget findWidgetById(Long id) {
         Widget foundWidget = widgetRepository.findById(id);
-        log.info("Found widget by id: {}", id);
+        operationEventLog.record(Operation.FIND_BY_ID, id);
         return foundWidget;
     }
 
     @Override
     public List<Widget> findWithLimit(Integer limit) {
         List<Widget> widgetsWithLimit = widgetRepository.findWithLimit(limit);
-        log.info("Found widgets with limit: {}", limit);
+        operationEventLog.record(Operation.FIND_WITH_LIMIT, limit, null, widgetsWithLimit.size());
         return widgetsWithLimit;
     }
 
     @Override
-    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, Integer limit) {
-        List<Widget> widgetInCoordinates = widgetRepository.findWithCoordinates(coordinates, limit);
-        log.info("Found widgets with coordinates: {}, and limit: {}", coordinates, limit);
+    public List<Widget> findWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        List<Widget> widgetInCoordinates = widgetRepository.findWithCoordinates(coordinates, mode, limit);
+        operationEventLog.record(Operation.FIND_WITH_COORDINATES, limit, coordinates, widgetInCoordinates.size());
         return widgetInCoordinates;
     }
+
+    @Override
+    public QueryPlan explainWithLimit(Integer limit) {
+        QueryPlan plan = widgetRepository.explainWithLimit(limit);
+        operationEventLog.record(Operation.EXPLAIN, limit, null, plan.getReturned());
+        return plan;
+    }
+
+    @Override
+    public QueryPlan explainWithCoordinates(RectangleCoordinates coordinates, QueryMode mode, Integer limit) {
+        QueryPlan plan = widgetRepository.explainWithCoordinates(coordinates, mode, limit);
+        operationEventLog.record(Operation.EXPLAIN, limit, coordinates, plan.getReturned());
+        return plan;
+    }
+
+    @Override
+    public List<List<Widget>> findWithCoordinates(List<CoordinateQuery> queries) {
+        List<List<Widget>> widgetsInCoordinates = widgetRepository.findWithCoordinates(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            CoordinateQuery query = queries.get(i);
+            operationEventLog.record(Operation.FIND_WITH_COORDINATES, query.getLimit(), query.getCoordinates(),
+                    widgetsInCoordinates.get(i).size());
+        }
+        return widgetsInCoordinates;
+    }
+
+    @Override
+    public Widget findTopAt(int x, int y) {
+        Optional<Widget> topWidget = widgetRepository.findTopAt(x, y);
+        operationEventLog.record(Operation.HIT_TEST, topWidget.map(Widget::getId).orElse(null));
+        return topWidget.orElseThrow(() -> new WidgetNotFoundException("Couldn't find widget at x: " + x + ", y: " + y));
+    }
+
+    @Override
+    public WidgetAggregates aggregate() {
+        WidgetAggregates aggregates = widgetRepository.aggregate();
+        operationEventLog.record(Operation.AGGREGATE, null, null, 0);
+        return aggregates;
+    }
+
+    @Override
+    public WidgetAggregates aggregate(RectangleCoordinates coordinates, int tileSize) {
+        WidgetAggregates aggregates = widgetRepository.aggregate(coordinates, tileSize);
+        operationEventLog.record(Operation.AGGREGATE, null, coordinates, aggregates.getTiles().size());
+        return aggregates;
+    }
+
+    private Widget reordered(Widget widget) {
+        boardVersion.increment();
+        operationEventLog.record(Operation.REORDER, widget.getId());
+        return widget;
+    }
+
+    @Override
+    public IndexConsistencyReport verifyIndexes() {
+        IndexConsistencyReport report = widgetRepository.verifyIndexes();
+        operationEventLog.record(Operation.VERIFY_INDEXES, null, null, (int) report.getDriftCount());
+        return report;
+    }
 }
@@ -1,14 +1,20 @@
+-- Ids are reserved in blocks of 64, see H2WriteCoalescer.ID_BLOCK_SIZE
+CREATE SEQUENCE IF NOT EXISTS widget_id_seq START WITH 1 INCREMENT BY 64;
 CREATE TABLE IF NOT EXISTS widget (
-    id bigint(10) NOT NULL AUTO_INCREMENT,
+    id bigint(10) NOT NULL,
     xIndex INTEGER NOT NULL,
     yIndex INTEGER NOT NULL,
     zIndex INTEGER NOT NULL,
     width INTEGER NOT NULL,
     height INTEGER NOT NULL,
+    x1 BIGINT AS (CAST(xIndex AS BIGINT) + width),
+    y1 BIGINT AS (CAST(yIndex AS BIGINT) + height),
     updateTime TIMESTAMP NOT NULL,
     PRIMARY KEY (id)
 );
-CREATE INDEX z_order
+CREATE INDEX IF NOT EXISTS z_order
 ON widget (zIndex);
-CREATE INDEX x_order
-ON widget (xIndex);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS spatial_x
+ON widget (xIndex, x1, yIndex, y1);
+CREATE INDEX IF NOT EXISTS spatial_y
+ON widget (yIndex, y1, xIndex, x1);
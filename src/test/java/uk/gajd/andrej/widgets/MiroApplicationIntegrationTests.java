@@ -1,6 +1,12 @@
 package uk.gajd.andrej.widgets;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import uk.gajd.andrej.widgets.model.BatchQueryRequest;
+import uk.gajd.andrej.widgets.model.ViewportQuery;
 import uk.gajd.andrej.widgets.model.WidgetRequest;
 import uk.gajd.andrej.widgets.model.Widget;
 import org.junit.jupiter.api.BeforeAll;
@@ -16,12 +22,19 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
+import static org.hamcrest.number.OrderingComparison.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -32,6 +45,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 class MiroApplicationIntegrationTests {
     private static final String WIDGET_API_PATH = "/v1/widgets";
     private static final String WIDGET_API_BY_ID_PATH = WIDGET_API_PATH + "/{id}";
+    private static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
 
     @Autowired
     private MockMvc mockMvc;
@@ -91,6 +105,31 @@ class MiroApplicationIntegrationTests {
                 .andExpect(jsonPath("$.zIndex", is(3)));
     }
 
+    @Test
+    void createWidget_whenRetriedWithIdempotencyKey_thenReturnTheSameWidget() throws Exception {
+        WidgetRequest request = WidgetRequest.builder().xIndex(0).yIndex(0).width(5).height(5).build();
+        String idempotencyKey = UUID.randomUUID().toString();
+
+        MvcResult first = mockMvc.perform(post(WIDGET_API_PATH)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andReturn();
+        Widget created = objectMapper.readValue(first.getResponse().getContentAsString(), Widget.class);
+        long count = countWidgets();
+
+        mockMvc.perform(post(WIDGET_API_PATH)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id", is(created.getId().intValue())))
+                .andExpect(jsonPath("$.zIndex", is(created.getZIndex())));
+        assertEquals(count, countWidgets());
+    }
+
     @Test
     void updateWidget_whenRequestIsInvalid_thenReturnBadRequest() throws Exception {
         WidgetRequest request = WidgetRequest.builder().build(); // Mandatory fields are not set.
@@ -224,6 +263,151 @@ class MiroApplicationIntegrationTests {
                 .andExpect(content().json(objectMapper.writeValueAsString(List.of(widget1, widget2))));
     }
 
+    @Test
+    void findAll_whenModeIsIntersects_thenReturnPartiallyVisibleWidgets() throws Exception {
+        WidgetRequest createRequest1 = WidgetRequest.builder().xIndex(2500).yIndex(3050).width(600).height(20).build();
+        WidgetRequest createRequest2 = WidgetRequest.builder().xIndex(3050).yIndex(3050).width(20).height(20).build();
+        WidgetRequest createRequest3 = WidgetRequest.builder().xIndex(3100).yIndex(3000).width(100).height(100).build();
+
+        Widget widget1 = saveWidget(createRequest1);
+        Widget widget2 = saveWidget(createRequest2);
+        saveWidget(createRequest3); // Only touches the right edge
+
+        mockMvc.perform(get(WIDGET_API_PATH)
+                .contentType(MediaType.APPLICATION_JSON)
+                .param("x0", "3000")
+                .param("y0", "3000")
+                .param("x1", "3100")
+                .param("y1", "3100")
+                .param("mode", "intersects"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(widget1, widget2))));
+    }
+
+    @Test
+    void batchQuery_whenTilesAreQueried_thenReturnWidgetsPerTile() throws Exception {
+        Widget inFirstTile = saveWidget(WidgetRequest.builder().xIndex(5000).yIndex(5000).width(50).height(50).build());
+        Widget acrossTiles = saveWidget(WidgetRequest.builder().xIndex(5080).yIndex(5000).width(50).height(50).build());
+        BatchQueryRequest request = BatchQueryRequest.builder().queries(List.of(
+                ViewportQuery.builder().x0(5000).y0(5000).x1(5100).y1(5100).build(),
+                ViewportQuery.builder().x0(5100).y0(5000).x1(5200).y1(5100).mode("intersects").build()))
+                .build();
+
+        mockMvc.perform(post(WIDGET_API_PATH + "/batch-query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(List.of(inFirstTile), List.of(acrossTiles)))));
+    }
+
+    @Test
+    void hitTest_whenWidgetsOverlapThePoint_thenReturnTopMostOne() throws Exception {
+        saveWidget(WidgetRequest.builder().xIndex(4000).yIndex(4000).width(100).height(100).build());
+        Widget top = saveWidget(WidgetRequest.builder().xIndex(4050).yIndex(4050).width(100).height(100).build());
+
+        mockMvc.perform(get(WIDGET_API_PATH + "/hit-test")
+                .param("x", "4060")
+                .param("y", "4099"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(top)));
+        mockMvc.perform(get(WIDGET_API_PATH + "/hit-test")
+                .param("x", "4200")
+                .param("y", "4000"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void findAll_whenExplainIsTrue_thenReturnAccessPathAndStages() throws Exception {
+        saveWidget(WidgetRequest.builder().xIndex(7000).yIndex(7000).width(10).height(10).build());
+
+        mockMvc.perform(get(WIDGET_API_PATH)
+                .param("x0", "7000").param("y0", "7000")
+                .param("x1", "7100").param("y1", "7100")
+                .param("explain", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessPath", not("unknown")))
+                .andExpect(jsonPath("$.candidates", greaterThanOrEqualTo(1)))
+                .andExpect(jsonPath("$.returned", is(1)))
+                .andExpect(jsonPath("$.stages", not(empty())));
+    }
+
+    @Test
+    void aggregates_whenRectangleIsGiven_thenReturnTilesOfWidgetsStartingInIt() throws Exception {
+        saveWidget(WidgetRequest.builder().xIndex(-6990).yIndex(-6990).width(10).height(10).build());
+        saveWidget(WidgetRequest.builder().xIndex(-6500).yIndex(-6990).width(20).height(10).build());
+        saveWidget(WidgetRequest.builder().xIndex(-6300).yIndex(-6990).width(20).height(10).build());
+
+        mockMvc.perform(get(WIDGET_API_PATH + "/aggregates")
+                .param("x0", "-7000").param("y0", "-7000")
+                .param("x1", "-6400").param("y1", "-6900")
+                .param("tileSize", "512"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.totalArea", is(300)))
+                .andExpect(jsonPath("$.tiles", hasSize(2)))
+                .andExpect(jsonPath("$.tiles[0].x0", is(-7168)))
+                .andExpect(jsonPath("$.tiles[0].y0", is(-7168)))
+                .andExpect(jsonPath("$.tiles[1].x0", is(-6656)))
+                .andExpect(jsonPath("$.tiles[1].totalArea", is(200)));
+        mockMvc.perform(get(WIDGET_API_PATH + "/aggregates"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.boundingBox.x0", lessThanOrEqualTo(-6990)));
+    }
+
+    @Test
+    void verifyIndexes_whenWidgetsExist_thenReturnConsistentReport() throws Exception {
+        mockMvc.perform(get("/v1/admin/indexes/consistency")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.consistent", is(true)))
+                .andExpect(jsonPath("$.drift", hasSize(0)));
+    }
+
+    @Test
+    void createWidget_whenRequestIsCbor_thenReturnCreatedWidgetAsCbor() throws Exception {
+        ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule());
+        WidgetRequest request = WidgetRequest.builder().xIndex(7).yIndex(8).width(5).height(5).build();
+
+        MvcResult createResponse = mockMvc.perform(post(WIDGET_API_PATH)
+                .contentType(MediaType.APPLICATION_CBOR)
+                .accept(MediaType.APPLICATION_CBOR)
+                .content(cborMapper.writeValueAsBytes(request)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        Widget widget = cborMapper.readValue(createResponse.getResponse().getContentAsByteArray(), Widget.class);
+        assertEquals(7, widget.getXIndex());
+        assertNotNull(widget.getZIndex());
+        assertNotNull(widget.getUpdateTime());
+    }
+
+    @Test
+    void findAll_whenSmileIsAccepted_thenReturnWidgetsAsSmile() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule());
+
+        MvcResult findResponse = mockMvc.perform(get(WIDGET_API_PATH)
+                .accept(APPLICATION_SMILE)
+                .param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_SMILE))
+                .andReturn();
+
+        List<Widget> widgets = smileMapper.readValue(findResponse.getResponse().getContentAsByteArray(),
+                new TypeReference<List<Widget>>() {});
+        assertEquals(3, widgets.size());
+        widgets.forEach(widget -> assertNotNull(widget.getUpdateTime()));
+        // Same Jackson configuration as JSON, dates are written as ISO strings instead of arrays
+        assertTrue(smileMapper.readTree(findResponse.getResponse().getContentAsByteArray()).get(0).get("updateTime").isTextual());
+    }
+
+    private long countWidgets() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get(WIDGET_API_PATH + "/aggregates"))
+                .andExpect(status().isOk())
+                .andReturn();
+        return objectMapper.readTree(mvcResult.getResponse().getContentAsString()).get("count").asLong();
+    }
+
     private Widget saveWidget(WidgetRequest request) throws Exception {
         MvcResult mvcResult = mockMvc.perform(post(WIDGET_API_PATH)
                 .contentType(MediaType.APPLICATION_JSON)
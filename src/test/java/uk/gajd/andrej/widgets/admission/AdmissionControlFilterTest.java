@@ -0,0 +1,110 @@
+package uk.gajd.andrej.widgets.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlFilterTest {
+    // One request of each lane runs at once, one more waits for 50ms
+    private final AdmissionControl admissionControl = new AdmissionControl(1, 1, 50, 1, 1, 50, 2);
+    private final AdmissionControlFilter admissionControlFilter = new AdmissionControlFilter(admissionControl);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch blockedRequestStarted = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private final AtomicInteger chainCalls = new AtomicInteger();
+    private final FilterChain chain = (request, response) -> chainCalls.incrementAndGet();
+    private final FilterChain blockingChain = (request, response) -> {
+        blockedRequestStarted.countDown();
+        try {
+            unblock.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void doFilter_whenLaneHasRoom_thenAdmitAndRelease() throws Exception {
+        MockHttpServletResponse first = perform(request("POST", "/v1/widgets"), chain);
+        MockHttpServletResponse second = perform(request("POST", "/v1/widgets"), chain);
+
+        assertEquals(HttpStatus.OK.value(), first.getStatus());
+        assertEquals(HttpStatus.OK.value(), second.getStatus());
+        assertEquals(2, chainCalls.get());
+        assertEquals(2, admissionControl.getStatus().getWrite().getAdmitted());
+        assertEquals(0, admissionControl.getStatus().getWrite().getRunning());
+    }
+
+    @Test
+    void doFilter_whenQueueTimeRunsOut_thenRejectWithServiceUnavailable() throws Exception {
+        blockWriteLane();
+
+        MockHttpServletResponse response = perform(request("DELETE", "/v1/widgets/1"), chain);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals("2", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(0, chainCalls.get());
+        assertEquals(1, admissionControl.getStatus().getWrite().getRejectedQueueTimeout());
+    }
+
+    @Test
+    void doFilter_whenQueueIsFull_thenRejectWithTooManyRequests() throws Exception {
+        blockWriteLane();
+        Future<MockHttpServletResponse> queuedRequest = executor.submit(() -> perform(request("PUT", "/v1/widgets/1"), chain));
+        while (admissionControl.getStatus().getWrite().getQueued() == 0 && !queuedRequest.isDone()) {
+            Thread.onSpinWait();
+        }
+
+        MockHttpServletResponse response = perform(request("PATCH", "/v1/widgets/1"), chain);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("2", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, admissionControl.getStatus().getWrite().getRejectedQueueFull());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), queuedRequest.get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void doFilter_whenWriteLaneIsBusy_thenStillAdmitReads() throws Exception {
+        blockWriteLane();
+
+        MockHttpServletResponse list = perform(request("GET", "/v1/widgets"), chain);
+        MockHttpServletResponse batchQuery = perform(request("POST", "/v1/widgets/batch-query"), chain);
+
+        assertEquals(HttpStatus.OK.value(), list.getStatus());
+        assertEquals(HttpStatus.OK.value(), batchQuery.getStatus());
+        assertEquals(2, admissionControl.getStatus().getRead().getAdmitted());
+    }
+
+    private void blockWriteLane() throws InterruptedException {
+        executor.submit(() -> perform(request("POST", "/v1/widgets"), blockingChain));
+        assertTrue(blockedRequestStarted.await(5, TimeUnit.SECONDS));
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request, FilterChain filterChain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        admissionControlFilter.doFilter(request, response, filterChain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri) {
+        return new MockHttpServletRequest(method, uri);
+    }
+}
@@ -0,0 +1,59 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.InMemoryRepository;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares coordinate queries of the in-memory repository with the query planner, which may scan the widgets
+ * in z order, against always reading the grid, from a viewport to the whole board.
+ * The viewport should take the same time either way, as the planner keeps it on the grid.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class CoordinatePlannerBenchmark {
+    private static final int WIDGET_COUNT = 200_000;
+    private static final int BOARD_WIDTH = 50_000;
+    private static final int LIMIT = 10;
+
+    @Param({"true", "false"})
+    private boolean plannerEnabled;
+
+    @Param({"1600", "12500", "50000"})
+    private int queryWidth;
+
+    private InMemoryRepository repository;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, Long.MAX_VALUE, plannerEnabled);
+        for (int i = 0; i < WIDGET_COUNT; i++) {
+            repository.save(Widget.builder()
+                    .xIndex(random.nextInt(BOARD_WIDTH)).yIndex(random.nextInt(BOARD_WIDTH))
+                    .width(1 + random.nextInt(200)).height(1 + random.nextInt(200))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<Widget> findIntersecting() {
+        int x = random.nextInt(BOARD_WIDTH - queryWidth + 1);
+        int y = random.nextInt(BOARD_WIDTH - queryWidth + 1);
+        return repository.findWithCoordinates(
+                RectangleCoordinates.builder().x0(x).y0(y).x1(x + queryWidth).y1(y + queryWidth).build(),
+                QueryMode.INTERSECTS, LIMIT);
+    }
+}
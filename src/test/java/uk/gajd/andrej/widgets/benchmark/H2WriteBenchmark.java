@@ -0,0 +1,72 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository;
+import uk.gajd.andrej.widgets.repository.impl.H2WriteCoalescer;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of concurrent saves on the H2 repository, each in its own transaction
+ * or committed together by the {@link H2WriteCoalescer}.
+ * The saves put the widgets on top, so the table grows without long runs of widgets to shift.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class H2WriteBenchmark {
+    @Param({"false", "true"})
+    private boolean coalescing;
+
+    private HikariDataSource dataSource;
+    private H2WriteCoalescer writeCoalescer;
+    private H2WidgetRepository repository;
+
+    @Setup
+    public void setUp() {
+        // Without the Spring Boot logging configuration the JDBC & transaction debug logs would be measured
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.WARN);
+        // Pooled like the application, opening a connection per transaction would dominate
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID());
+        dataSource.setMaximumPoolSize(8);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        writeCoalescer = new H2WriteCoalescer(jdbcTemplate, transactionTemplate, coalescing, 0, 256, 30_000);
+        writeCoalescer.start();
+        repository = new H2WidgetRepository(jdbcTemplate, transactionManager, writeCoalescer, 256);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        writeCoalescer.stop();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Widget save() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return repository.save(Widget.builder().xIndex(random.nextInt(1_000)).yIndex(random.nextInt(1_000))
+                .width(10).height(10).build());
+    }
+}
@@ -0,0 +1,58 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.InMemoryRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the in-memory hit test, the top-most widget under a random point, against a 1600x900 viewport query
+ * by grid cell size, on a board of a million widgets up to 200 wide & tall spread over 100k x 100k.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class HitTestBenchmark {
+    private static final int WIDGET_COUNT = 1_000_000;
+    private static final int BOARD_WIDTH = 100_000;
+
+    @Param({"128", "256", "512"})
+    private int gridCellSize;
+
+    private InMemoryRepository repository;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryRepository(gridCellSize, InMemoryRepository.DEFAULT_PARALLEL_THRESHOLD, false);
+        for (int i = 0; i < WIDGET_COUNT; i++) {
+            repository.save(Widget.builder()
+                    .xIndex(random.nextInt(BOARD_WIDTH)).yIndex(random.nextInt(BOARD_WIDTH))
+                    .width(1 + random.nextInt(200)).height(1 + random.nextInt(200))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public Optional<Widget> findTopAt() {
+        return repository.findTopAt(random.nextInt(BOARD_WIDTH), random.nextInt(BOARD_WIDTH));
+    }
+
+    @Benchmark
+    public List<Widget> findIntersecting() {
+        int x = random.nextInt(BOARD_WIDTH);
+        int y = random.nextInt(BOARD_WIDTH);
+        return repository.findWithCoordinates(RectangleCoordinates.builder().x0(x).y0(y).x1(x + 1600).y1(y + 900).build(),
+                QueryMode.INTERSECTS, 500);
+    }
+}
@@ -0,0 +1,91 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.event.Operation;
+import uk.gajd.andrej.widgets.event.OperationEventLog;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of request threads logging every operation synchronously to a file,
+ * like the service used to, with recording them through the {@link OperationEventLog}.
+ * Both write to the same file appender, the event log from its flusher thread.
+ * Reads beyond the buffer are dropped, while writes beyond it are written by the benchmark threads themselves.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class OperationLogBenchmark {
+    private Path logFile;
+    private FileAppender<ILoggingEvent> appender;
+    private Logger synchronousLogger;
+    private OperationEventLog operationEventLog;
+
+    @Setup
+    public void setUp() throws IOException {
+        logFile = Files.createTempFile("operation-log-benchmark", ".log");
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%d %-5level [%thread] %logger - %msg%n");
+        encoder.start();
+        appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setFile(logFile.toString());
+        appender.setEncoder(encoder);
+        appender.start();
+
+        synchronousLogger = context.getLogger("synchronous-operation-log");
+        Logger eventLogger = context.getLogger(OperationEventLog.class);
+        for (Logger logger : new Logger[]{synchronousLogger, eventLogger}) {
+            logger.setLevel(Level.INFO);
+            logger.setAdditive(false);
+            logger.addAppender(appender);
+        }
+
+        operationEventLog = new OperationEventLog(8192, 100, 256, 50);
+        operationEventLog.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        operationEventLog.stop();
+        appender.stop();
+        Files.deleteIfExists(logFile);
+    }
+
+    @Benchmark
+    public void synchronousLogging() {
+        long widgetId = ThreadLocalRandom.current().nextLong(1_000);
+        synchronousLogger.info("Find widget by id: {}", widgetId);
+    }
+
+    @Benchmark
+    public void operationEventLog() {
+        long widgetId = ThreadLocalRandom.current().nextLong(1_000);
+        operationEventLog.record(Operation.FIND_BY_ID, widgetId);
+    }
+
+    @Benchmark
+    public void operationEventLogWrites() {
+        long widgetId = ThreadLocalRandom.current().nextLong(1_000);
+        operationEventLog.record(Operation.UPDATE, widgetId);
+    }
+}
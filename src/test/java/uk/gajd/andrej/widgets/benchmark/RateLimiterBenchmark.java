@@ -0,0 +1,45 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.ratelimit.ClientRateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures what the {@link ClientRateLimiter} adds to a request, from threads charging random clients:
+ * clients already tracked, and a stream of mostly new clients, ten times the bound of the limiter,
+ * which keeps it evicting.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private static final int MAX_CLIENTS = 100_000;
+    private static final int KNOWN_CLIENTS = 10_000;
+
+    private ClientRateLimiter rateLimiter;
+    private String[] clients;
+
+    @Setup
+    public void setUp() {
+        rateLimiter = new ClientRateLimiter(1_000, 2_000, MAX_CLIENTS);
+        clients = IntStream.range(0, MAX_CLIENTS * 10).mapToObj(i -> "ip:10." + i).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public long knownClients() {
+        return rateLimiter.tryAcquire(clients[ThreadLocalRandom.current().nextInt(KNOWN_CLIENTS)], 1);
+    }
+
+    @Benchmark
+    public long evictingClients() {
+        return rateLimiter.tryAcquire(clients[ThreadLocalRandom.current().nextInt(clients.length)], 51);
+    }
+}
@@ -0,0 +1,113 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository;
+import uk.gajd.andrej.widgets.repository.impl.H2WriteCoalescer;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares reading widgets from H2 with the previous row mapping, a new BeanPropertyRowMapper per query
+ * or columns looked up by name, against the repository mapping columns by index.
+ * The list benchmarks read a page of 1000 widgets and report the time per row.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+    private static final int PAGE_SIZE = 1000;
+    private static final String QUERY_SELECT_BY_ID = "select * from widget where id=?";
+    private static final String QUERY_SELECT_BY_LIMIT = "select * from widget order by zIndex limit ?";
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private H2WriteCoalescer writeCoalescer;
+    private H2WidgetRepository repository;
+    private long widgetId;
+
+    @Setup
+    public void setUp() {
+        // Without the Spring Boot logging configuration the JDBC debug logs would be measured
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger(Logger.ROOT_LOGGER_NAME).setLevel(Level.WARN);
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";QUERY_CACHE_SIZE=64");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        writeCoalescer = new H2WriteCoalescer(jdbcTemplate, transactionTemplate, false, 0, 256, 30_000);
+        writeCoalescer.start();
+        repository = new H2WidgetRepository(jdbcTemplate, transactionManager, writeCoalescer, 256);
+
+        IntStream.range(0, PAGE_SIZE).forEach(i -> repository.save(Widget.builder()
+                .xIndex(i).yIndex(i).width(10).height(10).build()));
+        widgetId = repository.findWithLimit(1).get(0).getId();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        writeCoalescer.stop();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Widget findByIdBeanPropertyRowMapper() {
+        return jdbcTemplate.queryForObject(QUERY_SELECT_BY_ID, new BeanPropertyRowMapper<>(Widget.class), widgetId);
+    }
+
+    @Benchmark
+    public Widget findById() {
+        return repository.findById(widgetId);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<Widget> findWithLimitBeanPropertyRowMapper() {
+        return jdbcTemplate.query(QUERY_SELECT_BY_LIMIT, new BeanPropertyRowMapper<>(Widget.class), PAGE_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<Widget> findWithLimitColumnNames() {
+        return jdbcTemplate.query(QUERY_SELECT_BY_LIMIT, RowMappingBenchmark::mapRowByColumnNames, PAGE_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<Widget> findWithLimit() {
+        return repository.findWithLimit(PAGE_SIZE);
+    }
+
+    private static Widget mapRowByColumnNames(ResultSet resultSet, int rowNum) throws SQLException {
+        return Widget.builder()
+                .id(resultSet.getLong("id"))
+                .xIndex(resultSet.getInt("xIndex"))
+                .yIndex(resultSet.getInt("yIndex"))
+                .zIndex(resultSet.getInt("zIndex"))
+                .width(resultSet.getInt("width"))
+                .height(resultSet.getInt("height"))
+                .updateTime(resultSet.getTimestamp("updateTime").toLocalDateTime())
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.InMemoryRepository;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the serial and the parallel execution of a wide coordinate query, a 20k x 20k rectangle of a board
+ * of a million widgets up to 200 wide & tall spread over 100k x 100k, which reads about 50k candidates
+ * for the top 500 by zIndex.
+ * A parallel threshold of 0 runs every query in parallel, the max value none of them.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class WideQueryBenchmark {
+    private static final int WIDGET_COUNT = 1_000_000;
+    private static final int BOARD_WIDTH = 100_000;
+    private static final int QUERY_WIDTH = 20_000;
+
+    @Param({"9223372036854775807", "0"})
+    private long parallelThreshold;
+
+    private InMemoryRepository repository;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup
+    public void setUp() {
+        repository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, parallelThreshold, false);
+        for (int i = 0; i < WIDGET_COUNT; i++) {
+            repository.save(Widget.builder()
+                    .xIndex(random.nextInt(BOARD_WIDTH)).yIndex(random.nextInt(BOARD_WIDTH))
+                    .width(1 + random.nextInt(200)).height(1 + random.nextInt(200))
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<Widget> findIntersecting() {
+        int x = random.nextInt(BOARD_WIDTH - QUERY_WIDTH);
+        int y = random.nextInt(BOARD_WIDTH - QUERY_WIDTH);
+        return repository.findWithCoordinates(
+                RectangleCoordinates.builder().x0(x).y0(y).x1(x + QUERY_WIDTH).y1(y + QUERY_WIDTH).build(),
+                QueryMode.INTERSECTS, 500);
+    }
+}
@@ -0,0 +1,57 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.serialization.WidgetJsonSerializer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares serializing a page of 500 widgets with the bean serializer against {@link WidgetJsonSerializer}.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WidgetSerializationBenchmark {
+    private static final int PAGE_SIZE = 500;
+
+    @Param({"beanSerializer", "widgetJsonSerializer"})
+    private String serializer;
+
+    private ObjectMapper objectMapper;
+    private List<Widget> widgets;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if ("widgetJsonSerializer".equals(serializer)) {
+            builder.modulesToInstall(new SimpleModule().addSerializer(new WidgetJsonSerializer()));
+        }
+        objectMapper = builder.build();
+
+        LocalDateTime now = LocalDateTime.now();
+        widgets = IntStream.range(0, PAGE_SIZE)
+                .mapToObj(i -> Widget.builder().id((long) i).xIndex(i * 10).yIndex(i * 20).zIndex(i)
+                        .width(100).height(50).updateTime(now.plusNanos(i * 1_000L)).build())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(widgets);
+    }
+}
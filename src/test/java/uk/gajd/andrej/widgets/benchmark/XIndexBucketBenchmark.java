@@ -0,0 +1,72 @@
+package uk.gajd.andrej.widgets.benchmark;
+
+import uk.gajd.andrej.widgets.repository.index.ConcurrentLongSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Compares xIndex bucket implementations on a board with 10k widgets in a single column.
+ * Run with the gc profiler (as the benchmark profile does) to see the allocation per operation.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XIndexBucketBenchmark {
+    private static final int WIDGETS_PER_COLUMN = 10_000;
+
+    @Param({"copyOnWriteArrayList", "concurrentHashSet", "concurrentLongSet"})
+    private String bucketType;
+
+    private Collection<Long> boxedBucket;
+    private ConcurrentLongSet longBucket;
+    private long nextId;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        if ("concurrentLongSet".equals(bucketType)) {
+            longBucket = new ConcurrentLongSet();
+            LongStream.range(0, WIDGETS_PER_COLUMN).forEach(longBucket::add);
+        } else {
+            boxedBucket = "copyOnWriteArrayList".equals(bucketType)
+                    ? new CopyOnWriteArrayList<>()
+                    : ConcurrentHashMap.newKeySet();
+            LongStream.range(0, WIDGETS_PER_COLUMN).forEach(boxedBucket::add);
+        }
+        nextId = 0;
+    }
+
+    /**
+     * Removes & adds back one widget of the column, like an update which keeps the xIndex does.
+     */
+    @Benchmark
+    public boolean update() {
+        long id = nextId++ % WIDGETS_PER_COLUMN;
+        if (longBucket != null) {
+            longBucket.remove(id);
+            return longBucket.add(id);
+        }
+        boxedBucket.remove(id);
+        return boxedBucket.add(id);
+    }
+
+    @Benchmark
+    public long iterate() {
+        if (longBucket != null) {
+            return longBucket.stream().sum();
+        }
+        long sum = 0;
+        for (Long id : boxedBucket) {
+            sum += id;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,107 @@
+package uk.gajd.andrej.widgets.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCacheFilterTest {
+    private static final String BODY = "[{\"id\":1}]";
+
+    private final BoardVersion boardVersion = new BoardVersion();
+    private final PageCacheFilter pageCacheFilter = new PageCacheFilter(boardVersion, 10, 0);
+    private final AtomicInteger chainCalls = new AtomicInteger();
+    private final FilterChain chain = (request, response) -> {
+        chainCalls.incrementAndGet();
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(BODY);
+    };
+
+    @Test
+    void doFilter_whenSameQueryIsRepeated_thenServeCachedBody() throws Exception {
+        MockHttpServletResponse firstResponse = perform(listRequest("limit", "10"));
+        MockHttpServletResponse secondResponse = perform(listRequest("limit", "10"));
+
+        assertEquals(1, chainCalls.get());
+        assertEquals(BODY, firstResponse.getContentAsString());
+        assertEquals(BODY, secondResponse.getContentAsString());
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, secondResponse.getContentType());
+    }
+
+    @Test
+    void doFilter_whenParametersDiffer_thenCacheSeparately() throws Exception {
+        perform(listRequest("limit", "10"));
+        perform(listRequest("limit", "20"));
+
+        assertEquals(2, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenBoardVersionChanges_thenQueryAgain() throws Exception {
+        perform(listRequest("limit", "10"));
+        boardVersion.increment();
+        perform(listRequest("limit", "10"));
+        perform(listRequest("limit", "10"));
+
+        assertEquals(2, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenQueryIsExplained_thenRunItEveryTime() throws Exception {
+        perform(listRequest("explain", "true"));
+        perform(listRequest("explain", "true"));
+
+        assertEquals(2, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenGzipIsAccepted_thenServeCompressedBody() throws Exception {
+        MockHttpServletRequest request = listRequest("limit", "10");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
+        MockHttpServletResponse response = perform(request);
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(BODY, new String(gzip.readAllBytes()));
+        }
+    }
+
+    @Test
+    void doFilter_whenResponseIsNotOk_thenDontCache() throws Exception {
+        FilterChain failingChain = (request, response) -> {
+            chainCalls.incrementAndGet();
+            ((HttpServletResponse) response).setStatus(400);
+            response.getWriter().write("Limit should be between 1-500. Default is 10.");
+        };
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pageCacheFilter.doFilter(listRequest("limit", "501"), response, failingChain);
+        pageCacheFilter.doFilter(listRequest("limit", "501"), new MockHttpServletResponse(), failingChain);
+
+        assertEquals(2, chainCalls.get());
+        assertEquals(400, response.getStatus());
+        assertEquals("Limit should be between 1-500. Default is 10.", response.getContentAsString());
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        pageCacheFilter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest listRequest(String name, String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/widgets");
+        request.addParameter(name, value);
+        return request;
+    }
+}
@@ -0,0 +1,132 @@
+package uk.gajd.andrej.widgets.controller;
+
+import uk.gajd.andrej.widgets.admission.AdmissionControl;
+import uk.gajd.andrej.widgets.exception.ProfilingSessionConflictException;
+import uk.gajd.andrej.widgets.model.AdmissionLaneStatus;
+import uk.gajd.andrej.widgets.model.AdmissionStatus;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.RateLimitStatus;
+import uk.gajd.andrej.widgets.model.ProfilingStatus;
+import uk.gajd.andrej.widgets.profiling.ProfilingRecorder;
+import uk.gajd.andrej.widgets.ratelimit.ClientRateLimiter;
+import uk.gajd.andrej.widgets.service.WidgetService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = AdminController.class)
+class AdminControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private WidgetService widgetService;
+
+    @MockBean
+    private ProfilingRecorder profilingRecorder;
+
+    @MockBean
+    private AdmissionControl admissionControl;
+
+    @MockBean
+    private ClientRateLimiter rateLimiter;
+
+    @Test
+    void verifyIndexes_whenDriftExists_thenReturnReport() throws Exception {
+        IndexConsistencyReport report = IndexConsistencyReport.builder()
+                .widgetCount(2)
+                .indexSizes(Map.of("grid", 3L))
+                .driftCount(1)
+                .drift(List.of("grid cell (0, 0) references missing widget 7"))
+                .build();
+
+        //mock
+        given(widgetService.verifyIndexes()).willReturn(report);
+
+        mockMvc.perform(get("/v1/admin/indexes/consistency"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.consistent", is(false)))
+                .andExpect(jsonPath("$.driftCount", is(1)))
+                .andExpect(jsonPath("$.indexSizes.grid", is(3)))
+                .andExpect(jsonPath("$.drift[0]", is("grid cell (0, 0) references missing widget 7")));
+    }
+
+    @Test
+    void getAdmissionStatus_whenWritesWereRejected_thenReturnLaneCounters() throws Exception {
+        AdmissionStatus admissionStatus = AdmissionStatus.builder()
+                .read(AdmissionLaneStatus.builder().maxConcurrent(150).admitted(40).build())
+                .write(AdmissionLaneStatus.builder().maxConcurrent(8).admitted(10).rejectedQueueFull(3).build())
+                .build();
+
+        //mock
+        given(admissionControl.getStatus()).willReturn(admissionStatus);
+
+        mockMvc.perform(get("/v1/admin/admission"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.read.admitted", is(40)))
+                .andExpect(jsonPath("$.write.maxConcurrent", is(8)))
+                .andExpect(jsonPath("$.write.rejectedQueueFull", is(3)));
+    }
+
+    @Test
+    void getRateLimitStatus_whenClientsWereLimited_thenReturnCounters() throws Exception {
+        //mock
+        given(rateLimiter.getStatus()).willReturn(RateLimitStatus.builder().clients(2).allowed(10).rejected(4).build());
+
+        mockMvc.perform(get("/v1/admin/rate-limit"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.clients", is(2)))
+                .andExpect(jsonPath("$.rejected", is(4)));
+    }
+
+    @Test
+    void startProfiling_whenMaxDurationIsGiven_thenStartForThatLong() throws Exception {
+        ProfilingStatus status = ProfilingStatus.builder().running(true).maxDuration(Duration.ofSeconds(30)).build();
+
+        //mock
+        given(profilingRecorder.start(Duration.ofSeconds(30))).willReturn(status);
+
+        mockMvc.perform(post("/v1/admin/profiling/start").param("maxDurationSeconds", "30"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running", is(true)));
+    }
+
+    @Test
+    void startProfiling_whenAlreadyRunning_thenReturnConflict() throws Exception {
+        //mock
+        given(profilingRecorder.getDefaultMaxDuration()).willReturn(Duration.ofMinutes(5));
+        given(profilingRecorder.start(Duration.ofMinutes(5)))
+                .willThrow(new ProfilingSessionConflictException("A profiling session is already running."));
+
+        mockMvc.perform(post("/v1/admin/profiling/start"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void downloadRecording_whenSessionWasStopped_thenReturnTheRecording(@TempDir Path tempDir) throws Exception {
+        Path recording = Files.write(tempDir.resolve("recording.jfr"), new byte[]{1, 2, 3});
+
+        //mock
+        given(profilingRecorder.getRecordingFile()).willReturn(recording);
+
+        mockMvc.perform(get("/v1/admin/profiling/recording"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"widgets.jfr\""))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+    }
+}
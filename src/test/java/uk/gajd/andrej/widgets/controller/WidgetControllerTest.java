@@ -2,9 +2,18 @@ package uk.gajd.andrej.widgets.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.BatchQueryRequest;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.ViewportQuery;
 import uk.gajd.andrej.widgets.model.WidgetRequest;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
+import uk.gajd.andrej.widgets.model.QueryStage;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
+import uk.gajd.andrej.widgets.model.WidgetMoveRequest;
 import uk.gajd.andrej.widgets.service.WidgetService;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -96,6 +105,161 @@ class WidgetControllerTest {
                 .andExpect(jsonPath("$.id", is(DUMMY_WIDGET_ID.intValue())));
     }
 
+    @Test
+    void move_whenDeltaIsMissing_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(patch("/v1/widgets/{id}", DUMMY_WIDGET_ID)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"dx\": 5}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void move_whenDeltaIsValid_thenReturnMovedWidget() throws Exception {
+        WidgetMoveRequest request = WidgetMoveRequest.builder().dx(5).dy(-5).build();
+        Widget movedWidget = Widget.builder().id(DUMMY_WIDGET_ID).xIndex(5).yIndex(-5).zIndex(1).width(5).height(5).build();
+
+        //mock
+        given(widgetService.moveWidget(DUMMY_WIDGET_ID, 5, -5)).willReturn(movedWidget);
+
+        mockMvc.perform(patch("/v1/widgets/{id}", DUMMY_WIDGET_ID)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.xIndex", is(5)))
+                .andExpect(jsonPath("$.yIndex", is(-5)));
+    }
+
+    @Test
+    void bringToFront_whenIdNotFound_thenReturnNotFound() throws Exception {
+        //mock
+        given(widgetService.bringToFront(DUMMY_WIDGET_ID)).willThrow(new WidgetNotFoundException("Widget not found by id"));
+
+        mockMvc.perform(post("/v1/widgets/{id}/bring-to-front", DUMMY_WIDGET_ID))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void moveAbove_whenBothExist_thenReturnMovedWidget() throws Exception {
+        Widget movedWidget = Widget.builder().id(DUMMY_WIDGET_ID).xIndex(0).yIndex(0).zIndex(3).width(5).height(5).build();
+
+        //mock
+        given(widgetService.moveAbove(DUMMY_WIDGET_ID, DUMMY_WIDGET_ID + 1)).willReturn(movedWidget);
+
+        mockMvc.perform(post("/v1/widgets/{id}/move-above/{belowId}", DUMMY_WIDGET_ID, DUMMY_WIDGET_ID + 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.zIndex", is(3)));
+    }
+
+    @Test
+    void batchQuery_whenQueriesAreValid_thenReturnResultsPerQuery() throws Exception {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
+        List<CoordinateQuery> queries = List.of(
+                CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.CONTAINS).limit(10).build(),
+                CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.INTERSECTS).limit(DUMMY_VALID_LIMIT).build());
+        BatchQueryRequest request = BatchQueryRequest.builder().queries(List.of(
+                ViewportQuery.builder().x0(1).y0(2).x1(3).y1(4).build(),
+                ViewportQuery.builder().x0(1).y0(2).x1(3).y1(4).limit(DUMMY_VALID_LIMIT).mode("intersects").build()))
+                .build();
+
+        //mock
+        given(widgetService.findWithCoordinates(queries)).willReturn(List.of(List.of(), DUMMY_WIDGET_LIST));
+
+        mockMvc.perform(post("/v1/widgets/batch-query")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(List.of(List.of(), DUMMY_WIDGET_LIST))));
+    }
+
+    @Test
+    void batchQuery_whenAQueryIsInvalid_thenReturnBadRequest() throws Exception {
+        BatchQueryRequest missingPoint = BatchQueryRequest.builder().queries(List.of(
+                ViewportQuery.builder().x0(1).y0(2).x1(3).build())).build();
+        BatchQueryRequest invalidRectangle = BatchQueryRequest.builder().queries(List.of(
+                ViewportQuery.builder().x0(1).y0(2).x1(3).y1(4).build(),
+                ViewportQuery.builder().x0(3).y0(2).x1(1).y1(4).build())).build();
+        BatchQueryRequest noQueries = BatchQueryRequest.builder().queries(List.of()).build();
+
+        for (BatchQueryRequest request : List.of(missingPoint, invalidRectangle, noQueries)) {
+            mockMvc.perform(post("/v1/widgets/batch-query")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(request)))
+                    .andExpect(status().isBadRequest());
+        }
+        verifyNoInteractions(widgetService);
+    }
+
+    @Test
+    void hitTest_whenWidgetCoversThePoint_thenReturnIt() throws Exception {
+        //mock
+        given(widgetService.findTopAt(3, -4)).willReturn(DUMMY_WIDGET_LIST.get(0));
+
+        mockMvc.perform(get("/v1/widgets/hit-test?x=3&y=-4"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(DUMMY_WIDGET_LIST.get(0))));
+    }
+
+    @Test
+    void hitTest_whenNoWidgetCoversThePoint_thenReturnNotFound() throws Exception {
+        //mock
+        given(widgetService.findTopAt(3, 4)).willThrow(new WidgetNotFoundException("Couldn't find widget at x: 3, y: 4"));
+
+        mockMvc.perform(get("/v1/widgets/hit-test?x=3&y=4"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void findAll_whenExplainIsTrue_thenReturnQueryPlan() throws Exception {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build();
+        QueryPlan plan = QueryPlan.builder()
+                .accessPath("grid index").candidates(3L).matched(2L).returned(2)
+                .stages(List.of(new QueryStage("match", 5))).build();
+
+        //mock
+        given(widgetService.explainWithCoordinates(coordinates, QueryMode.INTERSECTS, 10)).willReturn(plan);
+
+        mockMvc.perform(get("/v1/widgets?x0=0&y0=0&x1=100&y1=100&mode=intersects&explain=true"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(plan)));
+        verify(widgetService, never()).findWithCoordinates(any(RectangleCoordinates.class), any(), any());
+    }
+
+    @Test
+    void aggregates_whenNoRectangleIsGiven_thenReturnBoardAggregates() throws Exception {
+        WidgetAggregates aggregates = WidgetAggregates.builder()
+                .count(2).totalArea(200).boundingBox(RectangleCoordinates.builder().x0(0).y0(0).x1(20).y1(10).build()).build();
+
+        //mock
+        given(widgetService.aggregate()).willReturn(aggregates);
+
+        mockMvc.perform(get("/v1/widgets/aggregates"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"count\":2,\"totalArea\":200,\"boundingBox\":{\"x0\":0,\"y0\":0,\"x1\":20,\"y1\":10}}"));
+    }
+
+    @Test
+    void aggregates_whenRectangleIsGiven_thenReturnTilesOfIt() throws Exception {
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build();
+        WidgetAggregates aggregates = WidgetAggregates.builder()
+                .count(1).totalArea(100).tileSize(64).tiles(List.of(new TileAggregate(0, 0, 1, 100))).build();
+
+        //mock
+        given(widgetService.aggregate(area, 64)).willReturn(aggregates);
+
+        mockMvc.perform(get("/v1/widgets/aggregates?x0=0&y0=0&x1=100&y1=100&tileSize=64"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(aggregates)));
+    }
+
+    @Test
+    void aggregates_whenTileSizeIsInvalid_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/widgets/aggregates?x0=0&y0=0&x1=100&y1=100&tileSize=100"))
+                .andExpect(status().isBadRequest());
+        // 65 x 65 tiles
+        mockMvc.perform(get("/v1/widgets/aggregates?x0=0&y0=0&x1=65&y1=65&tileSize=1"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void delete_whenIdNotFound_thenReturnNotFound() throws Exception {
         //mock
@@ -164,7 +328,7 @@ class WidgetControllerTest {
         RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(2).y0(2).x1(1).y1(4).build();
 
         //mock
-        given(widgetService.findWithCoordinates(coordinates, DUMMY_VALID_LIMIT)).willReturn(DUMMY_WIDGET_LIST);
+        given(widgetService.findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT)).willReturn(DUMMY_WIDGET_LIST);
 
         String path = "/v1/widgets?x0=" + coordinates.getX0() + "&y0=" + coordinates.getY0()
                 + "&x1=" + coordinates.getX1() + "&y1=" + coordinates.getY1();
@@ -177,7 +341,7 @@ class WidgetControllerTest {
         RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
 
         //mock
-        given(widgetService.findWithCoordinates(coordinates, DUMMY_VALID_LIMIT)).willReturn(DUMMY_WIDGET_LIST);
+        given(widgetService.findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT)).willReturn(DUMMY_WIDGET_LIST);
 
         String path = "/v1/widgets?x0=" + coordinates.getX0() + "&y0=" + coordinates.getY0()
                 + "&x1=" + coordinates.getX1() + "&y1=" + coordinates.getY1();
@@ -185,6 +349,28 @@ class WidgetControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(DUMMY_WIDGET_LIST)));
 
-        verify(widgetService, times(1)).findWithCoordinates(coordinates, DUMMY_VALID_LIMIT);
+        verify(widgetService, times(1)).findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT);
+    }
+
+    @Test
+    void findAll_whenModeIsIntersects_thenReturnIntersectingWidgets() throws Exception {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
+
+        //mock
+        given(widgetService.findWithCoordinates(coordinates, QueryMode.INTERSECTS, DUMMY_VALID_LIMIT)).willReturn(DUMMY_WIDGET_LIST);
+
+        mockMvc.perform(get("/v1/widgets?x0=1&y0=2&x1=3&y1=4&limit=20&mode=Intersects"))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(DUMMY_WIDGET_LIST)));
+
+        verify(widgetService).findWithCoordinates(coordinates, QueryMode.INTERSECTS, DUMMY_VALID_LIMIT);
+    }
+
+    @Test
+    void findAll_whenModeIsUnknown_thenReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/widgets?x0=1&y0=2&x1=3&y1=4&mode=overlaps"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(widgetService);
     }
 }
\ No newline at end of file
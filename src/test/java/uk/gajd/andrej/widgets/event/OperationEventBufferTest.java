@@ -0,0 +1,82 @@
+package uk.gajd.andrej.widgets.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationEventBufferTest {
+    @Test
+    void offer_whenBufferIsFull_thenDropElement() {
+        OperationEventBuffer<Integer> buffer = new OperationEventBuffer<>(4);
+
+        IntStream.range(0, 4).forEach(i -> assertTrue(buffer.offer(i)));
+
+        assertFalse(buffer.offer(4));
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+    }
+
+    @Test
+    void poll_whenElementsWrapAround_thenReturnThemInOrder() {
+        OperationEventBuffer<Integer> buffer = new OperationEventBuffer<>(4);
+        List<Integer> polled = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+            if (i % 2 == 1) {
+                polled.add(buffer.poll());
+                polled.add(buffer.poll());
+            }
+        }
+
+        assertNull(buffer.poll());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), polled);
+    }
+
+    @Test
+    void offer_whenManyProducersOffer_thenConsumerReceivesEveryElementOnce() throws Exception {
+        int producers = 4;
+        int elementsPerProducer = 5_000;
+        OperationEventBuffer<Integer> buffer = new OperationEventBuffer<>(256);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++) {
+            int offset = p * elementsPerProducer;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield(); // Lets the consumer run when there are fewer cores than threads
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+
+        Set<Integer> received = new TreeSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received.size() < producers * elementsPerProducer && System.nanoTime() < deadline) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                assertTrue(received.add(element));
+            } else {
+                Thread.yield();
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(producers * elementsPerProducer, received.size());
+    }
+}
@@ -0,0 +1,33 @@
+package uk.gajd.andrej.widgets.event;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationEventLogTest {
+    @Test
+    void record_whenBufferIsFullOfReads_thenDropFurtherReads() {
+        OperationEventLog operationEventLog = new OperationEventLog(4, 1, 256, 50);
+
+        for (long id = 0; id < 6; id++) {
+            operationEventLog.record(Operation.FIND_BY_ID, id);
+        }
+
+        assertEquals(2, operationEventLog.getDroppedEvents());
+        assertEquals(0, operationEventLog.getInlineWrittenEvents());
+        assertEquals(4, operationEventLog.flush());
+    }
+
+    @Test
+    void record_whenBufferIsFullOfWrites_thenWriteFurtherWritesInline() {
+        OperationEventLog operationEventLog = new OperationEventLog(4, 1, 256, 50);
+
+        for (long id = 0; id < 6; id++) {
+            operationEventLog.record(Operation.UPDATE, id);
+        }
+
+        assertEquals(0, operationEventLog.getDroppedEvents());
+        assertEquals(2, operationEventLog.getInlineWrittenEvents());
+        assertEquals(4, operationEventLog.flush());
+    }
+}
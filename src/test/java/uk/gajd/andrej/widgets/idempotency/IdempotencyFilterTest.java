@@ -0,0 +1,195 @@
+package uk.gajd.andrej.widgets.idempotency;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyFilterTest {
+    private static final String REQUEST_BODY = "{\"xIndex\":1,\"yIndex\":1,\"width\":10,\"height\":10}";
+
+    private final AtomicLong clock = new AtomicLong();
+    private final IdempotencyFilter idempotencyFilter = new IdempotencyFilter(60, 2, clock::get);
+    private final AtomicInteger chainCalls = new AtomicInteger();
+    private final FilterChain chain = (request, response) -> {
+        request.getInputStream().readAllBytes();
+        ((HttpServletResponse) response).setStatus(HttpStatus.CREATED.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"id\":" + chainCalls.incrementAndGet() + "}");
+    };
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void doFilter_whenRequestIsRetried_thenReplayTheOriginalResponse() throws Exception {
+        MockHttpServletResponse first = perform(createRequest("key-1", REQUEST_BODY), chain);
+        MockHttpServletResponse retry = perform(createRequest("key-1", REQUEST_BODY), chain);
+
+        assertEquals(1, chainCalls.get());
+        assertEquals(HttpStatus.CREATED.value(), retry.getStatus());
+        assertEquals("{\"id\":1}", first.getContentAsString());
+        assertEquals("{\"id\":1}", retry.getContentAsString());
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, retry.getContentType());
+        assertEquals("true", retry.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertNull(first.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+    }
+
+    @Test
+    void doFilter_whenKeysDiffer_thenRunEachRequest() throws Exception {
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+        MockHttpServletResponse response = perform(createRequest("key-2", REQUEST_BODY), chain);
+
+        assertEquals(2, chainCalls.get());
+        assertEquals("{\"id\":2}", response.getContentAsString());
+    }
+
+    @Test
+    void doFilter_whenKeyIsReusedWithAnotherBody_thenRejectWithUnprocessableEntity() throws Exception {
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+        MockHttpServletResponse response = perform(createRequest("key-1", "{\"xIndex\":2}"), chain);
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY.value(), response.getStatus());
+        assertEquals(1, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenOriginalIsStillRunning_thenRejectWithConflict() throws Exception {
+        startBlocked("key-1");
+
+        MockHttpServletResponse response = perform(createRequest("key-1", REQUEST_BODY), chain);
+        unblock.countDown();
+
+        assertEquals(HttpStatus.CONFLICT.value(), response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+    }
+
+    @Test
+    void doFilter_whenOriginalFailed_thenRunTheRetry() throws Exception {
+        perform(createRequest("key-1", REQUEST_BODY),
+                (request, response) -> ((HttpServletResponse) response).setStatus(HttpStatus.SERVICE_UNAVAILABLE.value()));
+        MockHttpServletResponse retry = perform(createRequest("key-1", REQUEST_BODY), chain);
+
+        assertEquals(HttpStatus.CREATED.value(), retry.getStatus());
+        assertEquals(1, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenResponseExpired_thenRunTheRequestAgain() throws Exception {
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+
+        assertEquals(2, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenMaxEntriesAreStored_thenDropTheOldest() throws Exception {
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+        perform(createRequest("key-2", REQUEST_BODY), chain);
+        perform(createRequest("key-3", REQUEST_BODY), chain);
+
+        perform(createRequest("key-3", REQUEST_BODY), chain);
+        assertEquals(3, chainCalls.get());
+        perform(createRequest("key-1", REQUEST_BODY), chain);
+        assertEquals(4, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenMaxEntriesAreReachedWhileOriginalRuns_thenKeepItsKey() throws Exception {
+        Future<MockHttpServletResponse> original = startBlocked("key-1");
+        perform(createRequest("key-2", REQUEST_BODY), chain);
+        perform(createRequest("key-3", REQUEST_BODY), chain); // Drops key-2, the only completed response
+
+        MockHttpServletResponse retry = perform(createRequest("key-1", REQUEST_BODY), chain);
+        assertEquals(HttpStatus.CONFLICT.value(), retry.getStatus());
+        assertEquals(2, chainCalls.get());
+
+        unblock.countDown();
+        assertEquals(HttpStatus.CREATED.value(), original.get(5, TimeUnit.SECONDS).getStatus());
+        retry = perform(createRequest("key-1", REQUEST_BODY), chain);
+        assertEquals("true", retry.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals(3, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenEveryEntryIsInProgress_thenRejectNewKeys() throws Exception {
+        startBlocked("key-1");
+        startBlocked("key-2");
+
+        MockHttpServletResponse response = perform(createRequest("key-3", REQUEST_BODY), chain);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+        assertEquals(0, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenKeyIsTooLong_thenRejectWithBadRequest() throws Exception {
+        MockHttpServletResponse response = perform(createRequest("k".repeat(IdempotencyFilter.MAX_KEY_LENGTH + 1), REQUEST_BODY), chain);
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), response.getStatus());
+        assertEquals(0, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenKeyIsMissing_thenRunEveryRequest() throws Exception {
+        perform(createRequest(null, REQUEST_BODY), chain);
+        perform(createRequest(null, REQUEST_BODY), chain);
+
+        assertEquals(2, chainCalls.get());
+    }
+
+    /**
+     * @return the response of a request which runs until {@link #unblock} is counted down
+     */
+    private Future<MockHttpServletResponse> startBlocked(String idempotencyKey) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<MockHttpServletResponse> response = executor.submit(() -> perform(createRequest(idempotencyKey, REQUEST_BODY), (request, servletResponse) -> {
+            started.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            chain.doFilter(request, servletResponse);
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return response;
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request, FilterChain filterChain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        idempotencyFilter.doFilter(request, response, filterChain);
+        return response;
+    }
+
+    private static MockHttpServletRequest createRequest(String idempotencyKey, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/widgets");
+        if (idempotencyKey != null) {
+            request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(body.getBytes());
+        return request;
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+/**
+ * The kinds of requests a board client makes, each recorded in its own latency histogram.
+ *
+ */
+public enum BoardWorkload {
+    PAN("GET /v1/widgets?mode=intersects&x0&y0&x1&y1", "Widgets visible in a viewport moved a bit from the previous one", 200),
+    SEND_TO_BACK("POST /v1/widgets/{id}/send-to-back", "A widget moved below all others", 500),
+    BULK_IMPORT("POST /v1/widgets", "A burst of widgets created one after the other, each request recorded", 200),
+    DELETE("DELETE /v1/widgets/{id}", "A widget deleted", 500);
+
+    private final String endpoint;
+    private final String description;
+    private final long defaultP99SloMillis; // Rare workloads get more room, their p99 is one of their slowest few requests
+
+    BoardWorkload(String endpoint, String description, long defaultP99SloMillis) {
+        this.endpoint = endpoint;
+        this.description = description;
+        this.defaultP99SloMillis = defaultP99SloMillis;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getDefaultP99SloMillis() {
+        return defaultP99SloMillis;
+    }
+
+    /**
+     * @return the name used in the mix and SLO settings, e.g. send-to-back
+     */
+    public String getKey() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
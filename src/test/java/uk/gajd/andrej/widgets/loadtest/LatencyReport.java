@@ -0,0 +1,86 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the outcome of a load test run: the latency percentiles of every workload, checked against their p99 SLO.
+ *
+ */
+public class LatencyReport {
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final LoadTestSettings settings;
+    private final Map<BoardWorkload, Histogram> latencies;
+    private final Map<BoardWorkload, Long> errors;
+
+    LatencyReport(LoadTestSettings settings, Map<BoardWorkload, Histogram> latencies, Map<BoardWorkload, Long> errors) {
+        this.settings = settings;
+        this.latencies = latencies;
+        this.errors = errors;
+    }
+
+    public Histogram getLatencies(BoardWorkload workload) {
+        return latencies.get(workload);
+    }
+
+    /**
+     * @return the workloads which failed requests or missed their SLO, with the reason
+     */
+    public List<String> getViolations() {
+        List<String> violations = new ArrayList<>();
+        latencies.forEach((workload, histogram) -> {
+            if (histogram.getTotalCount() == 0) {
+                return;
+            }
+            double p99Millis = histogram.getValueAtPercentile(99) / MICROS_PER_MILLI;
+            long sloMillis = settings.getP99SloMillis().get(workload);
+            if (p99Millis > sloMillis) {
+                violations.add(String.format("%s p99 of %.2f ms exceeds the SLO of %d ms", workload.getKey(), p99Millis, sloMillis));
+            }
+            if (errors.get(workload) > 0) {
+                violations.add(String.format("%s had %d failed requests", workload.getKey(), errors.get(workload)));
+            }
+        });
+        return violations;
+    }
+
+    /**
+     * @return a table of the request counts and latency percentiles, in milliseconds, per workload
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(String.format("%-18s %-30s %8s %6s %8s %8s %8s %8s %8s %6s%n",
+                "workload", "endpoint", "requests", "errors", "p50", "p90", "p99", "p99.9", "max", "slo"));
+        latencies.forEach((workload, histogram) -> summary.append(String.format("%-18s %-30s %8d %6d %8.2f %8.2f %8.2f %8.2f %8.2f %6d%n",
+                workload.getKey(), workload.getEndpoint(), histogram.getTotalCount(), errors.get(workload),
+                histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(90) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+                histogram.getMaxValue() / MICROS_PER_MILLI,
+                settings.getP99SloMillis().get(workload))));
+        return summary.toString();
+    }
+
+    /**
+     * Writes the summary and the full percentile distribution of every workload, in milliseconds,
+     * as .hgrm files which the HdrHistogram plotter can chart side by side for several runs.
+     */
+    public void writeTo(Path directory, String runName) throws IOException {
+        Files.createDirectories(directory);
+        Files.writeString(directory.resolve(runName + "-summary.txt"), summary());
+        for (Map.Entry<BoardWorkload, Histogram> workload : latencies.entrySet()) {
+            Path file = directory.resolve(runName + "-" + workload.getKey().getKey() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+                workload.getValue().outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+}
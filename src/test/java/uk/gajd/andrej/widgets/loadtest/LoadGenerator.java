@@ -0,0 +1,258 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This drives the widget API over HTTP with a number of board clients, each picking its next request from the
+ * weighted mix and waiting for the response before sending the next one. Latencies are recorded per workload
+ * in microseconds.
+ *
+ * Clients are closed-loop, so a stalled server also holds back the requests which would have queued up
+ * behind the stall, and the percentiles are a lower bound of what an open arrival rate would see.
+ *
+ */
+public class LoadGenerator {
+    private static final String WIDGET_API_PATH = "/v1/widgets";
+    private static final int MAX_LIMIT = 500;
+    private static final int MAX_WIDGET_SIDE = 300;
+
+    private final LoadTestSettings settings;
+    private final URI baseUri;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final LiveWidgets liveWidgets = new LiveWidgets();
+    private final Map<BoardWorkload, Histogram> latencies = new EnumMap<>(BoardWorkload.class);
+    private final Map<BoardWorkload, AtomicLong> errors = new EnumMap<>(BoardWorkload.class);
+    private final int totalWeight;
+
+    public LoadGenerator(LoadTestSettings settings, URI baseUri, ObjectMapper objectMapper) {
+        this.settings = settings;
+        this.baseUri = baseUri;
+        this.objectMapper = objectMapper;
+        for (BoardWorkload workload : BoardWorkload.values()) {
+            latencies.put(workload, new ConcurrentHistogram(3));
+            errors.put(workload, new AtomicLong());
+        }
+        this.totalWeight = settings.getMix().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Creates the widgets of the board, without recording their latencies.
+     */
+    public void seedBoard() {
+        for (int i = 0; i < settings.getBoardSize(); i++) {
+            liveWidgets.add(create(randomWidget()));
+        }
+    }
+
+    /**
+     * Runs the clients through the warmup, whose latencies are discarded, then for the duration of the run.
+     */
+    public LatencyReport run() throws InterruptedException {
+        runClients(settings.getWarmup());
+        latencies.values().forEach(Histogram::reset);
+        errors.values().forEach(count -> count.set(0));
+        runClients(settings.getDuration());
+
+        Map<BoardWorkload, Long> errorCounts = new EnumMap<>(BoardWorkload.class);
+        errors.forEach((workload, count) -> errorCounts.put(workload, count.get()));
+        return new LatencyReport(settings, latencies, errorCounts);
+    }
+
+    private void runClients(Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        ExecutorService executor = Executors.newFixedThreadPool(settings.getClients());
+        try {
+            List<Future<?>> clients = new ArrayList<>();
+            for (int i = 0; i < settings.getClients(); i++) {
+                clients.add(executor.submit(() -> new BoardClient().runUntil(deadline)));
+            }
+            for (Future<?> client : clients) {
+                client.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A board client failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private BoardWorkload nextWorkload() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<BoardWorkload, Integer> weight : settings.getMix().entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Mix weights changed during the run");
+    }
+
+    private Widget create(WidgetRequest request) {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(baseUri.resolve(WIDGET_API_PATH))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(toJson(request)))
+                .build());
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Creating a widget failed with " + response.statusCode() + ": " + response.body());
+        }
+        try {
+            return objectMapper.readValue(response.body(), Widget.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private WidgetRequest randomWidget() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return WidgetRequest.builder()
+                .xIndex(random.nextInt(settings.getBoardWidth()))
+                .yIndex(random.nextInt(settings.getBoardWidth()))
+                .width(1 + random.nextInt(MAX_WIDGET_SIDE))
+                .height(1 + random.nextInt(MAX_WIDGET_SIDE))
+                .build();
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpResponse<String> send(HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a response", e);
+        }
+    }
+
+    /**
+     * One user of the board, with its own viewport.
+     */
+    private class BoardClient {
+        private int viewportX = ThreadLocalRandom.current().nextInt(settings.getBoardWidth());
+        private int viewportY = ThreadLocalRandom.current().nextInt(settings.getBoardWidth());
+
+        void runUntil(long deadline) {
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                switch (nextWorkload()) {
+                    case PAN:
+                        pan();
+                        break;
+                    case SEND_TO_BACK:
+                        sendToBack();
+                        break;
+                    case BULK_IMPORT:
+                        bulkImport();
+                        break;
+                    case DELETE:
+                        delete();
+                        break;
+                }
+            }
+        }
+
+        private void pan() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            viewportX = Math.floorMod(viewportX + random.nextInt(-settings.getPanStep(), settings.getPanStep() + 1), settings.getBoardWidth());
+            viewportY = Math.floorMod(viewportY + random.nextInt(-settings.getPanStep(), settings.getPanStep() + 1), settings.getBoardWidth());
+            URI uri = baseUri.resolve(String.format("%s?limit=%d&mode=intersects&x0=%d&y0=%d&x1=%d&y1=%d", WIDGET_API_PATH, MAX_LIMIT,
+                    viewportX, viewportY, viewportX + settings.getViewportWidth(), viewportY + settings.getViewportHeight()));
+            timed(BoardWorkload.PAN, HttpRequest.newBuilder(uri).GET().build(), 200);
+        }
+
+        private void sendToBack() {
+            Widget widget = liveWidgets.take();
+            if (widget == null) {
+                return;
+            }
+            timed(BoardWorkload.SEND_TO_BACK, HttpRequest.newBuilder(URI.create(widgetUri(widget) + "/send-to-back"))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build(), 200);
+            liveWidgets.add(widget);
+        }
+
+        private void bulkImport() {
+            for (int i = 0; i < settings.getImportSize(); i++) {
+                long start = System.nanoTime();
+                Widget widget = create(randomWidget());
+                latencies.get(BoardWorkload.BULK_IMPORT).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                liveWidgets.add(widget);
+            }
+        }
+
+        private void delete() {
+            Widget widget = liveWidgets.take();
+            if (widget != null) {
+                timed(BoardWorkload.DELETE, HttpRequest.newBuilder(widgetUri(widget)).DELETE().build(), 200);
+            }
+        }
+
+        private URI widgetUri(Widget widget) {
+            return baseUri.resolve(WIDGET_API_PATH + "/" + widget.getId());
+        }
+
+        private void timed(BoardWorkload workload, HttpRequest request, int expectedStatus) {
+            long start = System.nanoTime();
+            HttpResponse<String> response = send(request);
+            latencies.get(workload).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (response.statusCode() != expectedStatus) {
+                errors.get(workload).incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The widgets on the board. A client takes the widget it reorders or deletes,
+     * so no other client touches it meanwhile.
+     */
+    private static class LiveWidgets {
+        private final List<Widget> widgets = new ArrayList<>();
+
+        synchronized void add(Widget widget) {
+            widgets.add(widget);
+        }
+
+        synchronized Widget take() {
+            if (widgets.isEmpty()) {
+                return null;
+            }
+            int index = ThreadLocalRandom.current().nextInt(widgets.size());
+            Widget last = widgets.remove(widgets.size() - 1);
+            return index == widgets.size() ? last : widgets.set(index, last);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * This is the shape of a load test run, read from the loadtest.* system properties, e.g.
+ * -Dloadtest.mix=pan=80,send-to-back=5,bulk-import=10,delete=5 -Dloadtest.slo.p99-millis.pan=20
+ *
+ */
+@Getter
+@Builder
+public class LoadTestSettings {
+    private static final String PREFIX = "loadtest.";
+    private static final String DEFAULT_MIX = "pan=70,send-to-back=10,bulk-import=10,delete=10";
+
+    private final int clients;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int boardSize;     // Widgets created before the run
+    private final int boardWidth;    // Widgets are spread over a square board of this side
+    private final int viewportWidth;
+    private final int viewportHeight;
+    private final int panStep;       // How far a viewport moves at most on each axis between two pans
+    private final int importSize;    // Widgets created by one bulk import
+    private final Map<BoardWorkload, Integer> mix;
+    private final Map<BoardWorkload, Long> p99SloMillis;
+
+    public static LoadTestSettings fromSystemProperties() {
+        Long commonSlo = Long.getLong(PREFIX + "slo.p99-millis");
+        Map<BoardWorkload, Long> p99SloMillis = new EnumMap<>(BoardWorkload.class);
+        for (BoardWorkload workload : BoardWorkload.values()) {
+            long defaultSlo = commonSlo != null ? commonSlo : workload.getDefaultP99SloMillis();
+            p99SloMillis.put(workload, Long.getLong(PREFIX + "slo.p99-millis." + workload.getKey(), defaultSlo));
+        }
+        return LoadTestSettings.builder()
+                .clients(Integer.getInteger(PREFIX + "clients", 8))
+                .warmup(Duration.ofSeconds(Long.getLong(PREFIX + "warmup-seconds", 5)))
+                .duration(Duration.ofSeconds(Long.getLong(PREFIX + "duration-seconds", 30)))
+                .boardSize(Integer.getInteger(PREFIX + "board-size", 2000))
+                .boardWidth(Integer.getInteger(PREFIX + "board-width", 10000))
+                .viewportWidth(Integer.getInteger(PREFIX + "viewport-width", 1600))
+                .viewportHeight(Integer.getInteger(PREFIX + "viewport-height", 900))
+                .panStep(Integer.getInteger(PREFIX + "pan-step", 200))
+                .importSize(Integer.getInteger(PREFIX + "import-size", 50))
+                .mix(parseMix(System.getProperty(PREFIX + "mix", DEFAULT_MIX)))
+                .p99SloMillis(p99SloMillis)
+                .build();
+    }
+
+    static Map<BoardWorkload, Integer> parseMix(String mix) {
+        Map<BoardWorkload, Integer> weights = new EnumMap<>(BoardWorkload.class);
+        for (String entry : mix.split(",")) {
+            String[] keyAndWeight = entry.trim().split("=");
+            if (keyAndWeight.length != 2) {
+                throw new IllegalArgumentException("Mix entries should look like pan=70, got: " + entry);
+            }
+            weights.put(workloadOf(keyAndWeight[0].trim()), Integer.parseInt(keyAndWeight[1].trim()));
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("Mix should have a positive weight: " + mix);
+        }
+        return weights;
+    }
+
+    private static BoardWorkload workloadOf(String key) {
+        for (BoardWorkload workload : BoardWorkload.values()) {
+            if (workload.getKey().equals(key)) {
+                return workload;
+            }
+        }
+        throw new IllegalArgumentException("Unknown workload in the mix: " + key);
+    }
+}
@@ -0,0 +1,29 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadTestSettingsTest {
+    @Test
+    void parseMix_whenWorkloadsAreWeighted_thenMapThemByKey() {
+        Map<BoardWorkload, Integer> mix = LoadTestSettings.parseMix("pan=80, send-to-back=5,bulk-import=10,delete=5");
+
+        assertEquals(80, mix.get(BoardWorkload.PAN));
+        assertEquals(5, mix.get(BoardWorkload.SEND_TO_BACK));
+        assertEquals(10, mix.get(BoardWorkload.BULK_IMPORT));
+        assertEquals(5, mix.get(BoardWorkload.DELETE));
+    }
+
+    @Test
+    void parseMix_whenWorkloadIsUnknown_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> LoadTestSettings.parseMix("pan=80,zoom=20"));
+    }
+
+    @Test
+    void parseMix_whenNoWeightIsPositive_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> LoadTestSettings.parseMix("pan=0"));
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gajd.andrej.widgets.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This runs the board workload against the application on a real port, with the backend of the active profile,
+ * e.g. mvn -Pload-test test -Dspring.profiles.active=h2. The reports are written to target/load-test,
+ * named after the profile, so the backends can be compared run by run.
+ *
+ */
+@Slf4j
+@Tag("load-test")
+// The board clients all come from this host, so they would share one rate limit
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "widgets.rate-limit.enabled=false")
+class WidgetLoadTest {
+    private static final Path REPORT_DIRECTORY = Path.of("target", "load-test");
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Environment environment;
+
+    @Test
+    void boardWorkload_whenRunForTheConfiguredDuration_thenEveryWorkloadMeetsItsSlo() throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        LoadGenerator generator = new LoadGenerator(settings, URI.create("http://localhost:" + port), objectMapper);
+        generator.seedBoard();
+
+        LatencyReport report = generator.run();
+
+        String runName = environment.getActiveProfiles().length > 0
+                ? String.join("-", environment.getActiveProfiles())
+                : "default";
+        report.writeTo(REPORT_DIRECTORY, runName);
+        log.info("Load test of the {} profile:\n{}", runName, report.summary());
+        List<String> violations = report.getViolations();
+        assertTrue(violations.isEmpty(), () -> String.join("\n", violations));
+    }
+}
@@ -0,0 +1,95 @@
+package uk.gajd.andrej.widgets.profiling;
+
+import uk.gajd.andrej.widgets.exception.ProfilingSessionConflictException;
+import uk.gajd.andrej.widgets.model.ProfilingStatus;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfilingRecorderTest {
+    private final ProfilingRecorder recorder = new ProfilingRecorder(60);
+
+    @AfterEach
+    void tearDown() {
+        recorder.close();
+    }
+
+    @Test
+    void stop_whenEventsWereEmitted_thenRecordingContainsThem() throws Exception {
+        ProfilingStatus started = recorder.start(Duration.ofSeconds(30));
+        assertTrue(started.isRunning());
+        assertEquals(Duration.ofSeconds(30), started.getMaxDuration());
+
+        ShiftEvent shift = new ShiftEvent();
+        shift.begin();
+        shift.commit(3, 7);
+        QueryEvent query = new QueryEvent("findWithCoordinates");
+        query.begin();
+        query.addCandidate();
+        query.addCandidate();
+        query.commit(1);
+
+        ProfilingStatus stopped = recorder.stop();
+
+        assertFalse(stopped.isRunning());
+        Path recording = recorder.getRecordingFile();
+        assertEquals(Files.size(recording), stopped.getRecordingSize());
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recording).stream()
+                .filter(event -> event.getEventType().getName().startsWith("uk.gajd.andrej.widgets."))
+                .collect(Collectors.toList());
+        RecordedEvent recordedShift = find(events, "uk.gajd.andrej.widgets.Shift");
+        assertEquals(3, recordedShift.getInt("fromZIndex"));
+        assertEquals(7, recordedShift.getInt("runLength"));
+        RecordedEvent recordedQuery = find(events, "uk.gajd.andrej.widgets.Query");
+        assertEquals("findWithCoordinates", recordedQuery.getString("operation"));
+        assertEquals(2, recordedQuery.getInt("candidates"));
+        assertEquals(1, recordedQuery.getInt("results"));
+    }
+
+    @Test
+    void start_whenAlreadyRunning_thenThrowProfilingSessionConflictException() {
+        recorder.start(Duration.ofSeconds(30));
+
+        assertThrows(ProfilingSessionConflictException.class, () -> recorder.start(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    void start_whenMaxDurationIsNotPositive_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> recorder.start(Duration.ZERO));
+    }
+
+    @Test
+    void stop_whenNotStarted_thenThrowProfilingSessionConflictException() {
+        assertThrows(ProfilingSessionConflictException.class, recorder::stop);
+        assertThrows(ProfilingSessionConflictException.class, recorder::getRecordingFile);
+    }
+
+    @Test
+    void stop_whenStoppedAgain_thenReplaceThePreviousRecording() {
+        recorder.start(Duration.ofSeconds(30));
+        recorder.stop();
+        Path previous = recorder.getRecordingFile();
+
+        recorder.start(Duration.ofSeconds(30));
+        recorder.stop();
+
+        assertFalse(Files.exists(previous));
+        assertTrue(Files.exists(recorder.getRecordingFile()));
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " event recorded"));
+    }
+}
@@ -0,0 +1,71 @@
+package uk.gajd.andrej.widgets.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientRateLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+    // 10 tokens per second, 20 at once
+    private final ClientRateLimiter rateLimiter = new ClientRateLimiter(10, 20, 3, clock::get);
+
+    @Test
+    void tryAcquire_whenBurstIsUsedUp_thenRejectUntilRefilled() {
+        assertEquals(0, rateLimiter.tryAcquire("ip:1", 15));
+        assertEquals(0, rateLimiter.tryAcquire("ip:1", 5));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), rateLimiter.tryAcquire("ip:1", 1));
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(0, rateLimiter.tryAcquire("ip:1", 1));
+        assertEquals(1, rateLimiter.getStatus().getRejected());
+        assertEquals(3, rateLimiter.getStatus().getAllowed());
+    }
+
+    @Test
+    void tryAcquire_whenOtherClientIsLimited_thenAllowThisOne() {
+        rateLimiter.tryAcquire("ip:1", 20);
+
+        assertNotEquals(0, rateLimiter.tryAcquire("ip:1", 1));
+        assertEquals(0, rateLimiter.tryAcquire("key:abc", 20));
+    }
+
+    @Test
+    void tryAcquire_whenCostExceedsBurst_thenChargeTheBurst() {
+        assertEquals(0, rateLimiter.tryAcquire("ip:1", 100));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), rateLimiter.tryAcquire("ip:1", 20));
+    }
+
+    @Test
+    void tryAcquire_whenMaxClientsIsExceeded_thenEvictIdleClientsFirst() {
+        rateLimiter.tryAcquire("ip:1", 20);
+        rateLimiter.tryAcquire("ip:2", 1);
+        rateLimiter.tryAcquire("ip:3", 1);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(200)); // Refills ip:2 & ip:3, not ip:1
+
+        rateLimiter.tryAcquire("ip:4", 1);
+
+        assertEquals(2, rateLimiter.getStatus().getClients());
+        assertEquals(2, rateLimiter.getStatus().getEvicted());
+        assertNotEquals(0, rateLimiter.tryAcquire("ip:1", 20));
+    }
+
+    @Test
+    void tryAcquire_whenMaxClientsIsExceededByActiveClients_thenEvictTheClientIdleLongest() {
+        rateLimiter.tryAcquire("ip:3", 20);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        rateLimiter.tryAcquire("ip:1", 20);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        rateLimiter.tryAcquire("ip:2", 20);
+
+        rateLimiter.tryAcquire("ip:4", 1);
+
+        assertEquals(3, rateLimiter.getStatus().getClients());
+        assertEquals(1, rateLimiter.getStatus().getEvicted());
+        assertNotEquals(0, rateLimiter.tryAcquire("ip:1", 20));
+        assertNotEquals(0, rateLimiter.tryAcquire("ip:2", 20));
+    }
+}
@@ -0,0 +1,82 @@
+package uk.gajd.andrej.widgets.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+    private final ClientRateLimiter rateLimiter = new ClientRateLimiter(1, 60, 100, () -> 0L);
+    private final RateLimitFilter rateLimitFilter = new RateLimitFilter(rateLimiter);
+    private final AtomicInteger chainCalls = new AtomicInteger();
+    private final FilterChain chain = (request, response) -> chainCalls.incrementAndGet();
+
+    @Test
+    void doFilter_whenClientIsOutOfTokens_thenRejectWithRetryAfter() throws Exception {
+        MockHttpServletResponse first = perform(listRequest("500"));
+        MockHttpServletResponse second = perform(listRequest("500"));
+
+        assertEquals(HttpStatus.OK.value(), first.getStatus());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), second.getStatus());
+        assertEquals("42", second.getHeader(HttpHeaders.RETRY_AFTER)); // 51 tokens missing 42 at 1 per second
+        assertEquals(1, chainCalls.get());
+    }
+
+    @Test
+    void doFilter_whenClientsHaveDifferentApiKeys_thenLimitThemSeparately() throws Exception {
+        MockHttpServletRequest first = listRequest("500");
+        first.addHeader(RateLimitFilter.API_KEY_HEADER, "first");
+        MockHttpServletRequest second = listRequest("500");
+        second.addHeader(RateLimitFilter.API_KEY_HEADER, "second");
+
+        perform(first);
+        MockHttpServletResponse response = perform(second);
+
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+        assertEquals(2, chainCalls.get());
+    }
+
+    @Test
+    void costOf_whenQueryAsksForMoreWidgets_thenCostMore() {
+        assertEquals(1, RateLimitFilter.costOf(new MockHttpServletRequest("GET", "/v1/widgets/1")));
+        assertEquals(2, RateLimitFilter.costOf(new MockHttpServletRequest("GET", "/v1/widgets")));
+        assertEquals(51, RateLimitFilter.costOf(listRequest("500")));
+        assertEquals(2, RateLimitFilter.costOf(listRequest("abc")));
+        assertEquals(RateLimitFilter.BATCH_QUERY_COST, RateLimitFilter.costOf(new MockHttpServletRequest("POST", "/v1/widgets/batch-query")));
+        assertEquals(RateLimitFilter.WRITE_COST, RateLimitFilter.costOf(new MockHttpServletRequest("POST", "/v1/widgets")));
+    }
+
+    @Test
+    void costOf_whenRequestIsHeadOrOptions_thenDontChargeAWrite() {
+        assertEquals(1, RateLimitFilter.costOf(new MockHttpServletRequest("HEAD", "/v1/widgets/1")));
+        assertEquals(2, RateLimitFilter.costOf(new MockHttpServletRequest("HEAD", "/v1/widgets")));
+        assertEquals(RateLimitFilter.AGGREGATES_COST, RateLimitFilter.costOf(new MockHttpServletRequest("HEAD", "/v1/widgets/aggregates")));
+        assertEquals(0, RateLimitFilter.costOf(new MockHttpServletRequest("OPTIONS", "/v1/widgets")));
+    }
+
+    @Test
+    void clientOf_whenApiKeyIsMissing_thenUseAddress() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/widgets");
+        request.setRemoteAddr("10.0.0.1");
+
+        assertEquals("ip:10.0.0.1", RateLimitFilter.clientOf(request));
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest listRequest(String limit) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v1/widgets");
+        request.setParameter("limit", limit);
+        return request;
+    }
+}
@@ -0,0 +1,60 @@
+package uk.gajd.andrej.widgets.repository.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockIdAllocatorTest {
+    @Test
+    void nextId_whenBlockIsUsedUp_thenReserveNextBlock() {
+        AtomicInteger reservations = new AtomicInteger();
+        long[] blockStarts = {1, 65};
+        BlockIdAllocator allocator = new BlockIdAllocator(() -> blockStarts[reservations.getAndIncrement()], 64);
+
+        List<Long> ids = IntStream.range(0, 65).mapToObj(i -> allocator.nextId()).collect(Collectors.toList());
+
+        assertEquals(1L, ids.get(0));
+        assertEquals(64L, ids.get(63));
+        assertEquals(65L, ids.get(64));
+        assertEquals(2, reservations.get());
+    }
+
+    @Test
+    void nextId_whenManyThreadsAllocate_thenEveryIdIsUnique() throws Exception {
+        AtomicLong sequence = new AtomicLong(1);
+        BlockIdAllocator allocator = new BlockIdAllocator(() -> sequence.getAndAdd(16), 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        try {
+            List<Future<?>> allocations = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                allocations.add(executor.submit(() -> IntStream.range(0, 1_000).forEach(i -> ids.add(allocator.nextId()))));
+            }
+            for (Future<?> allocation : allocations) {
+                allocation.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4_000, ids.size());
+    }
+
+    @Test
+    void constructor_whenBlockSizeIsNotPositive_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new BlockIdAllocator(() -> 1, 0));
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gajd.andrej.widgets.repository.id;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequentialIdAllocatorTest {
+    @Test
+    void nextId_whenCalled_thenReturnConsecutiveIds() {
+        SequentialIdAllocator allocator = new SequentialIdAllocator(5);
+
+        assertEquals(5, allocator.nextId());
+        assertEquals(6, allocator.nextId());
+    }
+
+    @Test
+    void restore_whenHigherIdsAreRestored_thenContinueAfterThem() {
+        SequentialIdAllocator allocator = new SequentialIdAllocator(0);
+
+        allocator.restore(41);
+        assertEquals(42, allocator.nextId());
+
+        allocator.restore(10); // Never moves back
+        assertEquals(43, allocator.nextId());
+    }
+
+    @Test
+    void nextId_whenInstancesAreSeparate_thenCountSeparately() {
+        assertEquals(0, new SequentialIdAllocator(0).nextId());
+        assertEquals(0, new SequentialIdAllocator(0).nextId());
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.repository.impl.CoordinateQueryPlanner.AccessPath;
+import uk.gajd.andrej.widgets.repository.index.CoordinateStatistics;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinateQueryPlannerTest {
+    private static final int BOARD_WIDTH = 20_000;
+
+    private final GridIndex gridIndex = new GridIndex(GridIndex.DEFAULT_CELL_SIZE);
+    private final CoordinateStatistics statistics = new CoordinateStatistics();
+
+    @BeforeEach
+    void setUp() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (long id = 0; id < 20_000; id++) {
+            Widget widget = Widget.builder().id(id)
+                    .xIndex(random.nextInt(BOARD_WIDTH)).yIndex(random.nextInt(BOARD_WIDTH))
+                    .width(1 + random.nextInt(100)).height(1 + random.nextInt(100))
+                    .build();
+            gridIndex.add(widget);
+            statistics.add(widget);
+        }
+    }
+
+    @Test
+    void plan_whenAreaIsViewport_thenReadTheGrid() {
+        CoordinateQueryPlanner planner = new CoordinateQueryPlanner(gridIndex, statistics, Long.MAX_VALUE);
+        RectangleCoordinates viewport = RectangleCoordinates.builder().x0(5000).y0(5000).x1(6600).y1(5900).build();
+
+        assertEquals(AccessPath.GRID, planner.plan(viewport, QueryMode.INTERSECTS, 10).getAccessPath());
+        assertEquals(AccessPath.GRID, planner.plan(viewport, QueryMode.CONTAINS, 500).getAccessPath());
+    }
+
+    @Test
+    void plan_whenAreaHoldsMostOfTheBoard_thenScanByZIndex() {
+        CoordinateQueryPlanner planner = new CoordinateQueryPlanner(gridIndex, statistics, Long.MAX_VALUE);
+        RectangleCoordinates board = RectangleCoordinates.builder().x0(0).y0(0).x1(BOARD_WIDTH).y1(BOARD_WIDTH).build();
+
+        CoordinateQueryPlanner.Plan plan = planner.plan(board, QueryMode.CONTAINS, 10);
+
+        assertEquals(AccessPath.Z_SCAN, plan.getAccessPath());
+        assertTrue(plan.getEstimatedCandidates() < 20, "the scan should stop after about the limit of widgets");
+    }
+
+    @Test
+    void plan_whenGridIsChosenForManyCandidates_thenRunItInParallel() {
+        CoordinateQueryPlanner planner = new CoordinateQueryPlanner(gridIndex, statistics, 100);
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(2000).y1(2000).build();
+
+        assertEquals(AccessPath.PARALLEL_GRID, planner.plan(area, QueryMode.INTERSECTS, 500).getAccessPath());
+    }
+}
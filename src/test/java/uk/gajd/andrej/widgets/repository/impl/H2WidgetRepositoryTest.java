@@ -1,88 +1,75 @@
 package uk.gajd.andrej.widgets.repository.impl;
 
 import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
 import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.mockito.stubbing.Answer;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 
-import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
-import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_DELETE_WIDGET;
-import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_SELECT_MAX_Z_INDEX;
+import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_COUNT_SHARED_Z_INDEXES;
+import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_COUNT_WIDGETS;
+import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_SELECT_SHARED_Z_INDEXES;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class H2WidgetRepositoryTest {
     @Mock
     private JdbcTemplate mockJdbcTemplate;
 
-    @InjectMocks
-    private H2WidgetRepository h2WidgetRepository;
-
-    @Test
-    void save_whenIdDoesNotExist_thenCreateAndReturnNewWidget() {
-        Widget widget = Widget.builder().xIndex(10).yIndex(20).width(30).height(40).build();
-
-        // mock
-        mockWidgetId(3L);
-        given(mockJdbcTemplate.queryForObject(QUERY_SELECT_MAX_Z_INDEX, Integer.class)).willReturn(null);
-
-        Widget createdWidget = h2WidgetRepository.save(widget);
-        assertEquals(3L, createdWidget.getId());
-    }
+    @Mock
+    private PlatformTransactionManager mockTransactionManager;
 
-    @Test
-    void save_whenZIndexConflicts_thenShiftAndReturnWidget() {
-        Widget widget = Widget.builder().xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
-        Widget existingWidget = Widget.builder().xIndex(1).yIndex(2).zIndex(5).width(3).height(4).build();
+    @Mock
+    private H2WriteCoalescer mockWriteCoalescer;
 
-        // mock
-        given(mockJdbcTemplate.queryForObject(anyString(), any(BeanPropertyRowMapper.class), anyInt())).willReturn(existingWidget, existingWidget, null);
+    private H2WidgetRepository h2WidgetRepository;
 
-        Widget createdWidget = h2WidgetRepository.save(widget);
-        assertEquals(widget.getZIndex(), createdWidget.getZIndex());
+    @BeforeEach
+    void setUp() {
+        h2WidgetRepository = new H2WidgetRepository(mockJdbcTemplate, mockTransactionManager, mockWriteCoalescer, 256);
     }
 
     @Test
-    void save_whenIdExistsButNoWidgetFound_thenThrowWidgetNotFoundException() {
-        Widget widget = Widget.builder().id(1L).xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
+    void save_whenCalled_thenSaveThroughWriteCoalescer() {
+        Widget widget = Widget.builder().xIndex(10).yIndex(20).width(30).height(40).build();
+        Widget savedWidget = Widget.builder().id(3L).xIndex(10).yIndex(20).zIndex(1).width(30).height(40).build();
 
         // mock
-        given(mockJdbcTemplate.queryForObject(anyString(), any(BeanPropertyRowMapper.class), anyInt())).willReturn(null);
-        given(mockJdbcTemplate.update(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), any(LocalDateTime.class), anyLong())).willReturn(0);
+        given(mockWriteCoalescer.save(widget)).willReturn(savedWidget);
 
-        assertThrows(WidgetNotFoundException.class, () -> h2WidgetRepository.save(widget));
+        assertEquals(savedWidget, h2WidgetRepository.save(widget));
+        verifyNoInteractions(mockJdbcTemplate);
     }
 
     @Test
-    void save_whenIdExistsAndWidgetFound_thenUpdateAndReturnUpdatedWidget() {
-        Widget widget = Widget.builder().id(1L).xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
+    void moveAbove_whenCalled_thenMoveThroughWriteCoalescer() {
+        Widget movedWidget = Widget.builder().id(3L).xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
 
         // mock
-        given(mockJdbcTemplate.queryForObject(anyString(), any(BeanPropertyRowMapper.class), anyInt())).willReturn(null);
-        given(mockJdbcTemplate.update(anyString(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), any(LocalDateTime.class), anyLong())).willReturn(1);
+        given(mockWriteCoalescer.moveAbove(3L, 4L)).willReturn(movedWidget);
 
-        Widget updatedWidget = h2WidgetRepository.save(widget);
-        assertEquals(widget.getId(), updatedWidget.getId());
-        assertNotNull(updatedWidget.getUpdateTime());
+        assertEquals(movedWidget, h2WidgetRepository.moveAbove(3L, 4L));
+        verifyNoInteractions(mockJdbcTemplate);
     }
 
     @Test
@@ -90,21 +77,18 @@ class H2WidgetRepositoryTest {
         Long widgetId = 5L;
 
         // mock
-        given(mockJdbcTemplate.update(QUERY_DELETE_WIDGET, widgetId)).willReturn(0);
+        doThrow(WidgetNotFoundException.class).when(mockWriteCoalescer).deleteById(widgetId);
 
         assertThrows(WidgetNotFoundException.class, () -> h2WidgetRepository.deleteById(widgetId));
     }
 
     @Test
-    void deleteById_whenIdExists_thenDeleteWidget() {
+    void deleteById_whenIdExists_thenDeleteThroughWriteCoalescer() {
         Long widgetId = 5L;
 
-        // mock
-        given(mockJdbcTemplate.update(QUERY_DELETE_WIDGET, widgetId)).willReturn(1);
-
         h2WidgetRepository.deleteById(widgetId);
 
-        verify(mockJdbcTemplate).update(QUERY_DELETE_WIDGET, widgetId);
+        verify(mockWriteCoalescer).deleteById(widgetId);
     }
 
     @Test
@@ -112,7 +96,7 @@ class H2WidgetRepositoryTest {
         Long widgetId = 5L;
 
         // mock
-        doThrow(EmptyResultDataAccessException.class).when(mockJdbcTemplate).queryForObject(anyString(), any(BeanPropertyRowMapper.class), anyLong());
+        doThrow(EmptyResultDataAccessException.class).when(mockJdbcTemplate).queryForObject(anyString(), any(RowMapper.class), anyLong());
 
         assertThrows(WidgetNotFoundException.class, () -> h2WidgetRepository.findById(widgetId));
     }
@@ -122,7 +106,7 @@ class H2WidgetRepositoryTest {
         Widget widget = Widget.builder().id(1L).xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
 
         // mock
-        given(mockJdbcTemplate.queryForObject(anyString(), any(BeanPropertyRowMapper.class), anyLong())).willReturn(widget);
+        given(mockJdbcTemplate.queryForObject(anyString(), any(RowMapper.class), anyLong())).willReturn(widget);
 
         assertEquals(widget, h2WidgetRepository.findById(widget.getId()));
     }
@@ -135,7 +119,7 @@ class H2WidgetRepositoryTest {
         );
 
         // mock
-        given(mockJdbcTemplate.query(anyString(), any(RowMapper.class), anyInt())).willReturn(widgets);
+        given(mockJdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class))).willReturn(widgets);
 
         assertEquals(widgets, h2WidgetRepository.findWithLimit(10));
     }
@@ -149,17 +133,52 @@ class H2WidgetRepositoryTest {
         );
 
         // mock
-        given(mockJdbcTemplate.query(anyString(), any(RowMapper.class), anyInt(), anyInt(), anyInt(), anyInt(), anyInt())).willReturn(widgets);
+        given(mockJdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class))).willReturn(widgets);
 
-        assertEquals(widgets, h2WidgetRepository.findWithCoordinates(coordinates, 10));
+        assertEquals(widgets, h2WidgetRepository.findWithCoordinates(coordinates, QueryMode.CONTAINS, 10));
     }
 
-    private void mockWidgetId(Long id) {
-        Mockito.when(mockJdbcTemplate.update(Mockito.any(PreparedStatementCreator.class),
-                Mockito.any(GeneratedKeyHolder.class))).thenAnswer((Answer) invocation -> {
-            Object[] args = invocation.getArguments();
-            ((GeneratedKeyHolder) args[1]).getKeyList().add(Map.of("", id));
-            return 1;
-        }).thenReturn(1);
+    @Test
+    void findWithCoordinates_whenQueriesAreBatched_thenRunThemInOneReadOnlyTransaction() {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
+        List<Widget> widgets = List.of(Widget.builder().id(1L).xIndex(1).yIndex(2).zIndex(5).width(1).height(1).build());
+        CoordinateQuery contains = CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.CONTAINS).limit(10).build();
+        CoordinateQuery intersects = CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.INTERSECTS).limit(10).build();
+
+        // mock
+        given(mockJdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class))).willReturn(widgets);
+
+        assertEquals(List.of(widgets, widgets), h2WidgetRepository.findWithCoordinates(List.of(contains, intersects)));
+        verify(mockTransactionManager).getTransaction(argThat(definition -> definition.isReadOnly()
+                && definition.getIsolationLevel() == TransactionDefinition.ISOLATION_REPEATABLE_READ));
+        verify(mockTransactionManager).commit(any());
+    }
+
+    @Test
+    void findTopAt_whenWidgetsAreUpToMaxSize_thenBoundTheRangeWithIt() {
+        Widget widget = Widget.builder().id(1L).xIndex(10).yIndex(20).zIndex(5).width(30).height(40).build();
+
+        // mock
+        given(mockWriteCoalescer.getMaxWidth()).willReturn(30);
+        given(mockWriteCoalescer.getMaxHeight()).willReturn(40);
+        given(mockJdbcTemplate.query(anyString(), any(RowMapper.class), any(), any(), any(), any(), any(), any()))
+                .willReturn(List.of(widget));
+
+        assertEquals(Optional.of(widget), h2WidgetRepository.findTopAt(15, 25));
+        verify(mockJdbcTemplate).query(anyString(), any(RowMapper.class), eq(-14), eq(15), eq(15), eq(-14), eq(25), eq(25));
+    }
+
+    @Test
+    void verifyIndexes_whenZIndexIsShared_thenReportDrift() {
+        // mock
+        given(mockJdbcTemplate.queryForObject(QUERY_COUNT_WIDGETS, Long.class)).willReturn(4L);
+        given(mockJdbcTemplate.queryForObject(QUERY_COUNT_SHARED_Z_INDEXES, Long.class)).willReturn(1L);
+        given(mockJdbcTemplate.query(eq(QUERY_SELECT_SHARED_Z_INDEXES), any(RowMapper.class), anyInt()))
+                .willReturn(List.of("zIndex 3 is shared by 2 widgets"));
+
+        IndexConsistencyReport report = h2WidgetRepository.verifyIndexes();
+        assertFalse(report.isConsistent());
+        assertEquals(4, report.getWidgetCount());
+        assertEquals(List.of("zIndex 3 is shared by 2 widgets"), report.getDrift());
     }
 }
\ No newline at end of file
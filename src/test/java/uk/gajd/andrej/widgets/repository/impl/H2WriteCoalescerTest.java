@@ -0,0 +1,350 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_COUNT_SHARED_Z_INDEXES;
+import static uk.gajd.andrej.widgets.repository.impl.H2WidgetRepository.QUERY_COUNT_WIDGETS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class H2WriteCoalescerTest {
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void save_whenIdDoesNotExist_thenCreateOnTopAndReturnNewWidget() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        writeCoalescer.save(widget(null, 7));
+
+        Widget createdWidget = writeCoalescer.save(widget(null, null));
+
+        assertNotNull(createdWidget.getId());
+        assertNotNull(createdWidget.getUpdateTime());
+        assertEquals(8, createdWidget.getZIndex());
+    }
+
+    @Test
+    void save_whenIdExistsAndWidgetFound_thenUpdateAndReturnUpdatedWidget() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget createdWidget = writeCoalescer.save(widget(null, 1));
+
+        Widget updatedWidget = writeCoalescer.save(widget(createdWidget.getId(), 4));
+
+        assertEquals(createdWidget.getId(), updatedWidget.getId());
+        assertNotNull(updatedWidget.getUpdateTime());
+        assertEquals(List.of(4), jdbcTemplate.queryForList("select zIndex from widget", Integer.class));
+    }
+
+    @Test
+    void save_whenIdExistsButNoWidgetFound_thenThrowWidgetNotFoundException() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+
+        assertThrows(WidgetNotFoundException.class, () -> writeCoalescer.save(widget(1L, 5)));
+    }
+
+    @Test
+    void save_whenWidgetsAreStoredBeforeStart_thenShiftThem() {
+        jdbcTemplate.update("insert into widget (id, xIndex, yIndex, zIndex, width, height, updateTime) " +
+                "values(1000, 0, 0, 3, 10, 10, current_timestamp)");
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+
+        Widget createdWidget = writeCoalescer.save(widget(null, 3));
+
+        assertEquals(List.of(createdWidget.getId(), 1000L), idsInZOrder());
+        assertEquals(List.of(3, 4), jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+    }
+
+    @Test
+    void save_whenRunToShiftEndsAtTheHighestInt_thenThrowIllegalArgumentException() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        writeCoalescer.save(widget(null, Integer.MAX_VALUE - 1));
+        writeCoalescer.save(widget(null, Integer.MAX_VALUE));
+
+        assertThrows(IllegalArgumentException.class, () -> writeCoalescer.save(widget(null, Integer.MAX_VALUE - 1)));
+        assertThrows(IllegalArgumentException.class, () -> writeCoalescer.save(widget(null, null)));
+
+        assertEquals(List.of(Integer.MAX_VALUE - 1, Integer.MAX_VALUE),
+                jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+        assertEquals(Integer.MAX_VALUE - 2, writeCoalescer.save(widget(null, Integer.MAX_VALUE - 2)).getZIndex());
+    }
+
+    @Test
+    void deleteById_whenWidgetIsDeleted_thenItsZIndexIsFree() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget deletedWidget = writeCoalescer.save(widget(null, 2));
+        Widget aboveWidget = writeCoalescer.save(widget(null, 3));
+
+        writeCoalescer.deleteById(deletedWidget.getId());
+        Widget createdWidget = writeCoalescer.save(widget(null, 2));
+
+        assertEquals(List.of(createdWidget.getId(), aboveWidget.getId()), idsInZOrder());
+        assertEquals(List.of(2, 3), jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+    }
+
+    @Test
+    void deleteById_whenIdDoesntExist_thenThrowWidgetNotFoundException() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+
+        assertThrows(WidgetNotFoundException.class, () -> writeCoalescer.deleteById(5L));
+    }
+
+    @Test
+    void commit_whenBatchSavesAtTheSameZIndex_thenShiftLikeSequentialSaves() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget first = widget(null, 1);
+        Widget second = widget(null, 2);
+        writeCoalescer.commit(pendingSaves(first, second));
+
+        Widget a = widget(null, 1);
+        Widget b = widget(null, 1);
+        Widget c = widget(null, null);
+        List<H2WriteCoalescer.PendingSave> batch = pendingSaves(a, b, c);
+        writeCoalescer.commit(batch);
+
+        batch.forEach(save -> assertTrue(save.getResult().isDone()));
+        assertEquals(1, a.getZIndex());
+        assertEquals(1, b.getZIndex());
+        assertEquals(5, c.getZIndex());
+        assertEquals(List.of(b.getId(), a.getId(), first.getId(), second.getId(), c.getId()), idsInZOrder());
+    }
+
+    @Test
+    void commit_whenUpdateMovesWidgetDown_thenShiftOnlyTheWidgetsAbove() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget first = widget(null, 1);
+        Widget second = widget(null, 2);
+        Widget third = widget(null, 3);
+        writeCoalescer.commit(pendingSaves(first, second, third));
+
+        Widget update = widget(third.getId(), 2);
+        writeCoalescer.commit(pendingSaves(update));
+
+        assertEquals(List.of(first.getId(), third.getId(), second.getId()), idsInZOrder());
+    }
+
+    @Test
+    void commit_whenUpdatedWidgetDoesntExist_thenFailOnlyThatSave() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget created = widget(null, null);
+        Widget missing = widget(100L, 1);
+        List<H2WriteCoalescer.PendingSave> batch = pendingSaves(created, missing);
+
+        writeCoalescer.commit(batch);
+
+        assertNotNull(batch.get(0).getResult().join().getId());
+        CompletionException exception = assertThrows(CompletionException.class, () -> batch.get(1).getResult().join());
+        assertTrue(exception.getCause() instanceof WidgetNotFoundException);
+        assertEquals(1L, jdbcTemplate.queryForObject(QUERY_COUNT_WIDGETS, Long.class));
+    }
+
+    @Test
+    void save_whenManyThreadsSave_thenEveryWidgetGetsItsOwnZIndex() throws Exception {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(true, 500);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Widget>> saved = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                Integer zIndex = i % 3 == 0 ? null : i % 5;
+                saved.add(executor.submit(() -> writeCoalescer.save(widget(null, zIndex))));
+            }
+            for (Future<Widget> widget : saved) {
+                assertNotNull(widget.get(10, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdown();
+            writeCoalescer.stop();
+        }
+
+        assertEquals(200L, jdbcTemplate.queryForObject(QUERY_COUNT_WIDGETS, Long.class));
+        assertEquals(0L, jdbcTemplate.queryForObject(QUERY_COUNT_SHARED_Z_INDEXES, Long.class));
+    }
+
+    @Test
+    void moveBy_whenWidgetIsMoved_thenWriteOnlyItsPosition() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget widget = writeCoalescer.save(widget(null, 2));
+
+        Widget moved = writeCoalescer.moveBy(widget.getId(), 5, -3);
+
+        assertEquals(5, moved.getXIndex());
+        assertEquals(-3, moved.getYIndex());
+        assertEquals(2, moved.getZIndex());
+        assertEquals(List.of(5, -3), jdbcTemplate.queryForObject("select xIndex, yIndex from widget",
+                (rs, rowNum) -> List.of(rs.getInt(1), rs.getInt(2))));
+    }
+
+    @Test
+    void moveBy_whenIdDoesntExist_thenThrowWidgetNotFoundException() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+
+        assertThrows(WidgetNotFoundException.class, () -> writeCoalescer.moveBy(5L, 1, 1));
+    }
+
+    @Test
+    void bringToFront_whenWidgetIsBelowOthers_thenMoveItAboveTheTopOne() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget first = writeCoalescer.save(widget(null, 1));
+        Widget second = writeCoalescer.save(widget(null, 2));
+
+        Widget moved = writeCoalescer.bringToFront(first.getId());
+
+        assertEquals(3, moved.getZIndex());
+        assertEquals(List.of(second.getId(), first.getId()), idsInZOrder());
+        assertEquals(4, writeCoalescer.save(widget(null, null)).getZIndex());
+    }
+
+    @Test
+    void bringToFront_whenTopIsTheHighestInt_thenThrowIllegalArgumentExceptionAndKeepZIndex() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        writeCoalescer.save(widget(null, Integer.MAX_VALUE));
+        Widget widget = writeCoalescer.save(widget(null, 0));
+
+        assertThrows(IllegalArgumentException.class, () -> writeCoalescer.bringToFront(widget.getId()));
+
+        assertEquals(List.of(0, Integer.MAX_VALUE),
+                jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+    }
+
+    @Test
+    void sendToBack_whenWidgetIsAboveOthers_thenMoveItBelowTheBottomOneWithoutShifting() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget first = writeCoalescer.save(widget(null, 1));
+        Widget second = writeCoalescer.save(widget(null, 2));
+        Widget third = writeCoalescer.save(widget(null, 3));
+
+        writeCoalescer.sendToBack(third.getId());
+        Widget fourth = writeCoalescer.sendToBack(writeCoalescer.save(widget(null, null)).getId());
+
+        assertEquals(List.of(fourth.getId(), third.getId(), first.getId(), second.getId()), idsInZOrder());
+        assertEquals(List.of(-1, 0, 1, 2), jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+    }
+
+    @Test
+    void moveAbove_whenWidgetIsMovedAboveAnother_thenShiftOnlyTheWidgetsAboveThatOne() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget first = writeCoalescer.save(widget(null, 1));
+        Widget second = writeCoalescer.save(widget(null, 2));
+        Widget third = writeCoalescer.save(widget(null, 3));
+        Widget fourth = writeCoalescer.save(widget(null, 4));
+
+        writeCoalescer.moveAbove(fourth.getId(), first.getId());
+
+        assertEquals(List.of(first.getId(), fourth.getId(), second.getId(), third.getId()), idsInZOrder());
+        assertEquals(List.of(1, 2, 3, 4), jdbcTemplate.queryForList("select zIndex from widget order by zIndex", Integer.class));
+    }
+
+    @Test
+    void save_whenCommittingThrowsAnError_thenFailItsSavesAndKeepCommitting() throws InterruptedException {
+        AtomicBoolean failNextTransaction = new AtomicBoolean();
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database)) {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                if (failNextTransaction.getAndSet(false)) {
+                    throw new StackOverflowError();
+                }
+                return super.execute(action);
+            }
+        };
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(true, 0);
+        failNextTransaction.set(true);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> writeCoalescer.save(widget(null, 1)));
+        Widget saved = writeCoalescer.save(widget(null, 2));
+
+        assertTrue(e.getCause() instanceof StackOverflowError);
+        assertEquals(List.of(saved.getId()), idsInZOrder());
+        writeCoalescer.stop();
+    }
+
+    @Test
+    void save_whenNotCommittedWithinTimeout_thenThrowIllegalStateException() {
+        H2WriteCoalescer writeCoalescer = new H2WriteCoalescer(jdbcTemplate, transactionTemplate, true, 0, 16, 50);
+
+        assertThrows(IllegalStateException.class, () -> writeCoalescer.save(widget(null, 1)));
+    }
+
+    @Test
+    void save_whenWidgetEndsPastTheHighestInt_thenSaveAndFindIt() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        H2WidgetRepository repository = new H2WidgetRepository(jdbcTemplate, new DataSourceTransactionManager(database), writeCoalescer, 16);
+        Widget edge = Widget.builder().xIndex(2147483000).yIndex(2147483000).zIndex(1).width(1000).height(1000).build();
+
+        Widget saved = writeCoalescer.save(edge);
+        Widget moved = writeCoalescer.moveBy(saved.getId(), 500, 500);
+
+        assertEquals(2147483500, moved.getXIndex());
+        assertEquals(Optional.of(moved.getId()), repository.findTopAt(Integer.MAX_VALUE, Integer.MAX_VALUE).map(Widget::getId));
+        RectangleCoordinates edgeArea = RectangleCoordinates.builder()
+                .x0(2147483600).y0(2147483600).x1(Integer.MAX_VALUE).y1(Integer.MAX_VALUE).build();
+        assertEquals(List.of(moved.getId()), repository.findWithCoordinates(edgeArea, QueryMode.INTERSECTS, 10).stream()
+                .map(Widget::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void moveAbove_whenOtherWidgetDoesntExist_thenThrowWidgetNotFoundException() {
+        H2WriteCoalescer writeCoalescer = startWriteCoalescer(false, 0);
+        Widget widget = writeCoalescer.save(widget(null, 1));
+
+        assertThrows(WidgetNotFoundException.class, () -> writeCoalescer.moveAbove(widget.getId(), widget.getId() + 1));
+        assertEquals(List.of(1), jdbcTemplate.queryForList("select zIndex from widget", Integer.class));
+    }
+
+    private H2WriteCoalescer startWriteCoalescer(boolean enabled, long windowMicros) {
+        H2WriteCoalescer writeCoalescer = new H2WriteCoalescer(jdbcTemplate, transactionTemplate, enabled, windowMicros, 16, 5000);
+        writeCoalescer.start();
+        return writeCoalescer;
+    }
+
+    private List<Long> idsInZOrder() {
+        return jdbcTemplate.queryForList("select id from widget order by zIndex", Long.class);
+    }
+
+    private static List<H2WriteCoalescer.PendingSave> pendingSaves(Widget... widgets) {
+        return Stream.of(widgets).map(H2WriteCoalescer.PendingSave::new).collect(Collectors.toList());
+    }
+
+    private static Widget widget(Long id, Integer zIndex) {
+        return Widget.builder().id(id).xIndex(0).yIndex(0).zIndex(zIndex).width(10).height(10).build();
+    }
+}
@@ -1,23 +1,29 @@
 package uk.gajd.andrej.widgets.repository.impl;
 
 import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
+import uk.gajd.andrej.widgets.model.QueryStage;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
+import uk.gajd.andrej.widgets.repository.index.GridIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
-import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@ExtendWith(MockitoExtension.class)
 class InMemoryRepositoryTest {
-    @InjectMocks
-    private InMemoryRepository inMemoryRepository;
+    private final InMemoryRepository inMemoryRepository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, InMemoryRepository.DEFAULT_PARALLEL_THRESHOLD, true);
 
     @BeforeEach
     void setUp() {
@@ -117,11 +123,368 @@ class InMemoryRepositoryTest {
 
         RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(150).build();
 
-        List<Widget> foundWidgets = inMemoryRepository.findWithCoordinates(coordinates, 10);
+        List<Widget> foundWidgets = inMemoryRepository.findWithCoordinates(coordinates, QueryMode.CONTAINS, 10);
         assertEquals(2, foundWidgets.size());
         assertTrue(foundWidgets.contains(widget1));
         assertTrue(foundWidgets.contains(widget2));
         assertFalse(foundWidgets.contains(widget3));
         assertFalse(foundWidgets.contains(widget4));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findWithCoordinates_whenModeIsIntersects_thenReturnPartiallyVisibleWidgets() {
+        Widget contained = Widget.builder().xIndex(50).yIndex(100).width(50).height(50).build();
+        Widget crossingEdge = Widget.builder().xIndex(-5000).yIndex(120).width(5100).height(10).build();
+        Widget spanningArea = Widget.builder().xIndex(-100000).yIndex(-100000).width(200000).height(200000).build();
+        Widget touchingEdge = Widget.builder().xIndex(100).yIndex(100).width(30).height(40).build();
+        Widget outside = Widget.builder().xIndex(-600).yIndex(0).width(500).height(40).build();
+        List.of(contained, crossingEdge, spanningArea, touchingEdge, outside).forEach(widget -> inMemoryRepository.save(widget));
+
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(150).build();
+
+        assertEquals(List.of(contained, crossingEdge, spanningArea),
+                inMemoryRepository.findWithCoordinates(coordinates, QueryMode.INTERSECTS, 10));
+        assertEquals(List.of(contained), inMemoryRepository.findWithCoordinates(coordinates, QueryMode.CONTAINS, 10));
+    }
+
+    @Test
+    void findWithCoordinates_whenAreaCoversManyCells_thenReturnEachWidgetOnce() {
+        Widget wide = Widget.builder().xIndex(-1000).yIndex(-1000).width(1500).height(1500).build();
+        Widget small = Widget.builder().xIndex(5000).yIndex(5000).width(10).height(10).build();
+        List.of(wide, small).forEach(widget -> inMemoryRepository.save(widget));
+
+        RectangleCoordinates huge = RectangleCoordinates.builder()
+                .x0(Integer.MIN_VALUE).y0(Integer.MIN_VALUE).x1(Integer.MAX_VALUE).y1(Integer.MAX_VALUE).build();
+        RectangleCoordinates acrossCells = RectangleCoordinates.builder().x0(-1500).y0(-1500).x1(800).y1(800).build();
+
+        assertEquals(List.of(wide, small), inMemoryRepository.findWithCoordinates(huge, QueryMode.INTERSECTS, 10));
+        assertEquals(List.of(wide), inMemoryRepository.findWithCoordinates(acrossCells, QueryMode.INTERSECTS, 10));
+    }
+
+    @Test
+    void findWithCoordinates_whenEstimateReachesParallelThreshold_thenReturnSameWidgetsAsSerialQuery() {
+        InMemoryRepository parallelRepository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, 0, false);
+        Random random = new Random(7);
+        IntStream.range(0, 2000).forEach(i -> {
+            int xIndex = random.nextInt(5000);
+            int yIndex = random.nextInt(5000);
+            int zIndex = random.nextInt(100000);
+            int size = 1 + random.nextInt(300);
+            inMemoryRepository.save(Widget.builder().xIndex(xIndex).yIndex(yIndex).zIndex(zIndex).width(size).height(size).build());
+            parallelRepository.save(Widget.builder().xIndex(xIndex).yIndex(yIndex).zIndex(zIndex).width(size).height(size).build());
+        });
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(500).y0(500).x1(4000).y1(3000).build();
+
+        for (QueryMode mode : QueryMode.values()) {
+            for (int limit : List.of(1, 50, 500)) {
+                List<Long> expected = inMemoryRepository.findWithCoordinates(coordinates, mode, limit)
+                        .stream().map(Widget::getId).collect(Collectors.toList());
+                assertEquals(limit, expected.size());
+                assertEquals(expected, parallelRepository.findWithCoordinates(coordinates, mode, limit)
+                        .stream().map(Widget::getId).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test
+    void findWithCoordinates_whenQueriesAreBatched_thenReturnResultsInQueryOrder() {
+        Widget left = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).width(10).height(10).build());
+        Widget right = inMemoryRepository.save(Widget.builder().xIndex(1000).yIndex(0).width(10).height(10).build());
+        RectangleCoordinates leftTile = RectangleCoordinates.builder().x0(0).y0(0).x1(500).y1(500).build();
+        RectangleCoordinates rightTile = RectangleCoordinates.builder().x0(500).y0(0).x1(1005).y1(500).build();
+
+        List<List<Widget>> results = inMemoryRepository.findWithCoordinates(List.of(
+                CoordinateQuery.builder().coordinates(rightTile).mode(QueryMode.CONTAINS).limit(10).build(),
+                CoordinateQuery.builder().coordinates(rightTile).mode(QueryMode.INTERSECTS).limit(10).build(),
+                CoordinateQuery.builder().coordinates(leftTile).mode(QueryMode.CONTAINS).limit(10).build()));
+
+        assertEquals(List.of(List.of(), List.of(right), List.of(left)), results);
+    }
+
+    @Test
+    void findTopAt_whenWidgetsOverlapThePoint_thenReturnTopMostCoveringIt() {
+        Widget bottom = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(1).width(100).height(100).build());
+        Widget top = inMemoryRepository.save(Widget.builder().xIndex(40).yIndex(40).zIndex(2).width(20).height(20).build());
+        Widget background = inMemoryRepository.save(Widget.builder().xIndex(-100000).yIndex(-100000).zIndex(0)
+                .width(200000).height(200000).build());
+
+        assertEquals(Optional.of(top), inMemoryRepository.findTopAt(50, 50));
+        assertEquals(Optional.of(bottom), inMemoryRepository.findTopAt(60, 50)); // The right edge isn't on the widget
+        assertEquals(Optional.of(background), inMemoryRepository.findTopAt(5000, -5000));
+        assertEquals(Optional.empty(), inMemoryRepository.findTopAt(100000, 0));
+    }
+
+    @Test
+    void explainWithCoordinates_whenWidgetsAreAroundTheArea_thenCountCandidatesAndMatches() {
+        InMemoryRepository gridRepository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, InMemoryRepository.DEFAULT_PARALLEL_THRESHOLD, false);
+        IntStream.range(0, 5).forEach(i ->
+                gridRepository.save(Widget.builder().xIndex(i * 10).yIndex(0).width(10).height(10).build()));
+        gridRepository.save(Widget.builder().xIndex(45).yIndex(0).width(100).height(10).build());
+        gridRepository.save(Widget.builder().xIndex(5000).yIndex(0).width(10).height(10).build());
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(50).y1(50).build();
+        QueryPlan plan = gridRepository.explainWithCoordinates(area, QueryMode.CONTAINS, 3);
+
+        assertEquals("grid index", plan.getAccessPath());
+        assertEquals(6, plan.getCandidates()); // All but the far away widget share the grid cell
+        assertEquals(5, plan.getMatched());
+        assertEquals(3, plan.getReturned());
+        assertEquals(List.of("plan", "find grid candidates", "match", "sort by zIndex & limit"),
+                plan.getStages().stream().map(QueryStage::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findWithCoordinates_whenAreaHoldsMostOfTheBoard_thenScanByZIndexUntilLimit() {
+        IntStream.range(0, 100).forEach(i ->
+                inMemoryRepository.save(Widget.builder().xIndex(i * 10).yIndex(i * 10).width(10).height(10).build()));
+        RectangleCoordinates board = RectangleCoordinates.builder().x0(0).y0(0).x1(1000).y1(1000).build();
+
+        QueryPlan plan = inMemoryRepository.explainWithCoordinates(board, QueryMode.CONTAINS, 3);
+
+        assertEquals("zIndex scan", plan.getAccessPath());
+        assertEquals(3, plan.getCandidates());
+        assertEquals(List.of(0, 1, 2), inMemoryRepository.findWithCoordinates(board, QueryMode.CONTAINS, 3)
+                .stream().map(Widget::getZIndex).collect(Collectors.toList()));
+    }
+
+    @Test
+    void explainWithCoordinates_whenEstimateReachesParallelThreshold_thenExplainParallelPath() {
+        InMemoryRepository parallelRepository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, 1, false);
+        IntStream.range(0, 20).forEach(i ->
+                parallelRepository.save(Widget.builder().xIndex(i * 10).yIndex(0).width(10).height(10).build()));
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build();
+        QueryPlan plan = parallelRepository.explainWithCoordinates(area, QueryMode.CONTAINS, 3);
+
+        assertEquals("grid index, parallel top-k", plan.getAccessPath());
+        assertEquals(20, plan.getCandidates());
+        assertEquals(10, plan.getMatched());
+        assertEquals(3, plan.getReturned());
+        assertEquals("merge top by zIndex in parallel", plan.getStages().get(3).getName());
+    }
+
+    @Test
+    void aggregate_whenWidgetsAreSavedMovedAndDeleted_thenFollowThem() {
+        Widget left = inMemoryRepository.save(Widget.builder().xIndex(-300).yIndex(0).width(100).height(50).build());
+        Widget right = inMemoryRepository.save(Widget.builder().xIndex(500).yIndex(200).width(10).height(10).build());
+        inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).width(10).height(10).build());
+
+        WidgetAggregates board = inMemoryRepository.aggregate();
+        assertEquals(3, board.getCount());
+        assertEquals(5000 + 100 + 100, board.getTotalArea());
+        assertEquals(RectangleCoordinates.builder().x0(-300).y0(0).x1(510).y1(210).build(), board.getBoundingBox());
+
+        inMemoryRepository.deleteById(left.getId());
+        inMemoryRepository.moveBy(right.getId(), 100, 0);
+
+        board = inMemoryRepository.aggregate();
+        assertEquals(2, board.getCount());
+        assertEquals(200, board.getTotalArea());
+        assertEquals(RectangleCoordinates.builder().x0(0).y0(0).x1(610).y1(210).build(), board.getBoundingBox());
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void aggregate_whenAreaIsGiven_thenCountWidgetsStartingInItByTile() {
+        inMemoryRepository.save(Widget.builder().xIndex(10).yIndex(10).width(10).height(10).build());
+        inMemoryRepository.save(Widget.builder().xIndex(1030).yIndex(10).width(2000).height(20).build());
+        inMemoryRepository.save(Widget.builder().xIndex(1040).yIndex(20).width(10).height(10).build());
+        inMemoryRepository.save(Widget.builder().xIndex(2000).yIndex(10).width(10).height(10).build());
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(1500).y1(1024).build();
+        WidgetAggregates aggregates = inMemoryRepository.aggregate(area, 1024);
+
+        assertEquals(3, aggregates.getCount());
+        assertEquals(100 + 40000 + 100, aggregates.getTotalArea());
+        assertEquals(1024, aggregates.getTileSize());
+        assertEquals(List.of(
+                new TileAggregate(0, 0, 1, 100),
+                new TileAggregate(1024, 0, 2, 40100)), aggregates.getTiles());
+        assertNull(aggregates.getBoundingBox());
+    }
+
+    @Test
+    void deleteById_whenIdExists_thenRemoveWidgetFromAllIndexes() {
+        Widget widget = Widget.builder().xIndex(10).yIndex(20).width(30).height(40).build();
+        inMemoryRepository.save(widget);
+
+        inMemoryRepository.deleteById(widget.getId());
+
+        IndexConsistencyReport report = inMemoryRepository.verifyIndexes();
+        assertTrue(report.isConsistent());
+        assertEquals(0, report.getWidgetCount());
+        report.getIndexSizes().values().forEach(size -> assertEquals(0L, size));
+        assertTrue(inMemoryRepository.findWithCoordinates(
+                RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build(), QueryMode.CONTAINS, 10).isEmpty());
+    }
+
+    @Test
+    void verifyIndexes_whenWidgetsAreSavedUpdatedShiftedAndDeleted_thenReportConsistentIndexes() {
+        IntStream.range(0, 5).forEach(i ->
+                inMemoryRepository.save(Widget.builder().xIndex(i).yIndex(i).zIndex(i).width(30).height(40).build())
+        );
+        Widget widget = Widget.builder().xIndex(7).yIndex(7).zIndex(1).width(30).height(40).build();
+        inMemoryRepository.save(widget); // Shifts the widgets from zIndex 1 to 4
+
+        inMemoryRepository.save(Widget.builder().id(widget.getId()).xIndex(8).yIndex(8).zIndex(3).width(30).height(40).build());
+        inMemoryRepository.deleteById(inMemoryRepository.findWithLimit(1).get(0).getId());
+
+        IndexConsistencyReport report = inMemoryRepository.verifyIndexes();
+        assertTrue(report.isConsistent(), () -> report.getDrift().toString());
+        assertEquals(5, report.getWidgetCount());
+        report.getIndexSizes().values().forEach(size -> assertEquals(5L, size));
+    }
+
+    @Test
+    void moveBy_whenWidgetIsMoved_thenKeepZIndexAndFindItAtNewPosition() {
+        Widget widget = inMemoryRepository.save(Widget.builder().xIndex(10).yIndex(20).zIndex(3).width(30).height(40).build());
+
+        inMemoryRepository.moveBy(widget.getId(), 100, -20);
+
+        assertEquals(110, widget.getXIndex());
+        assertEquals(0, widget.getYIndex());
+        assertEquals(3, widget.getZIndex());
+        assertEquals(List.of(widget), inMemoryRepository.findWithCoordinates(
+                RectangleCoordinates.builder().x0(100).y0(0).x1(150).y1(50).build(), QueryMode.CONTAINS, 10));
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void moveBy_whenMovedOutOfIntRange_thenThrowIllegalArgumentException() {
+        Widget widget = inMemoryRepository.save(Widget.builder().xIndex(10).yIndex(20).width(30).height(40).build());
+
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.moveBy(widget.getId(), Integer.MAX_VALUE, 0));
+        assertEquals(10, widget.getXIndex());
+    }
+
+    @Test
+    void bringToFront_whenWidgetIsBelowOthers_thenMoveItAboveTheTopOne() {
+        List<Widget> widgets = saveStack(3);
+
+        inMemoryRepository.bringToFront(widgets.get(0).getId());
+
+        assertEquals(List.of(widgets.get(1), widgets.get(2), widgets.get(0)), inMemoryRepository.findWithLimit(10));
+        assertEquals(3, widgets.get(0).getZIndex());
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void bringToFront_whenTopIsTheHighestInt_thenThrowIllegalArgumentExceptionAndKeepZIndex() {
+        inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE).width(10).height(10).build());
+        Widget widget = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(0).width(10).height(10).build());
+
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.bringToFront(widget.getId()));
+
+        assertEquals(0, inMemoryRepository.findById(widget.getId()).getZIndex());
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void sendToBack_whenWidgetIsAboveOthers_thenMoveItBelowTheBottomOneWithoutShifting() {
+        List<Widget> widgets = saveStack(3);
+
+        inMemoryRepository.sendToBack(widgets.get(2).getId());
+
+        assertEquals(List.of(widgets.get(2), widgets.get(0), widgets.get(1)), inMemoryRepository.findWithLimit(10));
+        assertEquals(-1, widgets.get(2).getZIndex());
+        assertEquals(0, widgets.get(0).getZIndex());
+        assertEquals(1, widgets.get(1).getZIndex());
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void sendToBack_whenBottomIsTheLowestInt_thenShiftTheOthersUp() {
+        Widget bottom = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MIN_VALUE).width(30).height(40).build());
+        Widget top = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(5).width(30).height(40).build());
+
+        inMemoryRepository.sendToBack(top.getId());
+
+        assertEquals(List.of(top, bottom), inMemoryRepository.findWithLimit(10));
+        assertEquals(Integer.MIN_VALUE, top.getZIndex());
+        assertEquals(Integer.MIN_VALUE + 1, bottom.getZIndex());
+    }
+
+    @Test
+    void save_whenZIndexIsBelowTheBottom_thenListItFirstWithoutShifting() {
+        List<Widget> widgets = saveStack(2);
+
+        Widget below = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(-10).width(30).height(40).build());
+
+        assertEquals(List.of(below, widgets.get(0), widgets.get(1)), inMemoryRepository.findWithLimit(10));
+        assertEquals(0, widgets.get(0).getZIndex());
+    }
+
+    @Test
+    void moveAbove_whenWidgetIsMovedAboveAnother_thenShiftOnlyTheWidgetsAboveThatOne() {
+        List<Widget> widgets = saveStack(4);
+
+        inMemoryRepository.moveAbove(widgets.get(3).getId(), widgets.get(0).getId());
+
+        assertEquals(List.of(widgets.get(0), widgets.get(3), widgets.get(1), widgets.get(2)), inMemoryRepository.findWithLimit(10));
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void save_whenRunToShiftEndsAtTheHighestInt_thenThrowIllegalArgumentExceptionAndKeepIndexes() {
+        Widget top = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE).width(10).height(10).build());
+        Widget below = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE - 1).width(10).height(10).build());
+        Widget bottom = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(0).width(10).height(10).build());
+
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.save(
+                Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE - 1).width(10).height(10).build()));
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.save(
+                Widget.builder().xIndex(0).yIndex(0).width(10).height(10).build()));
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.moveAbove(bottom.getId(), top.getId()));
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.save(
+                Widget.builder().id(bottom.getId()).xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE - 1).width(10).height(10).build()));
+
+        assertEquals(List.of(bottom.getId(), below.getId(), top.getId()),
+                inMemoryRepository.findWithLimit(10).stream().map(Widget::getId).collect(Collectors.toList()));
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void moveAbove_whenWidgetOfTheRunIsMovedToItsStart_thenShiftIntoItsPlace() {
+        Widget top = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE).width(10).height(10).build());
+        Widget middle = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE - 1).width(10).height(10).build());
+        Widget bottom = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE - 2).width(10).height(10).build());
+        Widget other = inMemoryRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(0).width(10).height(10).build());
+
+        inMemoryRepository.moveAbove(top.getId(), other.getId());
+
+        assertEquals(List.of(other.getId(), top.getId(), bottom.getId(), middle.getId()),
+                inMemoryRepository.findWithLimit(10).stream().map(Widget::getId).collect(Collectors.toList()));
+        assertTrue(inMemoryRepository.verifyIndexes().isConsistent());
+    }
+
+    @Test
+    void findWithCoordinates_whenZIndexesSpanTheIntRange_thenSortWithoutOverflow() {
+        InMemoryRepository gridRepository = new InMemoryRepository(GridIndex.DEFAULT_CELL_SIZE, InMemoryRepository.DEFAULT_PARALLEL_THRESHOLD, false);
+        Widget top = gridRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MAX_VALUE).width(10).height(10).build());
+        Widget bottom = gridRepository.save(Widget.builder().xIndex(0).yIndex(0).zIndex(Integer.MIN_VALUE).width(10).height(10).build());
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build();
+
+        assertEquals(List.of(bottom.getId(), top.getId()), gridRepository.findWithCoordinates(area, QueryMode.CONTAINS, 10)
+                .stream().map(Widget::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void moveAbove_whenWidgetIsItself_thenThrowIllegalArgumentException() {
+        Widget widget = saveStack(1).get(0);
+
+        assertThrows(IllegalArgumentException.class, () -> inMemoryRepository.moveAbove(widget.getId(), widget.getId()));
+    }
+
+    @Test
+    void moveAbove_whenOtherWidgetDoesntExist_thenThrowWidgetNotFoundException() {
+        Widget widget = saveStack(1).get(0);
+
+        assertThrows(WidgetNotFoundException.class, () -> inMemoryRepository.moveAbove(widget.getId(), widget.getId() + 1));
+    }
+
+    private List<Widget> saveStack(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> inMemoryRepository.save(Widget.builder().xIndex(i).yIndex(i).width(30).height(40).build()))
+                .collect(Collectors.toList());
+    }
+}
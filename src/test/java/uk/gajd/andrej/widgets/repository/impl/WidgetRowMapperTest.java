@@ -0,0 +1,38 @@
+package uk.gajd.andrej.widgets.repository.impl;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class WidgetRowMapperTest {
+    @Mock
+    private ResultSet mockResultSet;
+
+    @Test
+    void mapRow_whenRowHasAllColumns_thenMapThemByIndex() throws SQLException {
+        LocalDateTime updateTime = LocalDateTime.of(2021, 2, 3, 4, 5, 6);
+
+        // mock
+        given(mockResultSet.getLong(1)).willReturn(7L);
+        given(mockResultSet.getInt(2)).willReturn(10);
+        given(mockResultSet.getInt(3)).willReturn(20);
+        given(mockResultSet.getInt(4)).willReturn(3);
+        given(mockResultSet.getInt(5)).willReturn(30);
+        given(mockResultSet.getInt(6)).willReturn(40);
+        given(mockResultSet.getObject(7, LocalDateTime.class)).willReturn(updateTime);
+
+        Widget widget = WidgetRowMapper.INSTANCE.mapRow(mockResultSet, 0);
+        assertEquals(Widget.builder().id(7L).xIndex(10).yIndex(20).zIndex(3).width(30).height(40)
+                .updateTime(updateTime).build(), widget);
+    }
+}
@@ -0,0 +1,52 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundsIndexTest {
+    private final BoundsIndex index = new BoundsIndex();
+
+    @Test
+    void boundingBox_whenOutermostWidgetIsRemoved_thenShrinkToTheNextOne() {
+        assertEquals(Optional.empty(), index.boundingBox());
+
+        Widget outer = Widget.builder().id(1L).xIndex(-50).yIndex(-20).width(200).height(100).build();
+        index.add(outer);
+        index.add(Widget.builder().id(2L).xIndex(0).yIndex(0).width(10).height(10).build());
+        index.add(Widget.builder().id(3L).xIndex(0).yIndex(5).width(20).height(10).build());
+        assertEquals(RectangleCoordinates.builder().x0(-50).y0(-20).x1(150).y1(80).build(), index.boundingBox().get());
+
+        index.remove(outer);
+        assertEquals(RectangleCoordinates.builder().x0(0).y0(0).x1(20).y1(15).build(), index.boundingBox().get());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void boundingBox_whenWidgetEndsBeyondTheIntRange_thenCapTheEdges() {
+        index.add(Widget.builder().id(1L).xIndex(Integer.MAX_VALUE - 1).yIndex(0).width(10).height(10).build());
+
+        assertEquals(Integer.MAX_VALUE, index.boundingBox().get().getX1());
+    }
+
+    @Test
+    void verify_whenWidgetResizedWithoutReindexing_thenReportDrift() {
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(10).height(10).build();
+        index.add(widget);
+        widget.setWidth(20);
+
+        List<String> drift = new ArrayList<>();
+        index.verify(Map.of(1L, widget), drift::add);
+
+        assertEquals(List.of(
+                "bounds count 0 right edges at 20, expected 1",
+                "bounds count 1 right edges at 10, expected 0"), drift);
+    }
+}
@@ -0,0 +1,73 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLongSetTest {
+    private final ConcurrentLongSet set = new ConcurrentLongSet();
+
+    @Test
+    void add_whenValueIsNew_thenContainValue() {
+        assertTrue(set.add(5));
+        assertFalse(set.add(5));
+
+        assertTrue(set.contains(5));
+        assertFalse(set.contains(6));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void add_whenValueIsMarker_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> set.add(Long.MIN_VALUE));
+    }
+
+    @Test
+    void remove_whenValueExists_thenRemoveOnlyThatValue() {
+        LongStream.range(0, 3).forEach(set::add);
+
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+
+        assertFalse(set.contains(0));
+        assertEquals(Set.of(1L, 2L), set.stream().boxed().collect(Collectors.toSet()));
+    }
+
+    @Test
+    void stream_whenValuesAreAddedAndRemovedRepeatedly_thenReturnEachRemainingValueOnce() {
+        Set<Long> expected = new TreeSet<>();
+        for (long i = 0; i < 10_000; i++) {
+            set.add(i);
+            expected.add(i);
+            if (i % 3 == 0) {
+                set.remove(i / 2);
+                expected.remove(i / 2);
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected.size(), set.stream().count());
+        assertEquals(expected, set.stream().boxed().collect(Collectors.toCollection(TreeSet::new)));
+        expected.forEach(value -> assertTrue(set.contains(value)));
+    }
+
+    @Test
+    void stream_whenSetChangesDuringIteration_thenKeepIteratingWithoutDuplicates() {
+        LongStream.range(0, 100).forEach(set::add);
+
+        Set<Long> seen = new TreeSet<>();
+        set.stream().forEach(value -> {
+            assertTrue(seen.add(value));
+            set.remove(value);
+            set.add(value + 1_000);
+        });
+
+        assertTrue(seen.size() >= 1);
+        assertEquals(100, set.size());
+    }
+}
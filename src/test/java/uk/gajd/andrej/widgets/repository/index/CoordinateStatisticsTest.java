@@ -0,0 +1,56 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoordinateStatisticsTest {
+    private final CoordinateStatistics statistics = new CoordinateStatistics();
+
+    @Test
+    void estimateMatches_whenWidgetsAreSpreadEvenly_thenScaleWithTheArea() {
+        long id = 0;
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 100; y++) {
+                statistics.add(Widget.builder().id(id++).xIndex(x * 100).yIndex(y * 100).width(10).height(10).build());
+            }
+        }
+        RectangleCoordinates quarter = RectangleCoordinates.builder().x0(0).y0(0).x1(5000).y1(5000).build();
+        RectangleCoordinates elsewhere = RectangleCoordinates.builder().x0(-5000).y0(-5000).x1(-1000).y1(-1000).build();
+
+        assertEquals(2500, statistics.estimateMatches(quarter, QueryMode.INTERSECTS), 100);
+        assertEquals(0, statistics.estimateMatches(elsewhere, QueryMode.CONTAINS));
+    }
+
+    @Test
+    void estimateMatches_whenWidgetsAreRemoved_thenForgetThem() {
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(10).height(10).build();
+        statistics.add(widget);
+        statistics.remove(widget);
+
+        assertEquals(0, statistics.size());
+        assertEquals(0, statistics.estimateMatches(
+                RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build(), QueryMode.INTERSECTS));
+    }
+
+    @Test
+    void verify_whenWidgetMovedWithoutReindexing_thenReportDrift() {
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(10).height(10).build();
+        statistics.add(widget);
+        widget.setXIndex(CoordinateStatistics.BUCKET_SIZE);
+
+        List<String> drift = new ArrayList<>();
+        statistics.verify(Map.of(1L, widget), drift::add);
+
+        assertEquals(List.of(
+                "statistics count 0 widgets starting in x bucket 1, expected 1",
+                "statistics count 1 widgets starting in x bucket 0, expected 0"), drift);
+    }
+}
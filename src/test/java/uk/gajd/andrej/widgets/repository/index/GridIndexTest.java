@@ -0,0 +1,128 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
+import uk.gajd.andrej.widgets.model.Widget;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridIndexTest {
+    @Test
+    void constructor_whenCellSizeIsNotPowerOfTwo_thenThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new GridIndex(100));
+        assertThrows(IllegalArgumentException.class, () -> new GridIndex(0));
+    }
+
+    @Test
+    void findCandidates_whenWidgetSpansCells_thenReturnItOnce() {
+        GridIndex index = new GridIndex(64);
+        Widget widget = Widget.builder().id(1L).xIndex(-100).yIndex(-100).width(300).height(300).build();
+        index.add(widget);
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(-70).y0(-70).x1(150).y1(150).build();
+        List<Widget> candidates = index.findCandidates(area, id -> widget).collect(Collectors.toList());
+
+        assertEquals(List.of(widget), candidates);
+        assertEquals(36, index.size()); // Cells -2 to 3 on both axes
+    }
+
+    @Test
+    void estimateCandidates_whenAreaCoversPartOfTheGrid_thenScaleTheAverageCellEntries() {
+        GridIndex index = new GridIndex(64);
+        index.add(Widget.builder().id(1L).xIndex(0).yIndex(0).width(128).height(64).build());      // Cells (0, 0) & (1, 0)
+        index.add(Widget.builder().id(2L).xIndex(0).yIndex(0).width(10).height(10).build());       // Cell (0, 0)
+        index.add(Widget.builder().id(3L).xIndex(0).yIndex(0).width(64 * 10).height(64 * 10).build()); // Oversized
+
+        assertEquals(3 + 1, index.size());
+        RectangleCoordinates oneCell = RectangleCoordinates.builder().x0(0).y0(0).x1(64).y1(64).build();
+        RectangleCoordinates wholeBoard = RectangleCoordinates.builder().x0(-10000).y0(-10000).x1(10000).y1(10000).build();
+        assertEquals(1 * 3 / 2 + 1, index.estimateCandidates(oneCell));
+        assertEquals(3 + 1, index.estimateCandidates(wholeBoard));
+    }
+
+    @Test
+    void verify_whenWidgetMovedWithoutReindexing_thenReportDrift() {
+        GridIndex index = new GridIndex(64);
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(10).height(10).build();
+        index.add(widget);
+        widget.setXIndex(1000);
+
+        List<String> drift = new ArrayList<>();
+        index.verify(Map.of(1L, widget), drift::add);
+
+        assertEquals(List.of(
+                "grid cell (0, 0) references widget 1 which doesn't overlap it",
+                "grid cell (15, 0) summarizes 0 widgets of area 0, expected 1 of area 100",
+                "grid cell (0, 0) summarizes widgets but none starts in it",
+                "widget 1 is missing from grid cell (15, 0)"), drift);
+    }
+
+    @Test
+    void remove_whenWidgetIsOversized_thenDropItFromEveryQuery() {
+        GridIndex index = new GridIndex(64);
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(64 * 10).height(64 * 10).build();
+        index.add(widget);
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(5000).y0(5000).x1(5010).y1(5010).build();
+        assertEquals(1, index.findCandidates(area, id -> widget).count()); // Checked by every query, matched later
+
+        index.remove(widget);
+
+        assertEquals(0, index.findCandidates(area, id -> widget).count());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void aggregateTiles_whenAreaCrossesCells_thenCountOnlyWidgetsStartingInIt() {
+        GridIndex index = new GridIndex(64);
+        Map<Long, Widget> widgets = Map.of(
+                1L, Widget.builder().id(1L).xIndex(0).yIndex(0).width(10).height(10).build(),          // Cell within the area
+                2L, Widget.builder().id(2L).xIndex(70).yIndex(10).width(100).height(20).build(),       // Cell within, crossing out
+                3L, Widget.builder().id(3L).xIndex(130).yIndex(0).width(10).height(10).build(),        // Cell crossing the edge, in
+                4L, Widget.builder().id(4L).xIndex(150).yIndex(0).width(10).height(10).build(),        // Cell crossing the edge, out
+                5L, Widget.builder().id(5L).xIndex(-10).yIndex(0).width(50).height(50).build(),        // Starts left of the area
+                6L, Widget.builder().id(6L).xIndex(135).yIndex(5).width(64 * 10).height(64 * 10).build()); // Oversized, in
+        widgets.values().forEach(index::add);
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(140).y1(64).build();
+        List<TileAggregate> tiles = index.aggregateTiles(area, 128, widgets::get);
+
+        assertEquals(List.of(
+                new TileAggregate(0, 0, 2, 100 + 2000),
+                new TileAggregate(128, 0, 2, 100 + 640L * 640)), tiles);
+    }
+
+    @Test
+    void aggregateTiles_whenTilesAreSmallerThanCells_thenCountWidgetsOneByOne() {
+        GridIndex index = new GridIndex(64);
+        Map<Long, Widget> widgets = Map.of(
+                1L, Widget.builder().id(1L).xIndex(-20).yIndex(0).width(10).height(10).build(),
+                2L, Widget.builder().id(2L).xIndex(20).yIndex(40).width(10).height(10).build(),
+                3L, Widget.builder().id(3L).xIndex(25).yIndex(45).width(1).height(1).build());
+        widgets.values().forEach(index::add);
+
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(-64).y0(0).x1(64).y1(64).build();
+        List<TileAggregate> tiles = index.aggregateTiles(area, 16, widgets::get);
+
+        assertEquals(List.of(
+                new TileAggregate(-32, 0, 1, 100),
+                new TileAggregate(16, 32, 2, 101)), tiles);
+    }
+
+    @Test
+    void getTotalArea_whenWidgetsAreAddedAndRemoved_thenFollowThem() {
+        GridIndex index = new GridIndex(64);
+        Widget widget = Widget.builder().id(1L).xIndex(0).yIndex(0).width(100_000).height(100_000).build();
+        index.add(widget);
+        index.add(Widget.builder().id(2L).xIndex(0).yIndex(0).width(10).height(10).build());
+        assertEquals(10_000_000_000L + 100, index.getTotalArea());
+
+        index.remove(widget);
+        assertEquals(100, index.getTotalArea());
+    }
+}
@@ -0,0 +1,79 @@
+package uk.gajd.andrej.widgets.repository.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.OptionalInt;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZOccupancyTest {
+    private final ZOccupancy occupancy = new ZOccupancy();
+
+    @Test
+    void contains_whenZIndexIsAddedAndRemoved_thenFollowIt() {
+        occupancy.add(3);
+        assertTrue(occupancy.contains(3));
+        assertFalse(occupancy.contains(4));
+
+        occupancy.remove(3);
+        assertFalse(occupancy.contains(3));
+        assertEquals(0, occupancy.size());
+    }
+
+    @Test
+    void runEnd_whenZIndexesAreContiguous_thenReturnLastOfTheRun() {
+        occupancy.add(1);
+        occupancy.add(2);
+        occupancy.add(3);
+        occupancy.add(5);
+
+        assertEquals(3, occupancy.runEnd(1));
+        assertEquals(3, occupancy.runEnd(2));
+        assertEquals(5, occupancy.runEnd(5));
+    }
+
+    @Test
+    void runEnd_whenRunReachesTheHighestInt_thenReturnIt() {
+        occupancy.add(Integer.MAX_VALUE - 1);
+        occupancy.add(Integer.MAX_VALUE);
+        occupancy.add(Integer.MAX_VALUE - 3);
+
+        assertEquals(Integer.MAX_VALUE, occupancy.runEnd(Integer.MAX_VALUE - 1));
+        assertEquals(Integer.MAX_VALUE - 3, occupancy.runEnd(Integer.MAX_VALUE - 3));
+    }
+
+    @Test
+    void runEnd_whenRunCrossesZero_thenFollowSignedOrder() {
+        occupancy.add(-2);
+        occupancy.add(-1);
+        occupancy.add(0);
+        occupancy.add(1);
+
+        assertEquals(1, occupancy.runEnd(-2));
+    }
+
+    @Test
+    void belowMin_whenZIndexesAreTaken_thenReturnTheOneBelowTheLowest() {
+        assertEquals(OptionalInt.empty(), occupancy.belowMin());
+
+        occupancy.add(3);
+        occupancy.add(0);
+        assertEquals(OptionalInt.of(-1), occupancy.belowMin());
+        assertEquals(OptionalInt.of(0), occupancy.min());
+
+        occupancy.add(Integer.MIN_VALUE);
+        assertEquals(OptionalInt.of(Integer.MIN_VALUE), occupancy.belowMin());
+    }
+
+    @Test
+    void max_whenZIndexesAreNegativeAndPositive_thenReturnHighest() {
+        assertEquals(OptionalInt.empty(), occupancy.max());
+
+        occupancy.add(-10);
+        assertEquals(OptionalInt.of(-10), occupancy.max());
+
+        occupancy.add(7);
+        occupancy.add(Integer.MIN_VALUE);
+        assertEquals(OptionalInt.of(7), occupancy.max());
+    }
+}
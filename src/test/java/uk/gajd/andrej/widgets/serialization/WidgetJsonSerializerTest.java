@@ -0,0 +1,70 @@
+package uk.gajd.andrej.widgets.serialization;
+
+import uk.gajd.andrej.widgets.model.Widget;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WidgetJsonSerializerTest {
+    private final ObjectMapper defaultObjectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(new SimpleModule().addSerializer(new WidgetJsonSerializer()))
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void serialize_whenAllFieldsAreSet_thenWriteSameJsonAsBeanSerializer() throws Exception {
+        Widget widget = Widget.builder().id(1L).xIndex(-2).yIndex(3).zIndex(Integer.MIN_VALUE).width(5).height(6)
+                .updateTime(LocalDateTime.of(2021, 1, 2, 3, 4, 5, 120_000_000)).build();
+
+        assertSameJson(widget);
+        assertEquals("{\"id\":1,\"width\":5,\"height\":6,\"updateTime\":\"2021-01-02T03:04:05.12\","
+                + "\"xIndex\":-2,\"yIndex\":3,\"zIndex\":-2147483648}", objectMapper.writeValueAsString(widget));
+    }
+
+    @Test
+    void serialize_whenFieldsAreNull_thenWriteNulls() throws Exception {
+        assertSameJson(Widget.builder().build());
+    }
+
+    @Test
+    void serialize_whenTimestampHasAnyPrecision_thenWriteIsoLocalDateTime() throws Exception {
+        List.of(
+                LocalDateTime.of(2021, 12, 31, 23, 59),
+                LocalDateTime.of(2021, 12, 31, 23, 59, 1),
+                LocalDateTime.of(2021, 12, 31, 23, 59, 1, 1),
+                LocalDateTime.of(2021, 12, 31, 23, 59, 1, 123_456_789),
+                LocalDateTime.of(2021, 12, 31, 23, 59, 1, 100_000),
+                LocalDateTime.of(7, 1, 1, 0, 0),
+                LocalDateTime.of(12021, 1, 1, 0, 0),
+                LocalDateTime.of(-5, 1, 1, 0, 0)
+        ).forEach(timestamp -> assertSameJson(Widget.builder().id(1L).updateTime(timestamp).build()));
+    }
+
+    @Test
+    void serialize_whenWidgetsAreInList_thenWriteSameJsonAsBeanSerializer() throws Exception {
+        List<Widget> widgets = List.of(
+                Widget.builder().id(1L).xIndex(0).yIndex(0).zIndex(0).width(5).height(5).updateTime(LocalDateTime.now()).build(),
+                Widget.builder().id(2L).xIndex(1).yIndex(1).zIndex(1).width(5).height(5).updateTime(LocalDateTime.now()).build()
+        );
+
+        assertEquals(defaultObjectMapper.writeValueAsString(widgets), objectMapper.writeValueAsString(widgets));
+    }
+
+    private void assertSameJson(Widget widget) {
+        try {
+            assertEquals(defaultObjectMapper.writeValueAsString(widget), objectMapper.writeValueAsString(widget));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
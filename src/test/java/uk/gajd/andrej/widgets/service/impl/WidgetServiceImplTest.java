@@ -1,7 +1,17 @@
 package uk.gajd.andrej.widgets.service.impl;
 
+import uk.gajd.andrej.widgets.cache.BoardVersion;
+import uk.gajd.andrej.widgets.event.Operation;
+import uk.gajd.andrej.widgets.event.OperationEventLog;
+import uk.gajd.andrej.widgets.exception.WidgetNotFoundException;
+import uk.gajd.andrej.widgets.model.CoordinateQuery;
+import uk.gajd.andrej.widgets.model.IndexConsistencyReport;
+import uk.gajd.andrej.widgets.model.QueryMode;
+import uk.gajd.andrej.widgets.model.QueryPlan;
 import uk.gajd.andrej.widgets.model.RectangleCoordinates;
+import uk.gajd.andrej.widgets.model.TileAggregate;
 import uk.gajd.andrej.widgets.model.Widget;
+import uk.gajd.andrej.widgets.model.WidgetAggregates;
 import uk.gajd.andrej.widgets.repository.WidgetRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,8 +21,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.verify;
@@ -26,6 +38,12 @@ class WidgetServiceImplTest {
     @Mock
     private WidgetRepository mockWidgetRepository;
 
+    @Mock
+    private BoardVersion mockBoardVersion;
+
+    @Mock
+    private OperationEventLog mockOperationEventLog;
+
     @InjectMocks
     private WidgetServiceImpl widgetService;
 
@@ -37,6 +55,8 @@ class WidgetServiceImplTest {
         Widget createdWidget = widgetService.createWidget(DUMMY_WIDGET_WITHOUT_ID);
 
         verify(mockWidgetRepository).save(DUMMY_WIDGET_WITHOUT_ID);
+        verify(mockBoardVersion).increment();
+        verify(mockOperationEventLog).record(Operation.CREATE, DUMMY_WIDGET.getId());
         assertEquals(createdWidget, DUMMY_WIDGET);
     }
 
@@ -48,9 +68,34 @@ class WidgetServiceImplTest {
         Widget updatedWidget = widgetService.updateWidget(DUMMY_WIDGET);
 
         verify(mockWidgetRepository).save(DUMMY_WIDGET);
+        verify(mockBoardVersion).increment();
         assertEquals(updatedWidget, DUMMY_WIDGET);
     }
 
+    @Test
+    void moveWidget_whenWidgetIsMoved_thenRecordMove() {
+        //mock
+        given(mockWidgetRepository.moveBy(DUMMY_WIDGET.getId(), 5, -5)).willReturn(DUMMY_WIDGET);
+
+        Widget movedWidget = widgetService.moveWidget(DUMMY_WIDGET.getId(), 5, -5);
+
+        verify(mockBoardVersion).increment();
+        verify(mockOperationEventLog).record(Operation.MOVE, DUMMY_WIDGET.getId());
+        assertEquals(DUMMY_WIDGET, movedWidget);
+    }
+
+    @Test
+    void moveAbove_whenWidgetIsMoved_thenRecordReorder() {
+        //mock
+        given(mockWidgetRepository.moveAbove(DUMMY_WIDGET.getId(), 2L)).willReturn(DUMMY_WIDGET);
+
+        Widget movedWidget = widgetService.moveAbove(DUMMY_WIDGET.getId(), 2L);
+
+        verify(mockBoardVersion).increment();
+        verify(mockOperationEventLog).record(Operation.REORDER, DUMMY_WIDGET.getId());
+        assertEquals(DUMMY_WIDGET, movedWidget);
+    }
+
     @Test
     void deleteWidget_whenWidgetIdProvided_thenDeleteWidget() {
         //mock
@@ -59,6 +104,7 @@ class WidgetServiceImplTest {
         widgetService.deleteWidget(DUMMY_WIDGET.getId());
 
         verify(mockWidgetRepository).deleteById(DUMMY_WIDGET.getId());
+        verify(mockBoardVersion).increment();
     }
 
     @Test
@@ -80,6 +126,7 @@ class WidgetServiceImplTest {
         List<Widget> foundWidgets = widgetService.findWithLimit(DUMMY_VALID_LIMIT);
 
         verify(mockWidgetRepository).findWithLimit(DUMMY_VALID_LIMIT);
+        verify(mockOperationEventLog).record(Operation.FIND_WITH_LIMIT, DUMMY_VALID_LIMIT, null, 1);
         assertEquals(foundWidgets, Collections.singletonList(DUMMY_WIDGET));
     }
 
@@ -88,11 +135,80 @@ class WidgetServiceImplTest {
         RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
 
         //mock
-        given(mockWidgetRepository.findWithCoordinates(coordinates, DUMMY_VALID_LIMIT)).willReturn(Collections.singletonList(DUMMY_WIDGET));
+        given(mockWidgetRepository.findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT)).willReturn(Collections.singletonList(DUMMY_WIDGET));
 
-        List<Widget> foundWidgets = widgetService.findWithCoordinates(coordinates, DUMMY_VALID_LIMIT);
+        List<Widget> foundWidgets = widgetService.findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT);
 
-        verify(mockWidgetRepository).findWithCoordinates(coordinates, DUMMY_VALID_LIMIT);
+        verify(mockWidgetRepository).findWithCoordinates(coordinates, QueryMode.CONTAINS, DUMMY_VALID_LIMIT);
         assertEquals(foundWidgets, Collections.singletonList(DUMMY_WIDGET));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findWithCoordinates_whenQueriesAreBatched_thenRecordEachQuery() {
+        RectangleCoordinates coordinates = RectangleCoordinates.builder().x0(1).y0(2).x1(3).y1(4).build();
+        List<CoordinateQuery> queries = List.of(
+                CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.CONTAINS).limit(DUMMY_VALID_LIMIT).build(),
+                CoordinateQuery.builder().coordinates(coordinates).mode(QueryMode.INTERSECTS).limit(5).build());
+
+        //mock
+        given(mockWidgetRepository.findWithCoordinates(queries)).willReturn(List.of(List.of(), List.of(DUMMY_WIDGET)));
+
+        assertEquals(List.of(List.of(), List.of(DUMMY_WIDGET)), widgetService.findWithCoordinates(queries));
+        verify(mockOperationEventLog).record(Operation.FIND_WITH_COORDINATES, DUMMY_VALID_LIMIT, coordinates, 0);
+        verify(mockOperationEventLog).record(Operation.FIND_WITH_COORDINATES, 5, coordinates, 1);
+    }
+
+    @Test
+    void findTopAt_whenWidgetCoversThePoint_thenReturnIt() {
+        //mock
+        given(mockWidgetRepository.findTopAt(1, 2)).willReturn(Optional.of(DUMMY_WIDGET));
+
+        assertEquals(DUMMY_WIDGET, widgetService.findTopAt(1, 2));
+        verify(mockOperationEventLog).record(Operation.HIT_TEST, DUMMY_WIDGET.getId());
+    }
+
+    @Test
+    void findTopAt_whenNoWidgetCoversThePoint_thenThrowWidgetNotFoundException() {
+        //mock
+        given(mockWidgetRepository.findTopAt(1, 2)).willReturn(Optional.empty());
+
+        assertThrows(WidgetNotFoundException.class, () -> widgetService.findTopAt(1, 2));
+        verify(mockOperationEventLog).record(Operation.HIT_TEST, (Long) null);
+    }
+
+    @Test
+    void explainWithLimit_whenCalled_thenReturnRepositoryPlan() {
+        QueryPlan plan = QueryPlan.builder().accessPath("zIndex scan").candidates(1L).matched(1L).returned(1).build();
+
+        //mock
+        given(mockWidgetRepository.explainWithLimit(10)).willReturn(plan);
+
+        assertEquals(plan, widgetService.explainWithLimit(10));
+        verify(mockOperationEventLog).record(Operation.EXPLAIN, 10, null, 1);
+    }
+
+    @Test
+    void aggregate_whenAreaIsGiven_thenReturnRepositoryAggregatesAndRecordTiles() {
+        RectangleCoordinates area = RectangleCoordinates.builder().x0(0).y0(0).x1(100).y1(100).build();
+        WidgetAggregates aggregates = WidgetAggregates.builder()
+                .count(1).totalArea(100).tileSize(64).tiles(List.of(new TileAggregate(0, 0, 1, 100))).build();
+
+        //mock
+        given(mockWidgetRepository.aggregate(area, 64)).willReturn(aggregates);
+
+        assertEquals(aggregates, widgetService.aggregate(area, 64));
+        verify(mockOperationEventLog).record(Operation.AGGREGATE, null, area, 1);
+    }
+
+    @Test
+    void verifyIndexes_whenCalled_thenReturnRepositoryReport() {
+        IndexConsistencyReport report = IndexConsistencyReport.builder()
+                .widgetCount(1).indexSizes(Collections.emptyMap()).drift(Collections.emptyList()).build();
+
+        //mock
+        given(mockWidgetRepository.verifyIndexes()).willReturn(report);
+
+        assertEquals(report, widgetService.verifyIndexes());
+        verify(mockWidgetRepository).verifyIndexes();
+    }
+}